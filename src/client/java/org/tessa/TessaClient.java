@@ -1,5 +1,9 @@
 package org.tessa;
 import org.tessa.api.Move;
+import org.tessa.impl.PacketInjector;
+import org.tessa.impl.SequencePlayer;
+import org.tessa.impl.TelemetryClient;
+import org.tessa.impl.TickRecorder;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
@@ -8,7 +12,10 @@ import net.minecraft.client.player.LocalPlayer;
 public class TessaClient implements ClientModInitializer {
 	@Override
 	public void onInitializeClient() {
-
+		SequencePlayer.get().register();
+		TickRecorder.get().register();
+		TelemetryClient.get().register();
+		PacketInjector.get().register();
 	}
 
 }
\ No newline at end of file
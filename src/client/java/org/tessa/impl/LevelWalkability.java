@@ -0,0 +1,32 @@
+package org.tessa.impl;
+import org.tessa.prelaunch.api.Walkability;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Direction;
+import net.minecraft.world.level.BlockGetter;
+import net.minecraft.world.level.block.state.BlockState;
+
+// walkability of the blocks of a client level, wrap it in a ChunkWalkabilityCache to read each block once
+// a block is passable without a collision shape and a fluid, and solid when its top face carries a player,
+// unloaded blocks read as air and are neither. read it on the client thread only.
+// it is not an event listener and nothing registers it, client code planning a route makes one for client.level
+// and hands it to a PathFinder.
+public final class LevelWalkability implements Walkability {
+
+	private final BlockGetter level;
+	private final BlockPos.MutableBlockPos position = new BlockPos.MutableBlockPos();
+
+	public LevelWalkability(BlockGetter level) {
+		this.level = level;
+	}
+
+	@Override
+	public boolean passable(int x, int y, int z) {
+		BlockState state = this.level.getBlockState(this.position.set(x, y, z));
+		return state.getCollisionShape(this.level, this.position).isEmpty() && state.getFluidState().isEmpty();
+	}
+
+	@Override
+	public boolean solid(int x, int y, int z) {
+		return this.level.getBlockState(this.position.set(x, y, z)).isFaceSturdy(this.level, this.position, Direction.UP);
+	}
+}
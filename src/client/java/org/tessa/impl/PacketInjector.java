@@ -0,0 +1,338 @@
+package org.tessa.impl;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.minecraft.network.Connection;
+import net.minecraft.network.ConnectionProtocol;
+import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.ProtocolInfo;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.Packet;
+import org.tessa.mixin.client.ConnectionAccessor;
+import org.tessa.mixin.client.PacketEncoderAccessor;
+import org.tessa.prelaunch.api.PropertyModifier;
+import org.tessa.prelaunch.impl.LaunchProfile;
+import org.tessa.prelaunch.impl.MpscQueue;
+import org.tessa.prelaunch.impl.TokenBucket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// sends arbitrary serverbound play packets to the server the client is connected to, from any thread
+//
+// send only offers the packet to a lock free MpscQueue and, if no flush is pending, schedules one on the connection's
+// netty event loop, so callers never wait for each other, the game thread or the network. the flush encodes up to
+// batchSize packets with the connection's current protocol, writes them as raw buffers, which pass the packet encoder
+// untouched and are then framed, compressed and encrypted like any other packet, and flushes the channel once.
+// the last few packet instances are kept encoded, so sending the same packet object again only duplicates its buffer,
+// and an Encoded handle keeps the encoding of a packet to repeat for as long as the protocol doesn't change.
+// pacing is two token buckets, packets per second and bytes per second of encoded packets before compression,
+// with bursts of one tick. packets that don't fit in the queue, are sent while not connected, or fail to encode
+// are dropped and counted. the queue belongs to the connection, whatever is left in it when it closes is dropped.
+// configured by the packets properties of this instance, see LaunchProfile:
+//   packets_per_second  0 or missing for unpaced
+//   bytes_per_second    0 or missing for unpaced
+public final class PacketInjector {
+
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	// packet instances kept encoded by the flush, a power of two
+	private static final int ENCODED_CACHE = 64;
+	private static final PacketInjector INSTANCE = new PacketInjector();
+
+	private volatile Link link;
+	private volatile int capacity = DEFAULT_CAPACITY;
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+	private volatile double packetsPerSecond;
+	private volatile double bytesPerSecond;
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong sentBytes = new AtomicLong();
+	private final LongAdder dropped = new LongAdder();
+	private boolean registered;
+
+	public static PacketInjector get() {
+		return INSTANCE;
+	}
+
+	// attaches to every play connection the client joins and applies the packets properties, only the first call registers
+	public synchronized PacketInjector register() {
+		if(this.registered) return this;
+		this.registered = true;
+		ClientPlayConnectionEvents.JOIN.register((handler, sender, client) -> attach(handler.getConnection()));
+		ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> detach());
+		PropertyModifier properties = LaunchProfile.modify("packets");
+		packetsPerSecond(properties.getLong("packets_per_second", 0));
+		bytesPerSecond(properties.getLong("bytes_per_second", 0));
+		return this;
+	}
+
+	// queues packet to be sent, returns false if it was dropped
+	public boolean send(Packet<?> packet) {
+		return offer(packet);
+	}
+
+	// queues an encoded packet to be sent, returns false if it was dropped
+	public boolean send(Encoded encoded) {
+		return offer(encoded);
+	}
+
+	// a handle that keeps the encoding of packet, for packets sent over and over
+	public static Encoded encoded(Packet<?> packet) {
+		return new Encoded(packet);
+	}
+
+	private boolean offer(Object packet) {
+		Link link = this.link;
+		if(link == null || !link.queue.offer(packet)) {
+			this.dropped.increment();
+			return false;
+		}
+		link.schedule();
+		return true;
+	}
+
+	// packets per second, 0 or less for unpaced
+	public PacketInjector packetsPerSecond(double packetsPerSecond) {
+		this.packetsPerSecond = packetsPerSecond;
+		return this;
+	}
+
+	// bytes per second of encoded packets before compression, 0 or less for unpaced
+	public PacketInjector bytesPerSecond(double bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+		return this;
+	}
+
+	// packets written per event loop task, other channel work runs between batches
+	public PacketInjector batchSize(int batchSize) {
+		if(batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	// queue capacity of the next connection
+	public PacketInjector capacity(int capacity) {
+		if(capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+		this.capacity = capacity;
+		return this;
+	}
+
+	public long sent() {
+		return this.sent.get();
+	}
+
+	public long sentBytes() {
+		return this.sentBytes.get();
+	}
+
+	public long dropped() {
+		return this.dropped.sum();
+	}
+
+	// packets waiting to be sent
+	public int queued() {
+		Link link = this.link;
+		return link == null ? 0 : link.queue.size();
+	}
+
+	public boolean connected() {
+		return this.link != null;
+	}
+
+	public Stats stats() {
+		return new Stats(sent(), sentBytes(), dropped(), queued());
+	}
+
+	public record Stats(long sent, long sentBytes, long dropped, int queued) {}
+
+	// starts sending to connection, dropping what was queued for the previous one
+	public synchronized void attach(Connection connection) {
+		Channel channel = ((ConnectionAccessor) connection).tessa$channel();
+		Link previous = this.link;
+		this.link = channel == null ? null : new Link(channel, this.capacity);
+		if(previous != null) previous.close();
+	}
+
+	public synchronized void detach() {
+		Link previous = this.link;
+		this.link = null;
+		if(previous != null) previous.close();
+	}
+
+	// a packet and its encoding for the protocol it was last sent with, only touched by the event loop after creation
+	public static final class Encoded {
+
+		private final Packet<?> packet;
+		private ProtocolInfo<?> protocol;
+		private ByteBuf buffer;
+
+		private Encoded(Packet<?> packet) {
+			this.packet = packet;
+		}
+
+		public Packet<?> packet() {
+			return this.packet;
+		}
+	}
+
+	// the queue and flush state of one connection
+	private final class Link {
+
+		private final Channel channel;
+		private final MpscQueue<Object> queue;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private final Runnable flush = this::flush;
+		// event loop state
+		private final TokenBucket packets = new TokenBucket(0, 1);
+		private final TokenBucket bytes = new TokenBucket(0, 1);
+		private final Packet<?>[] cachedPackets = new Packet<?>[ENCODED_CACHE];
+		private final ByteBuf[] cachedBuffers = new ByteBuf[ENCODED_CACHE];
+		private ProtocolInfo<?> cachedProtocol;
+		// the next buffer to write, waiting for tokens
+		private ByteBuf pending;
+		private boolean loggedEncodeFailure;
+		private volatile boolean closed;
+
+		Link(Channel channel, int capacity) {
+			this.channel = channel;
+			this.queue = new MpscQueue<>(capacity);
+		}
+
+		// called by producers after offering, schedules a flush unless one is pending
+		void schedule() {
+			if(!this.scheduled.get() && this.scheduled.compareAndSet(false, true)) this.channel.eventLoop().execute(this.flush);
+		}
+
+		void close() {
+			this.closed = true;
+			if(this.channel.eventLoop().inEventLoop()) discard();
+			else this.channel.eventLoop().execute(this::discard);
+		}
+
+		// drops everything queued once the connection is gone, on the event loop
+		private void discard() {
+			if(this.pending != null) {
+				this.pending.release();
+				this.pending = null;
+				PacketInjector.this.dropped.increment();
+			}
+			while(this.queue.poll() != null) PacketInjector.this.dropped.increment();
+		}
+
+		private void flush() {
+			if(this.closed || !this.channel.isActive()) {
+				discard();
+				this.scheduled.set(false);
+				return;
+			}
+			ProtocolInfo<?> protocol = protocol();
+			if(protocol == null || protocol.id() != ConnectionProtocol.PLAY) {
+				// configuring, wait for the play protocol to come back
+				this.channel.eventLoop().schedule(this.flush, 50, TimeUnit.MILLISECONDS);
+				return;
+			}
+			pace();
+			long now = System.nanoTime();
+			long delay = 0;
+			int written = 0;
+			int batchSize = PacketInjector.this.batchSize;
+			while(written < batchSize) {
+				if(!this.channel.isWritable()) {
+					delay = TimeUnit.MILLISECONDS.toNanos(1);
+					break;
+				}
+				if(this.pending == null) {
+					Object next = this.queue.poll();
+					if(next == null) break;
+					this.pending = encode(next, protocol);
+					if(this.pending == null) continue;
+				}
+				int size = this.pending.readableBytes();
+				delay = Math.max(this.packets.delay(1, now), this.bytes.delay(size, now));
+				if(delay > 0) break;
+				this.packets.take(1);
+				this.bytes.take(size);
+				this.channel.write(this.pending, this.channel.voidPromise());
+				this.pending = null;
+				written++;
+				PacketInjector.this.sent.lazySet(PacketInjector.this.sent.get() + 1);
+				PacketInjector.this.sentBytes.lazySet(PacketInjector.this.sentBytes.get() + size);
+			}
+			if(written > 0) this.channel.flush();
+			if(delay > 0) {
+				this.channel.eventLoop().schedule(this.flush, delay, TimeUnit.NANOSECONDS);
+			} else if(written == batchSize) {
+				// let the rest of the channel's work run before the next batch
+				this.channel.eventLoop().execute(this.flush);
+			} else {
+				this.scheduled.set(false);
+				// a producer may have offered after the last poll and seen the flush still scheduled
+				if(!this.queue.isEmpty()) schedule();
+			}
+		}
+
+		private void pace() {
+			double packetsPerSecond = PacketInjector.this.packetsPerSecond;
+			double bytesPerSecond = PacketInjector.this.bytesPerSecond;
+			if(this.packets.rate() != packetsPerSecond) this.packets.rate(packetsPerSecond, Math.max(1, packetsPerSecond / 20));
+			if(this.bytes.rate() != bytesPerSecond) this.bytes.rate(bytesPerSecond, Math.max(1, bytesPerSecond / 20));
+		}
+
+		// the protocol of the channel's packet encoder, replaced whenever the connection changes protocol
+		private ProtocolInfo<?> protocol() {
+			ChannelHandler encoder = this.channel.pipeline().get("encoder");
+			return encoder instanceof PacketEncoder<?> packetEncoder ? ((PacketEncoderAccessor) packetEncoder).tessa$protocolInfo() : null;
+		}
+
+		// a retained buffer with packet encoded for protocol, or null if it can't be encoded
+		private ByteBuf encode(Object next, ProtocolInfo<?> protocol) {
+			if(this.cachedProtocol != protocol) {
+				for(int i = 0; i < ENCODED_CACHE; i++) {
+					this.cachedPackets[i] = null;
+					this.cachedBuffers[i] = null;
+				}
+				this.cachedProtocol = protocol;
+			}
+			if(next instanceof Encoded encoded) {
+				if(encoded.protocol != protocol) {
+					encoded.buffer = encode(encoded.packet, protocol);
+					encoded.protocol = protocol;
+					if(encoded.buffer == null) return null;
+				} else if(encoded.buffer == null) {
+					PacketInjector.this.dropped.increment();
+					return null;
+				}
+				return encoded.buffer.retainedDuplicate();
+			}
+			Packet<?> packet = (Packet<?>) next;
+			int slot = System.identityHashCode(packet) & (ENCODED_CACHE - 1);
+			if(this.cachedPackets[slot] != packet) {
+				ByteBuf buffer = encode(packet, protocol);
+				if(buffer == null) return null;
+				this.cachedPackets[slot] = packet;
+				this.cachedBuffers[slot] = buffer;
+			}
+			return this.cachedBuffers[slot].retainedDuplicate();
+		}
+
+		// an unpooled buffer that is never released, so it can be duplicated for every send
+		@SuppressWarnings("unchecked")
+		private ByteBuf encode(Packet<?> packet, ProtocolInfo<?> protocol) {
+			ByteBuf buffer = Unpooled.buffer();
+			try {
+				((StreamCodec<ByteBuf, Packet<?>>) (StreamCodec<ByteBuf, ?>) protocol.codec()).encode(buffer, packet);
+				return buffer;
+			} catch (RuntimeException e) {
+				if(!this.loggedEncodeFailure) logger.error("PacketInjector::encode could not encode {}, further failures are only counted", packet.type(), e);
+				this.loggedEncodeFailure = true;
+				PacketInjector.this.dropped.increment();
+				return null;
+			}
+		}
+	}
+}
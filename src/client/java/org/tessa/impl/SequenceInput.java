@@ -0,0 +1,27 @@
+package org.tessa.impl;
+import net.minecraft.client.player.ClientInput;
+import net.minecraft.world.entity.player.Input;
+
+// player input that replays whatever the SequencePlayer staged for the current tick
+// the staged Input is one of the shared Move instances, so ticking never allocates
+final class SequenceInput extends ClientInput {
+
+	private Input next = Input.EMPTY;
+
+	void stage(Input input) {
+		this.next = input == null ? Input.EMPTY : input;
+	}
+
+	@Override
+	public void tick() {
+		Input input = this.next;
+		this.keyPresses = input;
+		this.forwardImpulse = impulse(input.forward(), input.backward());
+		this.leftImpulse = impulse(input.left(), input.right());
+	}
+
+	private static float impulse(boolean positive, boolean negative) {
+		if(positive == negative) return 0.0F;
+		return positive ? 1.0F : -1.0F;
+	}
+}
@@ -0,0 +1,191 @@
+package org.tessa.impl;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.ClientInput;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.world.entity.player.Input;
+import org.tessa.prelaunch.api.InputMask;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.util.Arrays;
+
+// plays sequences of moves or input masks on the local player, one term per client tick
+//
+// sequences are played in the order they were queued, the term at the cursor is staged on a SequenceInput
+// that replaces the player's keyboard input while something is playing and is swapped back once the queue runs dry.
+// the tick path only reads the sequence and moves the cursor: Move and InputMask inputs are shared instances,
+// the queue is a preallocated ring, and nothing is boxed or logged, so a playing client produces no garbage per tick.
+// every method is safe to call from any thread, the tick itself runs on the client thread.
+public final class SequencePlayer {
+
+	private static final int INITIAL_QUEUE_CAPACITY = 16;
+	private static final SequencePlayer INSTANCE = new SequencePlayer();
+
+	private final SequenceInput input = new SequenceInput();
+	// the input the player had before playback took over, restored when playback stops
+	private ClientInput released;
+	private Sequence<? extends SafeValue>[] queue = newQueue(INITIAL_QUEUE_CAPACITY);
+	private int head;
+	private int queued;
+	private int cursor;
+	private boolean paused;
+	private boolean loop;
+	private boolean registered;
+
+	public static SequencePlayer get() {
+		return INSTANCE;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Sequence<? extends SafeValue>[] newQueue(int capacity) {
+		return (Sequence<? extends SafeValue>[]) new Sequence[capacity];
+	}
+
+	// hooks the player into the client tick, only the first call registers
+	public synchronized SequencePlayer register() {
+		if(!this.registered) {
+			ClientTickEvents.START_CLIENT_TICK.register(this::tick);
+			this.registered = true;
+		}
+		return this;
+	}
+
+	// drops everything queued and plays sequence from its first tick
+	public synchronized SequencePlayer play(Sequence<? extends SafeValue> sequence) {
+		clearQueue();
+		return queue(sequence);
+	}
+
+	// plays sequence once every sequence queued before it has finished
+	public synchronized SequencePlayer queue(Sequence<? extends SafeValue> sequence) {
+		if(sequence == null) return this;
+		if(this.queued == this.queue.length) {
+			Sequence<? extends SafeValue>[] grown = newQueue(this.queue.length << 1);
+			for(int i = 0; i < this.queued; i++) grown[i] = this.queue[(this.head + i) % this.queue.length];
+			this.queue = grown;
+			this.head = 0;
+		}
+		this.queue[(this.head + this.queued) % this.queue.length] = sequence;
+		if(this.queued++ == 0) this.cursor = 0;
+		return this;
+	}
+
+	// ends the current sequence and moves on to the next queued one
+	public synchronized SequencePlayer skip() {
+		if(this.queued > 0) next();
+		return this;
+	}
+
+	// stops playback, drops the queue and hands control back to the keyboard
+	public synchronized SequencePlayer stop() {
+		clearQueue();
+		this.paused = false;
+		return this;
+	}
+
+	// paused playback keeps the cursor, the player's keyboard input is restored until resume
+	public synchronized SequencePlayer pause() {
+		this.paused = true;
+		return this;
+	}
+
+	public synchronized SequencePlayer resume() {
+		this.paused = false;
+		return this;
+	}
+
+	// moves the cursor of the current sequence to tick, clamped to the sequence
+	public synchronized SequencePlayer seek(int tick) {
+		Sequence<? extends SafeValue> current = current();
+		if(current != null) this.cursor = Math.max(0, Math.min(tick, current.tick() + 1));
+		return this;
+	}
+
+	// a looping player restarts the current sequence instead of moving on to the next queued one
+	public synchronized SequencePlayer setLoop(boolean loop) {
+		this.loop = loop;
+		return this;
+	}
+
+	public synchronized boolean loop() {
+		return this.loop;
+	}
+
+	public synchronized boolean paused() {
+		return this.paused;
+	}
+
+	public synchronized boolean playing() {
+		return this.queued > 0 && !this.paused;
+	}
+
+	// the tick of the current sequence that plays next
+	public synchronized int cursor() {
+		return this.cursor;
+	}
+
+	// number of sequences waiting, including the current one
+	public synchronized int queued() {
+		return this.queued;
+	}
+
+	public synchronized Sequence<? extends SafeValue> current() {
+		return this.queued == 0 ? null : this.queue[this.head];
+	}
+
+	private void tick(Minecraft client) {
+		LocalPlayer player = client.player;
+		if(player == null) return;
+		synchronized(this) {
+			SafeValue value = this.paused ? null : advance();
+			if(this.paused || this.queued == 0) {
+				release(player);
+				return;
+			}
+			if(player.input != this.input) {
+				this.released = player.input;
+				player.input = this.input;
+			}
+			this.input.stage(inputOf(value));
+		}
+	}
+
+	// terms other than moves and input masks press nothing
+	private static Input inputOf(SafeValue value) {
+		if(value instanceof Move move) return move.move();
+		if(value instanceof InputMask mask) return mask.input();
+		return null;
+	}
+
+	// the term at the cursor, skipping finished sequences, or null when the queue is empty
+	private SafeValue advance() {
+		while(this.queued > 0) {
+			Sequence<? extends SafeValue> current = this.queue[this.head];
+			// bounds are checked here so reading the sequence never logs
+			if(this.cursor <= current.tick()) return current.at(this.cursor++);
+			if(this.loop && current.tick() >= 0) this.cursor = 0;
+			else next();
+		}
+		return null;
+	}
+
+	private void next() {
+		this.queue[this.head] = null;
+		this.head = (this.head + 1) % this.queue.length;
+		this.queued--;
+		this.cursor = 0;
+	}
+
+	private void clearQueue() {
+		Arrays.fill(this.queue, null);
+		this.head = 0;
+		this.queued = 0;
+		this.cursor = 0;
+	}
+
+	private void release(LocalPlayer player) {
+		if(player.input == this.input && this.released != null) player.input = this.released;
+		this.released = null;
+	}
+}
@@ -0,0 +1,101 @@
+package org.tessa.impl;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import org.tessa.prelaunch.api.PropertyModifier;
+import org.tessa.prelaunch.impl.LaunchProfile;
+import org.tessa.prelaunch.impl.LocalTelemetryProducer;
+import org.tessa.prelaunch.impl.TelemetryProtocol;
+import org.tessa.prelaunch.impl.TelemetrySink;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+// receives server telemetry on the tessa:telemetry channel into the TelemetrySink
+//
+// the payload codec runs on the network thread, it decodes the samples straight into the sink's queue and returns
+// one shared payload, so receiving allocates nothing per packet and the client thread only drains the queue each tick.
+// configured by the telemetry properties of this instance, see LaunchProfile:
+//   window      length of an aggregation window, default 10s
+//   chat        true to show every window in chat
+//   dump        file to append every window to, tab separated
+//   local_rate  samples per second of a LocalTelemetryProducer standing in for a server, 0 or missing for none
+public final class TelemetryClient {
+
+	private static final TelemetryClient INSTANCE = new TelemetryClient();
+
+	private LocalTelemetryProducer localProducer;
+	private boolean registered;
+
+	public static TelemetryClient get() {
+		return INSTANCE;
+	}
+
+	// records in the TelemetryProtocol format, from the position to the limit of records, written with
+	// TelemetryProtocol.writeDefinition and writeSamples. decoding puts the records straight into the sink
+	// and returns RECEIVED, which holds none, so a decoded payload is never decoded twice.
+	public record TelemetryPayload(ByteBuffer records) implements CustomPacketPayload {
+
+		public static final TelemetryPayload RECEIVED = new TelemetryPayload(ByteBuffer.allocate(0));
+		public static final Type<TelemetryPayload> TYPE = new Type<>(ResourceLocation.parse(TelemetryProtocol.CHANNEL));
+		public static final StreamCodec<FriendlyByteBuf, TelemetryPayload> CODEC = StreamCodec.of(
+				(buffer, payload) -> buffer.writeBytes(payload.records().duplicate()),
+				buffer -> {
+					int readable = buffer.readableBytes();
+					TelemetrySink.get().decode(buffer.nioBuffer());
+					buffer.skipBytes(readable);
+					return RECEIVED;
+				});
+
+		@Override
+		public Type<TelemetryPayload> type() {
+			return TYPE;
+		}
+	}
+
+	// registers the channel and the tick hook and applies the telemetry properties, only the first call registers
+	public synchronized TelemetryClient register() {
+		if(this.registered) return this;
+		this.registered = true;
+		PayloadTypeRegistry.playS2C().register(TelemetryPayload.TYPE, TelemetryPayload.CODEC);
+		ClientPlayNetworking.registerGlobalReceiver(TelemetryPayload.TYPE, (payload, context) -> {});
+		ClientTickEvents.END_CLIENT_TICK.register(client -> TelemetrySink.get().drain());
+		PropertyModifier properties = LaunchProfile.modify("telemetry");
+		TelemetrySink sink = TelemetrySink.get().window(properties.getDuration("window", Duration.ofSeconds(10)));
+		if(properties.getBoolean("chat", false)) sink.onWindow(TelemetryClient::showInChat);
+		String dump = properties.getProperty("dump", "");
+		if(!dump.isBlank()) sink.dumpTo(new File(dump));
+		int localRate = properties.getInt("local_rate", 0);
+		if(localRate > 0) startLocalProducer(localRate);
+		return this;
+	}
+
+	// feeds the sink from a LocalTelemetryProducer instead of a server, stopping the previous one
+	public synchronized TelemetryClient startLocalProducer(int samplesPerSecond) {
+		stopLocalProducer();
+		this.localProducer = LocalTelemetryProducer.start(TelemetrySink.get(), samplesPerSecond);
+		return this;
+	}
+
+	public synchronized TelemetryClient stopLocalProducer() {
+		if(this.localProducer != null) this.localProducer.close();
+		this.localProducer = null;
+		return this;
+	}
+
+	// called on the client thread by TelemetrySink.drain
+	private static void showInChat(TelemetrySink.Window window) {
+		Minecraft client = Minecraft.getInstance();
+		if(client.gui == null) return;
+		String header = String.format("[telemetry] %d ms window", window.durationMillis());
+		if(window.dropped() > 0 || window.malformed() > 0) header += String.format(", %d dropped, %d malformed", window.dropped(), window.malformed());
+		client.gui.getChat().addMessage(Component.literal(header));
+		for(TelemetrySink.Summary summary : window.metrics()) client.gui.getChat().addMessage(Component.literal(summary.toString()));
+	}
+}
@@ -0,0 +1,425 @@
+package org.tessa.impl;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.player.LocalPlayer;
+import net.minecraft.world.phys.Vec3;
+import org.tessa.prelaunch.api.InputMask;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.impl.MaskSequence;
+import org.tessa.prelaunch.impl.MoveSequence;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// records what the local player actually did every client tick: the applied input, position, rotation, velocity and on ground flag
+//
+// frames are written at the end of every client tick into a ring of preallocated columns in one direct buffer,
+// one column per field, and a background thread drains the ring to disk. the tick path only does absolute puts
+// into the ring and publishes the frame count, so recording allocates nothing on the client thread however long it runs.
+// when the drain thread falls a whole ring behind, frames are dropped and counted instead of blocking the game.
+//
+// the recording file starts with int magic 'TTCK', short version, long start time in epoch milliseconds, followed by blocks:
+//   int frame count n, then every column for the n frames in this order:
+//   long client tick, byte input bits (see InputMask), byte on ground, double x, y, z, float yaw, pitch, double velocity x, y, z
+//   int CRC32 of the columns
+// a torn last block, from a client that was killed while recording, is ignored by the readers.
+// readFrames reads every column back, readMasks and readMoves only the input.
+// a failed write stops the recording, failure() tells why.
+public final class TickRecorder {
+
+	public static final int MAGIC = 0x5454434B;
+	public static final short VERSION = 1;
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+	public static final Duration DEFAULT_DRAIN_INTERVAL = Duration.ofMillis(500);
+	// column widths in bytes, in file order
+	private static final int[] WIDTHS = {Long.BYTES, Byte.BYTES, Byte.BYTES, Double.BYTES, Double.BYTES, Double.BYTES, Float.BYTES, Float.BYTES, Double.BYTES, Double.BYTES, Double.BYTES};
+	private static final int TICK = 0, INPUT = 1, ON_GROUND = 2, X = 3, Y = 4, Z = 5, YAW = 6, PITCH = 7, VELOCITY_X = 8, VELOCITY_Y = 9, VELOCITY_Z = 10;
+	private static final int FRAME_BYTES = frameBytes();
+	private static final TickRecorder INSTANCE = new TickRecorder();
+
+	private volatile Recording recording;
+	// the write error that stopped the last recording, cleared by start
+	private volatile IOException failure;
+	// client ticks seen since the recorder was registered, recorded in every frame so gaps show
+	private long ticks;
+	private boolean registered;
+
+	public static TickRecorder get() {
+		return INSTANCE;
+	}
+
+	private static int frameBytes() {
+		int bytes = 0;
+		for(int width : WIDTHS) bytes += width;
+		return bytes;
+	}
+
+	// hooks the recorder into the end of the client tick, after the player has moved, only the first call registers
+	public synchronized TickRecorder register() {
+		if(!this.registered) {
+			ClientTickEvents.END_CLIENT_TICK.register(this::tick);
+			this.registered = true;
+		}
+		return this;
+	}
+
+	public TickRecorder start(String filename) {
+		return start(filename, DEFAULT_CAPACITY, DEFAULT_DRAIN_INTERVAL);
+	}
+
+	// stops the current recording and starts recording into filename, which is overwritten
+	// capacity frames are buffered between drains, it is rounded up to a power of two
+	public synchronized TickRecorder start(String filename, int capacity, Duration drainInterval) {
+		stop();
+		this.failure = null;
+		Recording recording = Recording.open(new File(filename), capacity, drainInterval);
+		if(recording != null) {
+			recording.drainer.start();
+			this.recording = recording;
+		}
+		return this;
+	}
+
+	// stops recording, drains every buffered frame and closes the file
+	// returns the file, or null if nothing was recording or the recording failed
+	public synchronized File stop() {
+		Recording recording = this.recording;
+		if(recording == null) return null;
+		this.recording = null;
+		recording.close();
+		if(recording.failure != null) {
+			this.failure = recording.failure;
+			return null;
+		}
+		return recording.file;
+	}
+
+	// false as soon as a write of the drain thread fails
+	public boolean recording() {
+		Recording recording = this.recording;
+		return recording != null && recording.failure == null;
+	}
+
+	// the write error that stopped the current or last recording, null if it didn't fail
+	public IOException failure() {
+		Recording recording = this.recording;
+		if(recording != null && recording.failure != null) return recording.failure;
+		return this.failure;
+	}
+
+	// frames written to disk by the current recording
+	public long persisted() {
+		Recording recording = this.recording;
+		return recording == null ? 0 : recording.persisted;
+	}
+
+	// frames of the current recording dropped because the drain thread fell a whole ring behind
+	public long lost() {
+		Recording recording = this.recording;
+		return recording == null ? 0 : recording.lost.get();
+	}
+
+	private void tick(Minecraft client) {
+		long tick = this.ticks++;
+		Recording recording = this.recording;
+		if(recording != null && recording.failure != null) {
+			stop();
+			return;
+		}
+		LocalPlayer player = client.player;
+		if(recording != null && player != null) recording.capture(tick, player);
+	}
+
+	// the applied input of every frame of the recording filename as moves, keys no move presses are dropped, see Move.of
+	// returns null if the file can't be read
+	public static MoveSequence readMoves(String filename, String name) {
+		MaskSequence masks = readMasks(filename, name);
+		return masks == null ? null : toMoves(masks, name);
+	}
+
+	// the applied input of every frame of the recording filename, returns null if the file can't be read
+	public static MaskSequence readMasks(String filename, String name) {
+		MaskSequence masks = new MaskSequence(name, InputMask.NONE);
+		boolean read = readBlocks(filename, (block, frames) -> {
+			int input = column(INPUT, frames);
+			for(int i = 0; i < frames; ) {
+				byte bits = block.get(input + i);
+				int end = i + 1;
+				while(end < frames && block.get(input + end) == bits) end++;
+				masks.addFromUntil(masks.tick() + 1, masks.tick() + 1 + end - i, InputMask.of(bits));
+				i = end;
+			}
+		});
+		return read ? masks : null;
+	}
+
+	// every column of every frame of the recording filename, returns null if the file can't be read
+	public static Frames readFrames(String filename) {
+		List<ByteBuffer> blocks = new ArrayList<>();
+		if(!readBlocks(filename, (block, frames) -> blocks.add(ByteBuffer.wrap(Arrays.copyOf(block.array(), frames * FRAME_BYTES))))) return null;
+		int size = 0;
+		for(ByteBuffer block : blocks) size += block.capacity() / FRAME_BYTES;
+		Frames result = new Frames(new long[size], new byte[size], new boolean[size], new double[size], new double[size], new double[size],
+				new float[size], new float[size], new double[size], new double[size], new double[size]);
+		int frame = 0;
+		for(ByteBuffer block : blocks) {
+			int frames = block.capacity() / FRAME_BYTES;
+			block.position(column(TICK, frames)).asLongBuffer().get(result.ticks, frame, frames);
+			block.get(column(INPUT, frames), result.inputs, frame, frames);
+			for(int i = 0; i < frames; i++) result.onGround[frame + i] = block.get(column(ON_GROUND, frames) + i) != 0;
+			block.position(column(X, frames)).asDoubleBuffer().get(result.x, frame, frames);
+			block.position(column(Y, frames)).asDoubleBuffer().get(result.y, frame, frames);
+			block.position(column(Z, frames)).asDoubleBuffer().get(result.z, frame, frames);
+			block.position(column(YAW, frames)).asFloatBuffer().get(result.yaw, frame, frames);
+			block.position(column(PITCH, frames)).asFloatBuffer().get(result.pitch, frame, frames);
+			block.position(column(VELOCITY_X, frames)).asDoubleBuffer().get(result.velocityX, frame, frames);
+			block.position(column(VELOCITY_Y, frames)).asDoubleBuffer().get(result.velocityY, frame, frames);
+			block.position(column(VELOCITY_Z, frames)).asDoubleBuffer().get(result.velocityZ, frame, frames);
+			frame += frames;
+		}
+		return result;
+	}
+
+	// the columns of a recording, index i of every array is frame i
+	public record Frames(long[] ticks, byte[] inputs, boolean[] onGround, double[] x, double[] y, double[] z, float[] yaw, float[] pitch,
+			double[] velocityX, double[] velocityY, double[] velocityZ) {
+
+		public int size() {
+			return this.ticks.length;
+		}
+	}
+
+	// offset of column in a block of frames frames
+	private static int column(int column, int frames) {
+		int offset = 0;
+		for(int i = 0; i < column; i++) offset += frames * WIDTHS[i];
+		return offset;
+	}
+
+	@FunctionalInterface
+	private interface BlockReader {
+
+		// block holds the columns of frames frames from offset 0, it is reused for the next block
+		void read(ByteBuffer block, int frames);
+	}
+
+	// hands every intact block of the recording filename to reader, false if the file can't be read
+	private static boolean readBlocks(String filename, BlockReader reader) {
+		File file = new File(filename);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + Long.BYTES);
+			if(!readFully(channel, header) || header.flip().getInt() != MAGIC) throw new IOException("Not a tick recording");
+			short version = header.getShort();
+			if(version != VERSION) throw new IOException("Unsupported tick recording version " + version);
+			ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+			ByteBuffer block = ByteBuffer.allocate(0);
+			CRC32 crc = new CRC32();
+			while(readFully(channel, count.clear())) {
+				int frames = count.flip().getInt();
+				if(frames <= 0 || frames > Integer.MAX_VALUE / FRAME_BYTES - 1) break;
+				if(block.capacity() < frames * FRAME_BYTES + Integer.BYTES) block = ByteBuffer.allocate(frames * FRAME_BYTES + Integer.BYTES);
+				block.clear().limit(frames * FRAME_BYTES + Integer.BYTES);
+				if(!readFully(channel, block)) break;
+				crc.reset();
+				crc.update(block.array(), 0, frames * FRAME_BYTES);
+				if((int) crc.getValue() != block.getInt(frames * FRAME_BYTES)) break;
+				reader.read(block, frames);
+			}
+			if(channel.position() < channel.size()) logger.warn("TickRecorder::read ignoring a torn or corrupt block at the end of {}", file.getAbsolutePath());
+		} catch (IOException e) {
+			logger.error("TickRecorder::read {}", file.getAbsolutePath(), e);
+			return false;
+		}
+		return true;
+	}
+
+	private static MoveSequence toMoves(MaskSequence masks, String name) {
+		MoveSequence moves = new MoveSequence(name, Move.STAND_TALL);
+		for(int i = 0; i <= masks.tick(); ) {
+			InputMask mask = masks.at(i);
+			int end = i + 1;
+			while(end <= masks.tick() && masks.at(end) == mask) end++;
+			moves.addFromUntil(i, end, Move.of(mask));
+			i = end;
+		}
+		return moves;
+	}
+
+	// fills buffer from the channel, false if the file ends first
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer) < 0) return false;
+		}
+		return true;
+	}
+
+	// one recording: the ring, its file and the thread draining one into the other
+	private static final class Recording {
+
+		private final File file;
+		private final FileChannel channel;
+		private final ByteBuffer ring;
+		private final int capacity;
+		private final int mask;
+		// where every column starts in the ring
+		private final int[] columns = new int[WIDTHS.length];
+		// frames written, only advanced by the client thread
+		private final AtomicLong written = new AtomicLong();
+		// frames drained, only advanced by the drain thread
+		private final AtomicLong drained = new AtomicLong();
+		// client thread view of drained, refreshed only when the ring seems full
+		private long drainedCache;
+		private final AtomicLong lost = new AtomicLong();
+		private final long drainNanos;
+		private final Thread drainer;
+		// views of the ring, every column needs two when the drained frames wrap around
+		private final ByteBuffer[] slices = new ByteBuffer[2 * WIDTHS.length];
+		// the count, the ring slices and the checksum of a block, handed to a gathering write
+		private final ByteBuffer[] block = new ByteBuffer[2 + 2 * WIDTHS.length];
+		private final ByteBuffer count = ByteBuffer.allocateDirect(Integer.BYTES);
+		private final ByteBuffer checksum = ByteBuffer.allocateDirect(Integer.BYTES);
+		private final CRC32 crc = new CRC32();
+		private volatile long persisted;
+		private volatile boolean closed;
+		// set by the drain thread when a write fails, the recording stops at the next client tick
+		private volatile IOException failure;
+
+		private Recording(File file, FileChannel channel, int capacity, Duration drainInterval) {
+			this.file = file;
+			this.channel = channel;
+			this.capacity = capacity;
+			this.mask = capacity - 1;
+			this.ring = ByteBuffer.allocateDirect(capacity * FRAME_BYTES);
+			for(int column = 1; column < WIDTHS.length; column++) this.columns[column] = this.columns[column - 1] + capacity * WIDTHS[column - 1];
+			for(int slice = 0; slice < this.slices.length; slice++) this.slices[slice] = this.ring.duplicate();
+			this.block[0] = this.count;
+			this.drainNanos = drainInterval.toNanos();
+			this.drainer = new Thread(this::run, "tessa-tick-recorder");
+			this.drainer.setDaemon(true);
+		}
+
+		static Recording open(File file, int capacity, Duration drainInterval) {
+			if(capacity < 1 || capacity > (Integer.MAX_VALUE - 1) / FRAME_BYTES) throw new IllegalArgumentException("Invalid recorder capacity " + capacity);
+			int size = Integer.highestOneBit(capacity);
+			if(size < capacity) size <<= 1;
+			FileChannel channel = null;
+			try {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Short.BYTES + Long.BYTES);
+				header.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis()).flip();
+				while(header.hasRemaining()) channel.write(header);
+				return new Recording(file, channel, size, drainInterval);
+			} catch (IOException e) {
+				logger.error("TickRecorder::start {}", file.getAbsolutePath(), e);
+				if(channel != null) {
+					try {
+						channel.close();
+					} catch (IOException ignored) {
+					}
+				}
+				return null;
+			}
+		}
+
+		// client thread only, absolute puts into the ring and a lazy publish
+		void capture(long tick, LocalPlayer player) {
+			long frame = this.written.get();
+			if(frame - this.drainedCache >= this.capacity) {
+				this.drainedCache = this.drained.get();
+				if(frame - this.drainedCache >= this.capacity) {
+					this.lost.lazySet(this.lost.get() + 1);
+					return;
+				}
+			}
+			int slot = (int) frame & this.mask;
+			ByteBuffer ring = this.ring;
+			Vec3 velocity = player.getDeltaMovement();
+			ring.putLong(this.columns[TICK] + slot * Long.BYTES, tick);
+			ring.put(this.columns[INPUT] + slot, (byte) InputMask.of(player.input.keyPresses).bits());
+			ring.put(this.columns[ON_GROUND] + slot, (byte) (player.onGround() ? 1 : 0));
+			ring.putDouble(this.columns[X] + slot * Double.BYTES, player.getX());
+			ring.putDouble(this.columns[Y] + slot * Double.BYTES, player.getY());
+			ring.putDouble(this.columns[Z] + slot * Double.BYTES, player.getZ());
+			ring.putFloat(this.columns[YAW] + slot * Float.BYTES, player.getYRot());
+			ring.putFloat(this.columns[PITCH] + slot * Float.BYTES, player.getXRot());
+			ring.putDouble(this.columns[VELOCITY_X] + slot * Double.BYTES, velocity.x);
+			ring.putDouble(this.columns[VELOCITY_Y] + slot * Double.BYTES, velocity.y);
+			ring.putDouble(this.columns[VELOCITY_Z] + slot * Double.BYTES, velocity.z);
+			this.written.lazySet(frame + 1);
+		}
+
+		private void run() {
+			try {
+				while(!this.closed) {
+					drain();
+					LockSupport.parkNanos(this.drainNanos);
+				}
+				drain();
+				this.channel.force(false);
+			} catch (IOException e) {
+				logger.error("TickRecorder::drain {}, recording stopped", this.file.getAbsolutePath(), e);
+				this.closed = true;
+				this.failure = e;
+			}
+		}
+
+		// writes the frames published so far as one block, every column straight from the ring with a gathering write
+		private void drain() throws IOException {
+			long from = this.drained.get();
+			long until = this.written.get();
+			if(until == from) return;
+			int frames = (int) (until - from);
+			int first = (int) from & this.mask;
+			int head = Math.min(frames, this.capacity - first);
+			int slices = 0;
+			this.crc.reset();
+			for(int column = 0; column < WIDTHS.length; column++) {
+				int start = this.columns[column];
+				int width = WIDTHS[column];
+				slice(slices++, start + first * width, start + (first + head) * width);
+				if(head < frames) slice(slices++, start, start + (frames - head) * width);
+			}
+			this.count.clear().putInt(0, frames);
+			this.checksum.clear().putInt(0, (int) this.crc.getValue());
+			this.block[slices + 1] = this.checksum;
+			long bytes = Integer.BYTES + (long) frames * FRAME_BYTES + Integer.BYTES;
+			for(long written = 0; written < bytes; ) written += this.channel.write(this.block, 0, slices + 2);
+			this.drained.lazySet(until);
+			this.persisted += frames;
+		}
+
+		// points slice at ring bytes [from, until), adds them to the checksum and to the block
+		private void slice(int slice, int from, int until) {
+			ByteBuffer bytes = this.slices[slice];
+			bytes.limit(until).position(from);
+			this.crc.update(bytes);
+			bytes.position(from);
+			this.block[slice + 1] = bytes;
+		}
+
+		void close() {
+			this.closed = true;
+			LockSupport.unpark(this.drainer);
+			try {
+				this.drainer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			try {
+				this.channel.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package org.tessa.mixin.client;
+import io.netty.channel.Channel;
+import net.minecraft.network.Connection;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+// the netty channel of a connection, for PacketInjector to write to it on its event loop
+@Mixin(Connection.class)
+public interface ConnectionAccessor {
+
+	@Accessor("channel")
+	Channel tessa$channel();
+}
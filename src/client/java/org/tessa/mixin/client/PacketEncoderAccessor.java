@@ -0,0 +1,12 @@
+package org.tessa.mixin.client;
+import net.minecraft.network.PacketEncoder;
+import net.minecraft.network.ProtocolInfo;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+// the protocol a connection currently encodes packets with, for PacketInjector to encode them itself
+@Mixin(PacketEncoder.class)
+public interface PacketEncoderAccessor {
+
+	@Accessor("protocolInfo")
+	ProtocolInfo<?> tessa$protocolInfo();
+}
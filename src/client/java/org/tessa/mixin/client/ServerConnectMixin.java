@@ -5,30 +5,15 @@ import com.mojang.blaze3d.platform.DisplayData;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Redirect;
-import java.io.File;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
+import org.tessa.prelaunch.impl.LaunchProfile;
 @Mixin(Main.class)
 public abstract class ServerConnectMixin {
 
 	@Redirect(method = "main", at = @At(value = "NEW", target = "net/minecraft/client/main/GameConfig"))
 	private static GameConfig redirectGameConfigCreation(GameConfig.UserData userData, DisplayData displayData, GameConfig.FolderData folderData, GameConfig.GameData gameData, GameConfig.QuickPlayData quickPlayData) {
-		File quickPlayProperties = new File("config", "tessa.quickplay.properties");
-		String serverAddress = null;
-		try (BufferedReader br = new BufferedReader(new FileReader(quickPlayProperties.getAbsolutePath()))){
-			String line;
-			while((line = br.readLine()) != null) {
-				switch(line.split("=")[0]) {
-					case "server_address" :
-						serverAddress = line.split("=").length > 1 ? line.split("=")[1] : quickPlayData.multiplayer();
-					default:
-						break;
-				}
-			}
-		} catch(IOException e) {
-
-		}
+		// the quick play properties of this instance, a blank server_address keeps the launcher's quick play server
+		String serverAddress = LaunchProfile.getProperty("quickplay", "server_address", null);
+		if(serverAddress != null && serverAddress.isBlank()) serverAddress = quickPlayData.multiplayer();
 		GameConfig.QuickPlayData modifiedQuickPlayData = new GameConfig.QuickPlayData(
 				quickPlayData.path(),
 				quickPlayData.singleplayer(),
@@ -0,0 +1,59 @@
+package org.tessa.prelaunch.bench;
+import org.tessa.prelaunch.impl.TessaPropertyModifier;
+import org.openjdk.jmh.annotations.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// cost of reading and writing TessaPropertyModifier properties, with and without writing the file
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropertyBenchmark {
+
+    @Param({"10", "1000"})
+    public int keys;
+
+    private TessaPropertyModifier properties;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File folder = Files.createTempDirectory("tessa-properties").toFile();
+        folder.deleteOnExit();
+        this.properties = new TessaPropertyModifier(folder, "bench");
+        for(int i = 0; i < this.keys; i++) this.properties.setProperty("key" + i, "value" + i, false);
+        this.properties.write();
+    }
+
+    private String key() {
+        return "key" + (this.next++ % this.keys);
+    }
+
+    @Benchmark
+    public String getProperty() {
+        return this.properties.getProperty(key(), "");
+    }
+
+    @Benchmark
+    public TessaPropertyModifier setProperty() {
+        return this.properties.setProperty(key(), "changed", false);
+    }
+
+    @Benchmark
+    public TessaPropertyModifier setPropertyWrite() {
+        return this.properties.setProperty(key(), "changed", true);
+    }
+
+    // 30 writing sets in one batch write the file once
+    @Benchmark
+    public TessaPropertyModifier setPropertyBatch() {
+        this.properties.begin();
+        for(int i = 0; i < 30; i++) this.properties.setProperty(key(), "changed", true);
+        return this.properties.commit();
+    }
+}
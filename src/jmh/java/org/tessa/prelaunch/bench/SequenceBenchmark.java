@@ -0,0 +1,168 @@
+package org.tessa.prelaunch.bench;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.impl.AbstractSequence;
+import org.tessa.prelaunch.impl.MoveSequence;
+import org.tessa.prelaunch.impl.RleSequence;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// cost of the AbstractSequence operations over script sizes and value distributions
+// distribution RANDOM draws every tick independently, RUNS_n draws runs of n ticks on average
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SequenceBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"RANDOM", "RUNS_16", "RUNS_4096"})
+    public String distribution;
+
+    @Param({"MoveSequence", "RleSequence"})
+    public String type;
+
+    private AbstractSequence<Move> sequence;
+    private AbstractSequence<Move> equal;
+    private AbstractSequence<Move> pattern;
+    private int[] ticks;
+    private Move[] values;
+    private int next;
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.sequence = build(this.type, this.size, this.distribution, 42);
+        this.equal = build(this.type, this.size, this.distribution, 42);
+        this.pattern = this.sequence.subsequence(this.size / 2, this.size / 2 + 40);
+        SplittableRandom random = new SplittableRandom(7);
+        this.ticks = new int[1 << 16];
+        this.values = new Move[1 << 16];
+        for(int i = 0; i < this.ticks.length; i++) {
+            this.ticks[i] = random.nextInt(this.size);
+            this.values[i] = Move.values()[random.nextInt(Move.values().length)];
+        }
+        this.file = File.createTempFile("tessa-sequence", ".bench");
+        this.file.deleteOnExit();
+    }
+
+    static AbstractSequence<Move> build(String type, int size, String distribution, long seed) {
+        AbstractSequence<Move> sequence = type.equals("RleSequence") ? new RleSequence<>("bench", Move.STAND_TALL) : new MoveSequence("bench", Move.STAND_TALL);
+        SplittableRandom random = new SplittableRandom(seed);
+        int meanRun = distribution.equals("RANDOM") ? 1 : Integer.parseInt(distribution.substring("RUNS_".length()));
+        Move[] moves = Move.values();
+        for(int tick = 0; tick < size; ) {
+            int run = meanRun == 1 ? 1 : 1 + random.nextInt(2 * meanRun - 1);
+            run = Math.min(run, size - tick);
+            sequence.addFromUntil(tick, tick + run, moves[random.nextInt(moves.length)]);
+            tick += run;
+        }
+        return sequence;
+    }
+
+    private int index() {
+        return this.next++ & (this.ticks.length - 1);
+    }
+
+    // a fresh copy of the sequence for benchmarks that destroy it
+    @State(Scope.Thread)
+    public static class Scratch {
+
+        public AbstractSequence<Move> sequence;
+
+        @Setup(Level.Invocation)
+        public void setup(SequenceBenchmark benchmark) {
+            this.sequence = benchmark.sequence.copy("scratch");
+        }
+    }
+
+    // time to build the whole sequence one add() at a time
+    @Benchmark
+    public AbstractSequence<Move> add() {
+        AbstractSequence<Move> sequence = this.type.equals("RleSequence") ? new RleSequence<>("bench", Move.STAND_TALL) : new MoveSequence("bench", Move.STAND_TALL);
+        for(int i = 0; i < this.size; i++) sequence.add(this.values[i & (this.values.length - 1)]);
+        return sequence;
+    }
+
+    @Benchmark
+    public Move at() {
+        return this.sequence.at(this.ticks[index()]);
+    }
+
+    @Benchmark
+    public AbstractSequence<Move> set() {
+        int i = index();
+        return this.sequence.set(this.ticks[i], this.values[i]);
+    }
+
+    // inserts 100 ticks in the middle, then removes them again to keep the size stable
+    @Benchmark
+    public AbstractSequence<Move> addFromUntil() {
+        int tick = this.ticks[index()];
+        this.sequence.addFromUntil(tick, tick + 100, Move.SPRINT);
+        return this.sequence.remove(tick, tick + 100);
+    }
+
+    // removes 100 ticks in the middle, then inserts them again to keep the size stable
+    @Benchmark
+    public AbstractSequence<Move> removeRange() {
+        int tick = Math.min(this.ticks[index()], this.size - 100);
+        Move value = this.sequence.at(tick);
+        this.sequence.remove(tick, tick + 100);
+        return this.sequence.addFromUntil(tick, tick + 100, value);
+    }
+
+    @Benchmark
+    public AbstractSequence<Move> removeAllCollection(Scratch scratch) {
+        return scratch.sequence.removeAll(List.of(Move.FORWARD, Move.JUMP, Move.SPRINT));
+    }
+
+    @Benchmark
+    public AbstractSequence<Move> removeAllSequence(Scratch scratch) {
+        return scratch.sequence.removeAll(this.pattern);
+    }
+
+    @Benchmark
+    public AbstractSequence<Move> subsequence() {
+        int tick = Math.min(this.ticks[index()], this.size - 1000);
+        return this.sequence.subsequence(tick, tick + 1000);
+    }
+
+    @Benchmark
+    public AbstractSequence<Move> copy() {
+        return this.sequence.copy("copy");
+    }
+
+    @Benchmark
+    public AbstractSequence<Move> deepCopy() {
+        return this.sequence.deepCopy("copy");
+    }
+
+    @Benchmark
+    public boolean equalsSequence() {
+        return this.sequence.equals(this.equal);
+    }
+
+    @Benchmark
+    public String toStringSequence() {
+        return this.sequence.toString();
+    }
+
+    @Benchmark
+    public void write(Blackhole blackhole) {
+        blackhole.consume(this.sequence.write(this.file.getAbsolutePath()));
+    }
+
+    @Benchmark
+    public void writeBinary(Blackhole blackhole) {
+        blackhole.consume(this.sequence.writeBinary(this.file.getAbsolutePath()));
+    }
+}
@@ -12,7 +12,7 @@ public class TessaPreLaunch implements PreLaunchEntrypoint {
     @Override
     public void onPreLaunch() {
         // insert your prelaunch logic here
-        QuickPlay quickPlay = QuickPlay.play().setServerAddress("deathcats.org");
+        QuickPlay quickPlay = QuickPlay.play().setDefaultServerAddress("deathcats.org");
 
     }
 
@@ -0,0 +1,104 @@
+package org.tessa.prelaunch.api;
+import net.minecraft.world.entity.player.Input;
+
+// any combination of the 7 Input keys packed into the low 7 bits of an int
+// there is exactly one instance per combination, so masks can be compared with == and stored as their bits
+public final class InputMask implements SafeValue {
+
+    public static final int FORWARD = 1;
+    public static final int BACKWARD = 1 << 1;
+    public static final int LEFT = 1 << 2;
+    public static final int RIGHT = 1 << 3;
+    public static final int JUMP = 1 << 4;
+    public static final int SHIFT = 1 << 5;
+    public static final int SPRINT = 1 << 6;
+    public static final int ALL = (1 << 7) - 1;
+
+    private static final String[] NAMES = {"FORWARD", "BACKWARD", "LEFT", "RIGHT", "JUMP", "SHIFT", "SPRINT"};
+    private static final InputMask[] MASKS = new InputMask[ALL + 1];
+    static {
+        for(int bits = 0; bits <= ALL; bits++) MASKS[bits] = new InputMask(bits);
+    }
+
+    public static final InputMask NONE = MASKS[0];
+
+    private final int bits;
+    private final Input input;
+
+    private InputMask(int bits) {
+        this.bits = bits;
+        this.input = new Input((bits & FORWARD) != 0, (bits & BACKWARD) != 0, (bits & LEFT) != 0, (bits & RIGHT) != 0,
+                (bits & JUMP) != 0, (bits & SHIFT) != 0, (bits & SPRINT) != 0);
+    }
+
+    // the mask of the keys set in bits, bits above the 7 key bits are ignored
+    public static InputMask of(int bits) {
+        return MASKS[bits & ALL];
+    }
+
+    public static InputMask of(Input input) {
+        return MASKS[(input.forward() ? FORWARD : 0) | (input.backward() ? BACKWARD : 0) | (input.left() ? LEFT : 0) | (input.right() ? RIGHT : 0)
+                | (input.jump() ? JUMP : 0) | (input.shift() ? SHIFT : 0) | (input.sprint() ? SPRINT : 0)];
+    }
+
+    public static InputMask of(Move move) {
+        return of(move.move());
+    }
+
+    // every mask, indexed by its bits
+    public static InputMask[] values() {
+        return MASKS.clone();
+    }
+
+    public int bits() {
+        return this.bits;
+    }
+
+    // the Input of this mask, shared by every caller
+    public Input input() {
+        return this.input;
+    }
+
+    public boolean has(int keys) {
+        return (this.bits & keys) == keys;
+    }
+
+    public InputMask with(int keys) {
+        return of(this.bits | keys);
+    }
+
+    public InputMask without(int keys) {
+        return of(this.bits & ~keys);
+    }
+
+    public String className() {return "InputMask";}
+
+    public InputMask shallowCopy() {return this;}
+
+    public InputMask deepCopy() {return this;}
+
+    public boolean isEnum() {return false;}
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof InputMask mask && mask.bits == this.bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.bits;
+    }
+
+    // the set keys joined by |, e.g. FORWARD|SPRINT, or NONE
+    @Override
+    public String toString() {
+        if(this.bits == 0) return "NONE";
+        StringBuilder builder = new StringBuilder();
+        for(int key = 0; key < NAMES.length; key++) {
+            if((this.bits & 1 << key) == 0) continue;
+            if(!builder.isEmpty()) builder.append('|');
+            builder.append(NAMES[key]);
+        }
+        return builder.toString();
+    }
+}
@@ -34,6 +34,32 @@ public enum Move implements SafeValue {
         return move;
     }
 
+    // the move pressing the keys of mask, or the move pressing the most of them and no others
+    // key combinations without a move of their own, such as sprinting sideways, lose the keys no move has
+    public static Move of(InputMask mask) {
+        return Nearest.MOVES[mask.bits()];
+    }
+
+    // built on first use, InputMask and Move refer to each other during class initialization
+    private static final class Nearest {
+
+        private static final Move[] MOVES = new Move[InputMask.ALL + 1];
+        static {
+            for(int bits = 0; bits <= InputMask.ALL; bits++) {
+                Move nearest = STAND_TALL;
+                int kept = -1;
+                for(Move move : values()) {
+                    int keys = InputMask.of(move).bits();
+                    if((keys & ~bits) == 0 && Integer.bitCount(keys) > kept) {
+                        nearest = move;
+                        kept = Integer.bitCount(keys);
+                    }
+                }
+                MOVES[bits] = nearest;
+            }
+        }
+    }
+
     public String className() {return "Move";}
 
     public Move shallowCopy() {return  this;}
@@ -1,16 +1,30 @@
 package org.tessa.prelaunch.api;
+import org.tessa.prelaunch.impl.PropertyRegistry;
 import org.tessa.prelaunch.impl.TessaPropertyModifier;
+import java.time.Duration;
 import java.util.Map;
 public interface PropertyModifier {
 
-    static PropertyModifier modify(String namespace) { return new TessaPropertyModifier(namespace);}
+    // every call with the same namespace returns the same instance, reloaded when its file changes
+    static PropertyModifier modify(String namespace) { return PropertyRegistry.get().modify(namespace);}
 
-    static PropertyModifier modifyDefault() { return new TessaPropertyModifier();}
+    static PropertyModifier modifyDefault() { return PropertyRegistry.get().modifyDefault();}
 
     Map<String,String> asMap();
 
     String getProperty(String key, String defaultValue);
 
+    // typed getters return defaultValue for missing, blank or invalid values and cache what they parsed
+    int getInt(String key, int defaultValue);
+
+    long getLong(String key, long defaultValue);
+
+    // true, yes, on and 1 or false, no, off and 0
+    boolean getBoolean(String key, boolean defaultValue);
+
+    // a number with a unit of ns, us, ms, s, m, h, d or t (game ticks), milliseconds without one, or an ISO-8601 duration
+    Duration getDuration(String key, Duration defaultValue);
+
     TessaPropertyModifier setProperty(String key, String value, boolean write);
 
     TessaPropertyModifier unsetProperty(String key, boolean write);
@@ -18,4 +32,16 @@ public interface PropertyModifier {
     TessaPropertyModifier removeProperty(String key, boolean write);
 
     TessaPropertyModifier write();
+
+    // defers writes until the matching commit(), batches can be nested
+    TessaPropertyModifier begin();
+
+    // ends a batch, the outermost commit writes the file once if anything asked to write inside it
+    TessaPropertyModifier commit();
+
+    // writes the file now if a write is pending
+    TessaPropertyModifier flush();
+
+    // writes in the background at most delayMillis after the first unwritten change, 0 writes synchronously again
+    TessaPropertyModifier writeBehind(long delayMillis);
 }
@@ -3,7 +3,10 @@ import org.tessa.prelaunch.impl.TessaQuickPlay;
 
 public interface QuickPlay {
     static QuickPlay play() { return new TessaQuickPlay();}
+    static QuickPlay play(String instanceId) { return new TessaQuickPlay(instanceId);}
     QuickPlay setServerAddress(String serverAddress);
+    // sets the server address only if the profile has none, so addresses written by a launcher or by hand are kept
+    QuickPlay setDefaultServerAddress(String serverAddress);
     QuickPlay unsetServerAddress();
     QuickPlay removeServerAddressKey(boolean writeToFile);
 }
@@ -3,6 +3,7 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.Map;
 import java.io.File;
+import org.tessa.prelaunch.impl.SequenceView;
 
 // implementations are thread safe
 // T must be one of the follow : an enum, extend cloneable, or have a copy constructor
@@ -74,6 +75,51 @@ public interface Sequence<T extends SafeValue> extends Cloneable {
      */
     <R extends Sequence<T>> R subsequence(int startingTick, int until);
 
+    /**
+     * Returns a read-only view of the terms in the range `[startingTick, until)`. The view shares the
+     * storage of this sequence instead of copying it, and later edits of this sequence are not visible through it.
+     * Bounds out of range are clamped like {@link #subsequence(int, int)}.
+     *
+     * @param startingTick The start tick index (inclusive).
+     * @param until The end tick index (exclusive).
+     * @return A read-only view of the range.
+     */
+    default Sequence<T> slice(int startingTick, int until) {
+        return SequenceView.of(this).slice(startingTick, until);
+    }
+
+    /**
+     * Returns a read-only view of the terms of this sequence followed by the terms of another,
+     * sharing the storage of both.
+     *
+     * @param other The sequence whose terms follow the terms of this sequence.
+     * @return A read-only view of both sequences.
+     */
+    default Sequence<T> concat(Sequence<T> other) {
+        return SequenceView.of(this).concat(other);
+    }
+
+    /**
+     * Returns a read-only view of the terms of this sequence repeated {@code times} times,
+     * sharing the storage of this sequence.
+     *
+     * @param times The number of repetitions.
+     * @return A read-only view of the repeated terms.
+     */
+    default Sequence<T> repeat(int times) {
+        return SequenceView.of(this).repeat(times);
+    }
+
+    /**
+     * Returns a read-only view of the terms of this sequence from last to first,
+     * sharing the storage of this sequence.
+     *
+     * @return A read-only view of the reversed terms.
+     */
+    default Sequence<T> reversed() {
+        return SequenceView.of(this).reversed();
+    }
+
     /**
      * Adds a value to the end of the sequence.
      *
@@ -189,6 +235,7 @@ public interface Sequence<T extends SafeValue> extends Cloneable {
 
     /**
      * Removes all terms from the sequence that match the terms of the specified subsequence.
+     * Matches are found scanning left to right and do not overlap.
      *
      * @param subsequence The subsequence whose terms should be removed.
      * @param <R> A type of sequence extending this sequence.
@@ -196,6 +243,51 @@ public interface Sequence<T extends SafeValue> extends Cloneable {
      */
     <R extends Sequence<T>> R removeAll(R subsequence);
 
+    /**
+     * Finds the first occurrence of the terms of a pattern at or after the given tick.
+     * The search is linear in the length of the sequence.
+     *
+     * @param pattern The sequence whose terms are searched for.
+     * @param fromTick The tick to start searching from.
+     * @return The tick the first match starts at, or {@code -1} if there is none.
+     */
+    int indexOf(Sequence<T> pattern, int fromTick);
+
+    /**
+     * Finds the first occurrence of the terms of a pattern.
+     *
+     * @param pattern The sequence whose terms are searched for.
+     * @return The tick the first match starts at, or {@code -1} if there is none.
+     */
+    int indexOf(Sequence<T> pattern);
+
+    /**
+     * Finds every occurrence of the terms of a pattern. Matches are found scanning left to right and do not overlap.
+     *
+     * @param pattern The sequence whose terms are searched for.
+     * @return The ticks the matches start at, in increasing order.
+     */
+    int[] findAll(Sequence<T> pattern);
+
+    /**
+     * Counts the occurrences of the terms of a pattern. Matches are found scanning left to right and do not overlap.
+     *
+     * @param pattern The sequence whose terms are searched for.
+     * @return The number of matches.
+     */
+    int count(Sequence<T> pattern);
+
+    /**
+     * Replaces every occurrence of the terms of a pattern with the terms of a replacement.
+     * Matches are found scanning left to right and do not overlap.
+     *
+     * @param pattern The sequence whose terms are searched for.
+     * @param replacement The sequence whose terms replace each match.
+     * @param <R> A type of sequence extending this sequence.
+     * @return The current sequence instance.
+     */
+    <R extends Sequence<T>> R replaceAll(Sequence<T> pattern, Sequence<T> replacement);
+
     /**
      * Clears the sequence, removing all elements.
      *
@@ -231,6 +323,13 @@ public interface Sequence<T extends SafeValue> extends Cloneable {
      */
     boolean equals(Object obj);
 
+    /**
+     * Returns a hash of the terms, consistent with {@link #equals(Object)}, so sequences can be used as map keys.
+     *
+     * @return The hash code of the terms.
+     */
+    int hashCode();
+
     /**
      * Generates a string representation of the sequence in the form `tick=value\\n`.
      *
@@ -253,10 +352,22 @@ public interface Sequence<T extends SafeValue> extends Cloneable {
     Map<Integer, T> asMap();
 
     /**
-     * Writes the sequence to a file in the format `tick=value\\n`.
+     * Writes the sequence to a file in the format `tick=value\\n`. This is a debug export. For enum
+     * values printed as their constant names, {@code ScriptCompiler} imports it as a script of
+     * {@code tick=value} statements. Use {@link #writeBinary(String)} to persist a sequence.
      *
      * @param filename The name of the file to write to.
      * @return The {@code File} reference of the written file.
      */
     File write(String filename);
+
+    /**
+     * Writes the sequence to a file in the versioned binary sequence format, which stores the
+     * type, name, default value and length followed by the terms as ordinals or runs of ordinals.
+     * Only sequences of enum values can be written in this format.
+     *
+     * @param filename The name of the file to write to.
+     * @return The {@code File} reference of the written file, or {@code null} if it could not be written.
+     */
+    File writeBinary(String filename);
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package org.tessa.prelaunch.api;
+
+/**
+ * Answers what a player can walk through and stand on, block by block, for path finding.
+ * Implementations read a running client's level or a synthetic grid.
+ */
+@FunctionalInterface
+public interface Walkability {
+
+    /**
+     * Checks if a player's body can occupy a block, for example air or grass but not stone, glass or water.
+     *
+     * @param x The block x coordinate.
+     * @param y The block y coordinate.
+     * @param z The block z coordinate.
+     * @return {@code true} if the block doesn't collide with a player.
+     */
+    boolean passable(int x, int y, int z);
+
+    /**
+     * Checks if a player can stand on top of a block. The default is every block that is not passable.
+     *
+     * @param x The block x coordinate.
+     * @param y The block y coordinate.
+     * @param z The block z coordinate.
+     * @return {@code true} if the top of the block carries a player.
+     */
+    default boolean solid(int x, int y, int z) {
+        return !passable(x, y, z);
+    }
+
+    /**
+     * Checks if a player can stand with their feet in a block: it and the block above are passable
+     * and the block below is solid.
+     *
+     * @param x The block x coordinate.
+     * @param y The block y coordinate of the feet.
+     * @param z The block z coordinate.
+     * @return {@code true} if a player can stand there.
+     */
+    default boolean standable(int x, int y, int z) {
+        return solid(x, y - 1, z) && passable(x, y, z) && passable(x, y + 1, z);
+    }
+}
@@ -1,9 +1,13 @@
 package org.tessa.prelaunch.impl;
 import org.tessa.prelaunch.api.Sequence;
 import org.tessa.prelaunch.api.SafeValue;
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
+import java.util.function.Consumer;
+import org.tessa.prelaunch.impl.SequenceMetrics.Operation;
 import java.io.File;
 
 import static org.tessa.prelaunch.TessaPreLaunch.logger;
@@ -11,19 +15,51 @@ import static org.tessa.prelaunch.TessaPreLaunch.logger;
 @SuppressWarnings("unchecked")
 public abstract class AbstractSequence<T extends SafeValue> implements Sequence<T> {
 
-    public static String WARNING_MESSAGE = "Sequence Warning. Type: %s State -> Tick: %s \n Number of terms: %s \n Terms: %s \n Method: %s";
-
-    private final LinkedList<T> term;
-    private int tick;
-    private String name;
-    private T defaultValue;
+    public static String WARNING_MESSAGE = "Sequence Warning. Type: %s State -> Tick: %s \n Number of terms: %s \n Terms near tick: %s \n Method: %s \n Warnings suppressed since the last one: %s";
+    public static final int WARNING_WINDOW = 8;
+    private static final SequenceMetrics METRICS = SequenceMetrics.get();
+
+    private final Terms<T> term;
+    private final SequenceStorage storage;
+    // what unsynchronized readers see, the working storage itself unless snapshot reads are enabled
+    private volatile Terms<T> published;
+    private boolean snapshotReads;
+    private int batchDepth;
+    private volatile String name;
+    private volatile T defaultValue;
+    // ContentHash sum of the working storage, kept up to date by every edit
+    private long hashSum;
+    // cached BASE^hashedSize, so appending a term costs a single multiplication
+    private long power = 1;
+    private int powerSize;
+    // hash of the terms as they were after the last completed edit, read without locking
+    private volatile long contentHash = ContentHash.finish(0, 0);
     protected AbstractSequence(String name, T defaultValue) {
-        this.term = new LinkedList<>();
-        this.tick = -1;
+        this(name, defaultValue, SequenceStorage.of(defaultValue));
+    }
+
+    protected AbstractSequence(String name, T defaultValue, SequenceStorage storage) {
+        if(storage == SequenceStorage.ORDINAL && SequenceStorage.of(defaultValue) != SequenceStorage.ORDINAL) {
+            throw new IllegalArgumentException("Ordinal storage requires an enum default value");
+        }
+        this.term = storage.create(defaultValue);
+        this.published = this.term;
+        this.storage = storage;
         this.name = name;
         this.defaultValue = defaultValue;
     }
 
+    // for sequences that build their own storage of the given kind, e.g. ordinal storage over a domain that isn't an enum
+    AbstractSequence(String name, T defaultValue, SequenceStorage storage, Terms<T> terms) {
+        this.term = terms;
+        this.published = this.term;
+        this.storage = storage;
+        this.name = name;
+        this.defaultValue = defaultValue;
+        this.hashSum = ContentHash.of(terms, 0, terms.size());
+        this.contentHash = ContentHash.finish(this.hashSum, terms.size());
+    }
+
 
     public abstract String sequenceType();
 
@@ -38,37 +74,129 @@ public abstract class AbstractSequence<T extends SafeValue> implements Sequence<
 
     public abstract <R extends Sequence<T>> R deepCopy(String copyname);
 
+    // the backing storage, callers must hold the sequence lock
+    final Terms<T> terms() {
+        return this.term;
+    }
+
+    // an unchanging copy of the terms for views, the storage shares its arrays until the next edit before the end
+    final synchronized Terms<T> snapshotTerms() {
+        return this.term.snapshot();
+    }
+
+    public SequenceStorage storage() {
+        return this.storage;
+    }
+
+    // with snapshot reads enabled, at(), tick() and hasValueAt() never take the sequence lock
+    // and always see the terms as they were after the last completed edit.
+    // writers still serialize on the sequence lock and publish a new snapshot after every edit,
+    // appending is O(1) since the storage shares its arrays with the snapshot, other edits copy the storage
+    // the first time they touch shared terms, so group them with batch() to publish once
+    public final synchronized <R extends Sequence<T>> R setSnapshotReads(boolean snapshotReads) {
+        this.snapshotReads = snapshotReads;
+        this.published = snapshotReads ? this.term.snapshot() : this.term;
+        return (R) this;
+    }
+
+    public final boolean snapshotReads() {
+        return this.snapshotReads;
+    }
+
+    // runs edits holding the sequence lock and publishes a single snapshot when they finish
+    public final synchronized <R extends Sequence<T>> R batch(Consumer<R> edits) {
+        this.batchDepth++;
+        try {
+            edits.accept((R) this);
+        } finally {
+            this.batchDepth--;
+            publish();
+        }
+        return (R) this;
+    }
+
+    // makes the current terms visible to unsynchronized readers, callers must hold the sequence lock
+    final void publish() {
+        this.contentHash = ContentHash.finish(this.hashSum, this.term.size());
+        if(this.snapshotReads && this.batchDepth == 0) this.published = this.term.snapshot();
+    }
+
+    // the terms a reader sees, the working storage for the thread holding the lock
+    private Terms<T> view() {
+        Terms<T> terms = this.published;
+        if(terms != this.term && Thread.holdsLock(this)) return this.term;
+        return terms;
+    }
+
+    // publishes an edit and records its latency, callers must hold the sequence lock
+    final <R extends Sequence<T>> R published(Operation operation, long start) {
+        publish();
+        METRICS.record(operation, start, this.term.size());
+        return (R) this;
+    }
+
     @Override
     public final synchronized String toString() {
         StringBuilder builder = new StringBuilder();
-        for(int i = 0; i <= this.tick(); i++) builder.append(String.format("%d=%s\n", i, this.at(i)));
+        for(int i = 0; i < this.term.size(); i++) builder.append(i).append('=').append(this.term.get(i)).append('\n');
         return builder.toString();
     }
 
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public boolean hasValueAt(int tick) {
-        return tick >= 0 && tick < this.term.size();
+        return tick >= 0 && tick < view().size();
     }
     // returns the last set tick
 
-    @SuppressWarnings({"UnnecessaryToStringCall", "StringConcatenationArgumentToLogCall"})
+    // counts the out of bounds tick and logs the terms around it, at most once per method every SequenceMetrics.WARNING_INTERVAL_NANOS
+    protected void logWarning(String methodName, int tick, String message) {
+        METRICS.recordOutOfBounds(methodName);
+        long suppressed = METRICS.allowWarning(methodName);
+        if(suppressed < 0) return;
+        Terms<T> terms = view();
+        logger.warn(String.format(WARNING_MESSAGE, this.sequenceType(), tick, terms.size(), window(terms, tick), methodName, suppressed), new IndexOutOfBoundsException(message));
+    }
+
     protected void logWarning(String methodName, Exception e) {
-        logger.warn(String.format(WARNING_MESSAGE, this.sequenceType(), this.tick, this.term.size(), this.toString(), methodName), e);
+        METRICS.recordOutOfBounds(methodName);
+        long suppressed = METRICS.allowWarning(methodName);
+        if(suppressed < 0) return;
+        Terms<T> terms = view();
+        logger.warn(String.format(WARNING_MESSAGE, this.sequenceType(), terms.size() - 1, terms.size(), window(terms, terms.size() - 1), methodName, suppressed), e);
+    }
+
+    // the terms at most WARNING_WINDOW ticks away from tick, never the whole sequence
+    private String window(Terms<T> terms, int tick) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            int from = Math.max(0, Math.min(tick, terms.size()) - WARNING_WINDOW);
+            int until = Math.min(terms.size(), Math.max(tick, 0) + WARNING_WINDOW + 1);
+            if(from > 0) builder.append("... ");
+            for(int i = from; i < until; i++) builder.append(i).append('=').append(terms.get(i)).append(' ');
+            if(until < terms.size()) builder.append("...");
+        } catch (RuntimeException e) {
+            builder.append("unavailable, edited concurrently");
+        }
+        return builder.toString();
     }
 
     // returns last set tick
     public int tick() {
-        return this.tick;
+        return view().size() - 1;
     }
 
     // get reference to value at tick
     @Override
     public T at(int tick) {
-        if(!hasValueAt(tick)) {
-            logWarning("Sequence::at", new IndexOutOfBoundsException("Tick outside of sequence"));
+        long start = METRICS.start();
+        Terms<T> terms = view();
+        if(tick < 0 || tick >= terms.size()) {
+            logWarning("Sequence::at", tick, "Tick outside of sequence");
             return this.defaultValue;
         }
-        return this.term.get(tick);
+        T value = terms.get(tick);
+        METRICS.record(Operation.AT, start);
+        return value;
     }
     // get sequence name
     public String name() {
@@ -90,36 +218,138 @@ public abstract class AbstractSequence<T extends SafeValue> implements Sequence<
     }
 
 
-    private void fillWithDefault(int lo, int until) {
-        for(int i = lo; i < until; i++) this.term.add(i, this.defaultValue);
+    // fills [tick() + 1, until) with the default value
+    private void fillWithDefault(int until) {
+        if(until > this.term.size()) {
+            hashInsert(this.term.size(), until - this.term.size(), this.defaultValue);
+            this.term.insert(this.term.size(), until - this.term.size(), this.defaultValue);
+        }
+    }
+
+    // append terms [from, until) of source, sharing the storage layout when both sequences use the same one
+    protected final synchronized void addRange(Sequence<T> source, int from, int until) {
+        long start = METRICS.start();
+        int size = this.term.size();
+        if(source instanceof AbstractSequence<T> sequence) {
+            this.term.addAll(sequence.term, from, until);
+        } else if(source instanceof ReadOnlySequence<T> readOnly) {
+            ViewTerms.copy(readOnly.terms(), this.term, from, until);
+        } else {
+            for(int i = from; i < until; i++) this.term.add(source.at(i));
+        }
+        rehash(size, this.term.size());
+        published(Operation.COPY, start);
+    }
+
+    // exclusive end of the run of equal terms containing tick, tick must have a value
+    protected final int runEnd(int tick) {
+        return this.term.runEnd(tick);
+    }
+
+    // true if both sequences hold equal terms at every tick
+    // sequences with different content hashes are told apart in O(1) without comparing their terms
+    protected final synchronized boolean termsEqual(AbstractSequence<T> sequence) {
+        if(this.contentHash != sequence.contentHash) return false;
+        return this.term.contentEquals(sequence.term);
+    }
+
+    // hash of the terms after the last completed edit, O(1) and lock free
+    // equal terms give equal hashes whatever the sequence type, so different hashes prove different terms
+    public final long contentHash() {
+        return this.contentHash;
+    }
+
+    // false if sequence certainly holds other terms, true if the terms have to be compared to be sure
+    public final boolean mayEqual(Sequence<T> sequence) {
+        if(sequence instanceof AbstractSequence<T> other) return this.contentHash == other.contentHash;
+        if(sequence instanceof ReadOnlySequence<T> readOnly) return this.contentHash == readOnly.contentHash();
+        return sequence != null && sequence.tick() == tick();
+    }
+
+    @Override
+    public final int hashCode() {
+        return ContentHash.hashCode(this.contentHash);
+    }
+
+    // removes the contribution of terms [from, until) from the content hash
+    // for subclasses editing terms() in place, call before the edit and rehash the range after it
+    final void unhash(int from, int until) {
+        this.hashSum -= ContentHash.of(this.term, from, until);
+    }
+
+    // adds the contribution of terms [from, until), after they were edited in place or appended through terms()
+    final void rehash(int from, int until) {
+        this.hashSum += ContentHash.of(this.term, from, until);
+    }
+
+    // BASE^size, cached because appends ask for the next power every time
+    private long powerAt(int size) {
+        if(size != this.powerSize) {
+            this.power = size == this.powerSize + 1 ? this.power * ContentHash.BASE : ContentHash.pow(ContentHash.BASE, size);
+            this.powerSize = size;
+        }
+        return this.power;
+    }
+
+    // the part of the hash sum contributed by terms [from, size), summed over whichever side of from is shorter
+    private long suffixSum(int from) {
+        int size = this.term.size();
+        if(size - from <= from) return ContentHash.of(this.term, from, size);
+        return this.hashSum - ContentHash.of(this.term, 0, from);
+    }
+
+    // updates the hash for count copies of value inserted at index, called before the storage is edited
+    private void hashInsert(int index, int count, T value) {
+        long suffix = index == this.term.size() ? 0 : suffixSum(index);
+        this.hashSum += suffix * (ContentHash.pow(ContentHash.BASE, count) - 1)
+                + ContentHash.term(value) * powerAt(index) * ContentHash.geometric(count);
+    }
+
+    // updates the hash for the removal of terms [from, until), called before the storage is edited
+    private void hashRemove(int from, int until) {
+        long removed = ContentHash.of(this.term, from, until);
+        long suffix = until == this.term.size() ? 0 : suffixSum(until);
+        this.hashSum += suffix * (ContentHash.pow(ContentHash.INVERSE, until - from) - 1) - removed;
+    }
+
+    // recomputes the hash after an edit that rewrote the whole storage
+    private void rehashAll() {
+        this.hashSum = ContentHash.of(this.term, 0, this.term.size());
     }
 
     // add value at end of sequence
     public final synchronized <R extends Sequence<T>> R add(T value) {
-        this.tick++;
+        long start = METRICS.start();
+        this.hashSum += ContentHash.term(value) * powerAt(this.term.size());
         this.term.add(value);
-        return (R) this;
+        return published(Operation.ADD, start);
     }
     // add at tick, preexisting elements in [tick, end] are bumped to [tick +1, end + 1]
+    // if tick is past the end, the gap is filled with the default value
     public final synchronized <R extends Sequence<T>> R add(int tick, T value) {
-        if(!hasValueAt(tick -1)) {
-            fillWithDefault(this.tick + 1, tick - 1);
-            this.tick = tick - 1;
-            logWarning(this.getClass().getName() + "::add", new IndexOutOfBoundsException("Tick outside of sequence"));
+        long start = METRICS.start();
+        if(tick < 0) {
+            logWarning("Sequence::add", tick, "Tick outside of sequence");
+            return published(Operation.ADD, start);
         }
-        this.term.add(tick, value);
-        this.tick++;
-        return (R) this;
+        if(tick > this.term.size()) {
+            fillWithDefault(tick);
+            logWarning("Sequence::add", tick, "Tick outside of sequence");
+        }
+        hashInsert(tick, 1, value);
+        this.term.insert(tick, 1, value);
+        return published(Operation.ADD, start);
     }
 
     // add a sequence to the end of the sequence
     // references to terms are the same
     public final synchronized <R extends Sequence<T>> R add(R sequence) {
-        for(int i = 0; i <= sequence.tick(); i++) this.add(sequence.at(i));
+        addRange(sequence, 0, sequence.tick() + 1);
         return (R) this;
     }
 
     public final synchronized <R extends Sequence<T>> R addCopy(R sequence) {
+        if(this.storage == SequenceStorage.ORDINAL) return add(sequence);
         for(int i = 0; i <= sequence.tick(); i++) this.add((T) sequence.at(i).deepCopy());
         return (R) this;
     }
@@ -127,13 +357,17 @@ public abstract class AbstractSequence<T extends SafeValue> implements Sequence<
     // add value at indices [lo, until) without overwriting.
     // preexisting elements in [lo, until) are moved to the right
     public final synchronized <R extends Sequence<T>> R addFromUntil(int lo, int until, T value) {
-        if(!hasValueAt(lo - 1)) {
-            fillWithDefault(this.tick + 1, lo);
-            this.tick = lo - 1;
-            logWarning("Sequence::addFromUntil", new IndexOutOfBoundsException("Tick outside of sequence"));
+        long start = METRICS.start();
+        if(lo < 0 || lo > this.term.size()) {
+            fillWithDefault(lo);
+            logWarning("Sequence::addFromUntil", lo, "Tick outside of sequence");
+            lo = Math.max(lo, 0);
         }
-        for(int i = lo; i < until; i++) this.term.add(i, value);
-        return (R) this;
+        if(until > lo) {
+            hashInsert(lo, until - lo, value);
+            this.term.insert(lo, until - lo, value);
+        }
+        return published(Operation.ADD_RANGE, start);
     }
 
     // overwrite the element at tick with value
@@ -141,66 +375,144 @@ public abstract class AbstractSequence<T extends SafeValue> implements Sequence<
     // first the gap is filled with the default sequence value
     // then value is added at the end
     public final synchronized <R extends Sequence<T>> R set(int tick, T value) {
-        if(!hasValueAt(tick)) {
-            fillWithDefault(this.tick + 1, tick + 1);
-            this.tick = tick;
+        long start = METRICS.start();
+        if(tick < 0) {
+            logWarning("Sequence::set", tick, "Tick outside of sequence");
+            return published(Operation.SET, start);
+        }
+        if(tick >= this.term.size()) {
+            fillWithDefault(tick);
+            this.hashSum += ContentHash.term(value) * powerAt(this.term.size());
+            this.term.add(value);
+            return published(Operation.SET, start);
         }
+        this.hashSum += (ContentHash.term(value) - ContentHash.term(this.term.get(tick))) * ContentHash.pow(ContentHash.BASE, tick);
         this.term.set(tick, value);
-        return (R) this;
+        return published(Operation.SET, start);
     }
 
     // elements at indices [startingTick, until) are replaced with value if the exist
     // At places in [startingTick, until) without preexisting elements, value is created there
     // if necessary, terms [tick() + 1, startingTick) are fulled with defaultValue()
     public final synchronized <R extends Sequence<T>> R setFromUntil(int startingTick, int until, T value) {
+        long start = METRICS.start();
         int lo = Math.max(startingTick, 0);
-        for(int i = lo; i < until; i++) {
-            if(!hasValueAt(i)) this.term.add(i, value);
-            else this.term.set(i, value);
+        if(until <= lo) return published(Operation.SET_RANGE, start);
+        fillWithDefault(lo);
+        int size = this.term.size();
+        if(lo < size) {
+            int hi = Math.min(until, size);
+            unhash(lo, hi);
+            this.term.fill(lo, hi, value);
+            this.hashSum += ContentHash.term(value) * ContentHash.pow(ContentHash.BASE, lo) * ContentHash.geometric(hi - lo);
         }
-        return (R) this;
+        if(until > size) {
+            hashInsert(size, until - Math.max(lo, size), value);
+            this.term.insert(size, until - Math.max(lo, size), value);
+        }
+        return published(Operation.SET_RANGE, start);
     }
     // removes element with index tick
     // preexisting elements [tick + 1, end] are moved one to the left
     // if tick doesn't have an element, the error is logged and the same sequence returned
     public final synchronized <R extends Sequence<T>> R remove(int tick) {
-        if(!hasValueAt(tick)) {
-            logWarning(this.getClass().getName() + "::remove", new IndexOutOfBoundsException("Tick outside of sequence"));
-            return (R) this;
+        long start = METRICS.start();
+        if(tick < 0 || tick >= this.term.size()) {
+            logWarning("Sequence::remove", tick, "Tick outside of sequence");
+            return published(Operation.REMOVE, start);
         }
-        this.term.remove(tick);
-        this.tick--;
-        return (R) this;
+        hashRemove(tick, tick + 1);
+        this.term.remove(tick, tick + 1);
+        return published(Operation.REMOVE, start);
     }
     // elements at indices [startingTick, until) are removed if they exist
     // preexisting elements at [until, end] are moved to [startingTick, end - (until - startingTick)]
-    @SuppressWarnings("ListRemoveInLoop")
     public final synchronized <R extends Sequence<T>> R remove(int startingTick, int until) {
-        if(startingTick < 0 || until > this.tick() + 1) logWarning(this.getClass().getName() + "::remove", new IndexOutOfBoundsException("Tick outside of sequence"));
+        long start = METRICS.start();
+        if(startingTick < 0 || until > this.term.size()) logWarning("Sequence::remove", startingTick < 0 ? startingTick : until, "Tick outside of sequence");
         startingTick = Math.max(startingTick, 0);
-        until = Math.min(until, this.tick() + 1);
-        for(int i = --until; i >= startingTick; i-- ) this.term.remove(i);
-        return (R) this;
+        until = Math.min(until, this.term.size());
+        if(until > startingTick) {
+            hashRemove(startingTick, until);
+            this.term.remove(startingTick, until);
+        }
+        return published(Operation.REMOVE_RANGE, start);
     }
     // removes all elements with element.equals(value). Later elements bumped to the left
     public final synchronized <R extends Sequence<T>> R removeAll(T value) {
-        this.term.removeIf(v -> v.equals(value));
-        return (R) this;
+        long start = METRICS.start();
+        if(this.term.removeIf(v -> Objects.equals(v, value)) > 0) rehashAll();
+        return published(Operation.REMOVE_ALL, start);
     }
     // remove all elements with element.equals(value) for some value in values
     // remaining elements are bumped left to fill holes in the sequence
     public final synchronized <R extends Sequence<T>> R removeAll(Collection<T> values) {
-        for(T value : values) this.removeAll(value);
-        return (R) this;
+        long start = METRICS.start();
+        if(this.term.removeIf(values::contains) > 0) rehashAll();
+        return published(Operation.REMOVE_ALL, start);
     }
+    // removes the non overlapping matches of subsequence found scanning left to right
     public final synchronized <R extends Sequence<T>> R removeAll(R subsequence) {
-        if(subsequence.tick() > this.tick()) return (R) this;
-        if(subsequence.tick() < 0) return (R) this;
-        for(int i = 0; i < this.tick() - subsequence.tick() + 1; i++) {
-            if(this.subsequence(i, i + subsequence.tick() + 1).equals(subsequence)) remove(i, i + subsequence.tick() + 1);
-            if(this.tick - i + 1 < subsequence.tick()) break;
+        return replaceAll(subsequence, null);
+    }
+
+    // tick of the first match of pattern starting at or after fromTick, or -1
+    public final synchronized int indexOf(Sequence<T> pattern, int fromTick) {
+        long start = METRICS.start();
+        int match = new SequenceMatcher<>(pattern).find(this.term, fromTick);
+        METRICS.record(Operation.SEARCH, start);
+        return match;
+    }
+
+    public final int indexOf(Sequence<T> pattern) {
+        return indexOf(pattern, 0);
+    }
+
+    // starting ticks of the non overlapping matches of pattern found scanning left to right
+    public final synchronized int[] findAll(Sequence<T> pattern) {
+        long start = METRICS.start();
+        SequenceMatcher<T> matcher = new SequenceMatcher<>(pattern);
+        int[] matches = new int[8];
+        int count = 0;
+        for(int match = matcher.find(this.term, 0); match >= 0; match = matcher.find(this.term, match + matcher.length())) {
+            if(count == matches.length) matches = Arrays.copyOf(matches, count << 1);
+            matches[count++] = match;
         }
-        return (R) this;
+        METRICS.record(Operation.SEARCH, start);
+        return Arrays.copyOf(matches, count);
+    }
+
+    public final synchronized int count(Sequence<T> pattern) {
+        long start = METRICS.start();
+        SequenceMatcher<T> matcher = new SequenceMatcher<>(pattern);
+        int count = 0;
+        for(int match = matcher.find(this.term, 0); match >= 0; match = matcher.find(this.term, match + matcher.length())) count++;
+        METRICS.record(Operation.SEARCH, start);
+        return count;
+    }
+
+    // replaces the non overlapping matches of pattern found scanning left to right with the terms of replacement
+    // the sequence is rebuilt once, so the cost is linear in its length whatever the number of matches
+    public final synchronized <R extends Sequence<T>> R replaceAll(Sequence<T> pattern, Sequence<T> replacement) {
+        long start = METRICS.start();
+        SequenceMatcher<T> matcher = new SequenceMatcher<>(pattern);
+        int match = matcher.find(this.term, 0);
+        if(match < 0) return published(Operation.REPLACE_ALL, start);
+        Terms<T> replacementTerms = replacement instanceof AbstractSequence<T> sequence ? sequence.term : null;
+        int replacementSize = replacement == null ? 0 : replacement.tick() + 1;
+        Terms<T> rebuilt = this.term.empty();
+        int kept = 0;
+        for(; match >= 0; match = matcher.find(this.term, kept)) {
+            rebuilt.addAll(this.term, kept, match);
+            if(replacementTerms != null) rebuilt.addAll(replacementTerms, 0, replacementSize);
+            else for(int i = 0; i < replacementSize; i++) rebuilt.add(replacement.at(i));
+            kept = match + matcher.length();
+        }
+        rebuilt.addAll(this.term, kept, this.term.size());
+        this.term.clear();
+        this.term.addAll(rebuilt, 0, rebuilt.size());
+        rehashAll();
+        return published(Operation.REPLACE_ALL, start);
     }
 
 
@@ -208,37 +520,36 @@ public abstract class AbstractSequence<T extends SafeValue> implements Sequence<
 
     // the sequence is emptied of all elements
     public final synchronized <R extends Sequence<T>> R clear() {
+        long start = METRICS.start();
         this.term.clear();
-        this.tick = -1;
-        return (R) this;
+        this.hashSum = 0;
+        return published(Operation.CLEAR, start);
     }
 
     // returns a set of the elements that form the terms
     // the set of value references for non-enum
     // the enum constants themselves otherwise
     public final synchronized Set<T> asSet() {
-        return new HashSet<>(this.term);
+        HashSet<T> set = new HashSet<>();
+        for(int i = 0; i < this.term.size(); i++) set.add(this.term.get(i));
+        return set;
     }
     // returns a map from tick to element
     // the map is only a reference copy
     public final synchronized Map<Integer, T> asMap() {
         HashMap<Integer, T> map = new HashMap<>();
-        for(int i = 0; i <= this.tick(); i++) map.put(i, this.at(i));
+        for(int i = 0; i < this.term.size(); i++) map.put(i, this.term.get(i));
         return map;
     }
     // overwrites the sequence to filename in the form tick=value\n
+    // this is a debug export that ScriptCompiler can import, use writeBinary to persist sequences that will be loaded again
     // returns the File reference which is null on exception
-    @SuppressWarnings("ResultOfMethodCallIgnored")
     public final synchronized File write(String filename) {
         File file = new File(filename);
-        try {
-            if(file.exists()) file.delete();
-            file.createNewFile();
-            FileWriter fw = new FileWriter(file);
-            for(int i = 0; i <= this.tick(); i++) {
-                fw.write(String.format("%d=%s\n", i, this.at(i)));
+        try (Writer writer = new BufferedWriter(new FileWriter(file, false))) {
+            for(int i = 0; i < this.term.size(); i++) {
+                writer.append(Integer.toString(i)).append('=').append(String.valueOf(this.term.get(i))).append('\n');
             }
-            fw.close();
         } catch (IOException e) {
             logger.error("{}::write", this.getClass().getName(), e);
             return null;
@@ -246,6 +557,12 @@ public abstract class AbstractSequence<T extends SafeValue> implements Sequence<
         return file;
     }
 
+    // overwrites the sequence to filename in the binary format read back by SequenceFile.read
+    // returns the File reference which is null on exception or if the terms are not enum values
+    public final File writeBinary(String filename) {
+        return SequenceFile.write(this, filename);
+    }
+
 
 
 }
@@ -0,0 +1,354 @@
+package org.tessa.prelaunch.impl;
+import java.util.Arrays;
+
+// orders blocks to visit so the walk between them is short, a travelling salesman path from a fixed start
+//
+// nearest neighbour builds the first order: points are bucketed into 8 block cells sorted by cell, and the nearest
+// unvisited point is found by searching shells of cells around the current one, falling back to a scan of the
+// remaining points once the shells hold more cells than there are points left.
+// 2-opt then removes crossings: only the NEIGHBOURS nearest points of each point are tried as the other end of a
+// move, the lists are sorted so the search stops at the first neighbour too far to gain, and points whose edges
+// didn't change since they were last checked are skipped.
+// the path is open, its last point is followed by nothing, so it never has to walk back to the start.
+final class BreakOrder {
+
+    private static final int CELL_SHIFT = 3;
+    private static final int NEIGHBOURS = 8;
+
+    private final int count;
+    // coordinates of the points, the start is the extra point count
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    // spatial index: point indices sorted by cell, cellKeys sorted, and cellTable from key to cell
+    private final int[] cellPoints;
+    private long[] cellKeys;
+    private int[] cellStarts;
+    private int[] cellEnds;
+    private int[] cellTable;
+
+    private BreakOrder(long start, long[] targets) {
+        this.count = targets.length;
+        this.xs = new int[this.count + 1];
+        this.ys = new int[this.count + 1];
+        this.zs = new int[this.count + 1];
+        for(int i = 0; i < this.count; i++) {
+            this.xs[i] = PathFinder.x(targets[i]);
+            this.ys[i] = PathFinder.y(targets[i]);
+            this.zs[i] = PathFinder.z(targets[i]);
+        }
+        this.xs[this.count] = PathFinder.x(start);
+        this.ys[this.count] = PathFinder.y(start);
+        this.zs[this.count] = PathFinder.z(start);
+        this.cellPoints = new int[this.count];
+        index();
+    }
+
+    // the targets in visiting order starting from start, duplicates are kept
+    static long[] order(long start, long[] targets) {
+        if(targets.length < 2) return targets.clone();
+        BreakOrder order = new BreakOrder(start, targets);
+        int[] tour = order.nearestNeighbour();
+        order.twoOpt(tour);
+        long[] ordered = new long[targets.length];
+        for(int i = 1; i < tour.length; i++) ordered[i - 1] = targets[tour[i]];
+        return ordered;
+    }
+
+    // walking length of visiting targets in order from start, straight lines between blocks
+    static double length(long start, long[] targets) {
+        double length = 0;
+        long previous = start;
+        for(long target : targets) {
+            length += distance(previous, target);
+            previous = target;
+        }
+        return length;
+    }
+
+    static double distance(long a, long b) {
+        double dx = PathFinder.x(a) - PathFinder.x(b);
+        double dy = PathFinder.y(a) - PathFinder.y(b);
+        double dz = PathFinder.z(a) - PathFinder.z(b);
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private double distance(int a, int b) {
+        double dx = this.xs[a] - this.xs[b];
+        double dy = this.ys[a] - this.ys[b];
+        double dz = this.zs[a] - this.zs[b];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private long cellKey(int point) {
+        return PathFinder.pack(this.xs[point] >> CELL_SHIFT, this.ys[point] >> CELL_SHIFT, this.zs[point] >> CELL_SHIFT);
+    }
+
+    // spatial index
+
+    private void index() {
+        long[] keys = new long[this.count];
+        for(int i = 0; i < this.count; i++) keys[i] = cellKey(i);
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        int cells = 0;
+        for(int i = 0; i < this.count; i++) {
+            if(i == 0 || sorted[i] != sorted[i - 1]) sorted[cells++] = sorted[i];
+        }
+        this.cellKeys = Arrays.copyOf(sorted, cells);
+        this.cellTable = new int[Integer.highestOneBit(Math.max(cells, 1)) * 4];
+        Arrays.fill(this.cellTable, -1);
+        int mask = this.cellTable.length - 1;
+        for(int c = 0; c < cells; c++) {
+            int slot = slot(this.cellKeys[c], mask);
+            while(this.cellTable[slot] >= 0) slot = (slot + 1) & mask;
+            this.cellTable[slot] = c;
+        }
+        // counting sort of the points by cell
+        int[] cellOf = new int[this.count];
+        this.cellStarts = new int[cells + 1];
+        for(int i = 0; i < this.count; i++) {
+            cellOf[i] = cell(keys[i]);
+            this.cellStarts[cellOf[i] + 1]++;
+        }
+        for(int c = 0; c < cells; c++) this.cellStarts[c + 1] += this.cellStarts[c];
+        this.cellEnds = Arrays.copyOf(this.cellStarts, cells);
+        for(int i = 0; i < this.count; i++) this.cellPoints[this.cellEnds[cellOf[i]]++] = i;
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * ContentHash.BASE) >>> 32) & mask;
+    }
+
+    // the cell holding cell position x, y, z or -1 if it holds no points
+    private int cell(int x, int y, int z) {
+        return cell(PathFinder.pack(x, y, z));
+    }
+
+    private int cell(long key) {
+        int mask = this.cellTable.length - 1;
+        for(int slot = slot(key, mask); this.cellTable[slot] >= 0; slot = (slot + 1) & mask) {
+            if(this.cellKeys[this.cellTable[slot]] == key) return this.cellTable[slot];
+        }
+        return -1;
+    }
+
+    // nearest neighbour
+
+    private int[] nearestNeighbour() {
+        int[] tour = new int[this.count + 1];
+        tour[0] = this.count;
+        // the unvisited points of a cell are cellPoints[cellStarts[c], liveEnds[c]), the visited ones are swapped behind
+        int[] liveEnds = this.cellEnds.clone();
+        int[] slots = new int[this.count];
+        for(int i = 0; i < this.count; i++) slots[this.cellPoints[i]] = i;
+        // the same points in one flat array, for the scan once few are left
+        int[] remaining = new int[this.count];
+        int[] remainingSlots = new int[this.count];
+        for(int i = 0; i < this.count; i++) {
+            remaining[i] = i;
+            remainingSlots[i] = i;
+        }
+        int remainingCount = this.count;
+        int current = this.count;
+        for(int step = 1; step <= this.count; step++) {
+            int next = nearest(current, liveEnds, remaining, remainingCount);
+            tour[step] = next;
+            // swap next behind the live points of its cell
+            int cell = cell(this.xs[next] >> CELL_SHIFT, this.ys[next] >> CELL_SHIFT, this.zs[next] >> CELL_SHIFT);
+            int last = this.cellPoints[--liveEnds[cell]];
+            int slot = slots[next];
+            this.cellPoints[slot] = last;
+            slots[last] = slot;
+            this.cellPoints[liveEnds[cell]] = next;
+            slots[next] = liveEnds[cell];
+            // and out of the remaining points
+            int moved = remaining[--remainingCount];
+            remaining[remainingSlots[next]] = moved;
+            remainingSlots[moved] = remainingSlots[next];
+            current = next;
+        }
+        return tour;
+    }
+
+    private int nearest(int from, int[] liveEnds, int[] remaining, int remainingCount) {
+        int cx = this.xs[from] >> CELL_SHIFT;
+        int cy = this.ys[from] >> CELL_SHIFT;
+        int cz = this.zs[from] >> CELL_SHIFT;
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for(int radius = 0; ; radius++) {
+            // every point outside the shells searched so far is at least this far away
+            if(best >= 0 && bestDistance <= (double) (radius - 1 << CELL_SHIFT)) return best;
+            long side = 2L * radius + 1;
+            if(side * side * side > 4L * remainingCount) break;
+            for(int dy = -radius; dy <= radius; dy++) {
+                for(int dz = -radius; dz <= radius; dz++) {
+                    boolean face = Math.abs(dy) == radius || Math.abs(dz) == radius;
+                    for(int dx = -radius; dx <= radius; dx += face ? 1 : 2 * radius) {
+                        int cell = cell(cx + dx, cy + dy, cz + dz);
+                        if(cell >= 0) {
+                            for(int i = this.cellStarts[cell]; i < liveEnds[cell]; i++) {
+                                int point = this.cellPoints[i];
+                                double distance = distance(from, point);
+                                if(distance < bestDistance) {
+                                    best = point;
+                                    bestDistance = distance;
+                                }
+                            }
+                        }
+                        if(radius == 0) break;
+                    }
+                }
+            }
+        }
+        for(int i = 0; i < remainingCount; i++) {
+            double distance = distance(from, remaining[i]);
+            if(distance < bestDistance) {
+                best = remaining[i];
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    // the NEIGHBOURS nearest other points of every point, nearest first, -1 where there are fewer
+    private int[] neighbours() {
+        int[] neighbours = new int[this.count * NEIGHBOURS];
+        Arrays.fill(neighbours, -1);
+        double[] distances = new double[NEIGHBOURS];
+        for(int point = 0; point < this.count; point++) {
+            int cx = this.xs[point] >> CELL_SHIFT;
+            int cy = this.ys[point] >> CELL_SHIFT;
+            int cz = this.zs[point] >> CELL_SHIFT;
+            int found = 0;
+            int base = point * NEIGHBOURS;
+            for(int radius = 0; ; radius++) {
+                if(found == NEIGHBOURS && distances[NEIGHBOURS - 1] <= (double) (radius - 1 << CELL_SHIFT)) break;
+                if(found == this.count - 1) break;
+                long side = 2L * radius + 1;
+                if(side * side * side > 4L * this.count) {
+                    // far from everything, scan all points instead of growing the shells
+                    found = 0;
+                    for(int other = 0; other < this.count; other++) {
+                        if(other != point) found = insert(neighbours, base, distances, found, other, distance(point, other));
+                    }
+                    break;
+                }
+                for(int dy = -radius; dy <= radius; dy++) {
+                    for(int dz = -radius; dz <= radius; dz++) {
+                        boolean face = Math.abs(dy) == radius || Math.abs(dz) == radius;
+                        for(int dx = -radius; dx <= radius; dx += face ? 1 : 2 * radius) {
+                            int cell = cell(cx + dx, cy + dy, cz + dz);
+                            if(cell >= 0) {
+                                for(int i = this.cellStarts[cell]; i < this.cellEnds[cell]; i++) {
+                                    int other = this.cellPoints[i];
+                                    if(other != point) found = insert(neighbours, base, distances, found, other, distance(point, other));
+                                }
+                            }
+                            if(radius == 0) break;
+                        }
+                    }
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    // insertion into the sorted neighbour list at base holding found points, returns the new count
+    private static int insert(int[] neighbours, int base, double[] distances, int found, int other, double distance) {
+        if(found == NEIGHBOURS && distance >= distances[NEIGHBOURS - 1]) return found;
+        int at = found < NEIGHBOURS ? found++ : NEIGHBOURS - 1;
+        while(at > 0 && distances[at - 1] > distance) {
+            distances[at] = distances[at - 1];
+            neighbours[base + at] = neighbours[base + at - 1];
+            at--;
+        }
+        distances[at] = distance;
+        neighbours[base + at] = other;
+        return found;
+    }
+
+    // 2-opt
+
+    private void twoOpt(int[] tour) {
+        int length = tour.length;
+        int[] positions = new int[length];
+        for(int i = 0; i < length; i++) positions[tour[i]] = i;
+        int[] neighbours = neighbours();
+        // points to check, a ring buffer with a flag per queued point
+        int[] queue = new int[this.count];
+        boolean[] queued = new boolean[this.count];
+        for(int i = 0; i < this.count; i++) {
+            queue[i] = tour[i + 1];
+            queued[tour[i + 1]] = true;
+        }
+        int head = 0;
+        int size = this.count;
+        while(size > 0) {
+            int a = queue[head];
+            head = (head + 1) % this.count;
+            size--;
+            queued[a] = false;
+            int[] changed = improve(a, tour, positions, neighbours);
+            if(changed == null) continue;
+            for(int point : changed) {
+                if(point < 0 || point == this.count || queued[point]) continue;
+                queue[(head + size) % this.count] = point;
+                queued[point] = true;
+                size++;
+            }
+        }
+    }
+
+    // applies the first improving move with an edge at a, returns the points whose edges changed or null
+    private int[] improve(int a, int[] tour, int[] positions, int[] neighbours) {
+        int last = tour.length - 1;
+        int i = positions[a];
+        int next = i < last ? tour[i + 1] : -1;
+        int previous = tour[i - 1];
+        double nextEdge = next < 0 ? 0 : distance(a, next);
+        double previousEdge = distance(previous, a);
+        for(int k = 0; k < NEIGHBOURS; k++) {
+            int c = neighbours[a * NEIGHBOURS + k];
+            if(c < 0) break;
+            double ac = distance(a, c);
+            if(ac >= nextEdge && ac >= previousEdge) break;
+            int j = positions[c];
+            // replace (a, next) and (c, after c) with (a, c) and (next, after c)
+            if(ac < nextEdge && next >= 0 && j != i + 1) {
+                int afterC = j < last ? tour[j + 1] : -1;
+                double gain = nextEdge + (afterC < 0 ? 0 : distance(c, afterC)) - ac - (afterC < 0 ? 0 : distance(next, afterC));
+                // with c last the edge after it is free
+                if(gain > 1e-9) {
+                    if(i < j) reverse(tour, positions, i + 1, j);
+                    else reverse(tour, positions, j + 1, i);
+                    return new int[] {a, next, c, afterC};
+                }
+            }
+            // replace (previous, a) and (before c, c) with (a, c) and (previous, before c)
+            if(ac < previousEdge && j >= 1 && j != i - 1) {
+                int beforeC = tour[j - 1];
+                double gain = previousEdge + distance(beforeC, c) - ac - distance(previous, beforeC);
+                if(gain > 1e-9) {
+                    if(i < j) reverse(tour, positions, i, j - 1);
+                    else reverse(tour, positions, j, i - 1);
+                    return new int[] {a, previous, c, beforeC};
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void reverse(int[] tour, int[] positions, int from, int to) {
+        while(from < to) {
+            int swap = tour[from];
+            tour[from] = tour[to];
+            tour[to] = swap;
+            positions[tour[from]] = from;
+            positions[tour[to]] = to;
+            from++;
+            to--;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.Walkability;
+import java.util.Arrays;
+import java.util.function.LongToIntFunction;
+
+// plans breaking a batch of blocks: the order to break them in, where to stand, and the moves to get there
+//
+// targets are ordered by BreakOrder, nearest neighbour and 2-opt on straight line distances, so the walk between
+// them is short whatever order they were listed in. for every target the player walks with a PathFinder route to the
+// nearest block within reach it can stand in, then stands still while breaking it.
+// the schedule is one MoveSequence for the whole batch, the ticks at which each break starts and stops, and the yaws
+// to play it with: every walk is planned for a yaw that is a multiple of 90 degrees, the one nearest to where the player
+// last looked (yaw for the first walk), and whoever plays it faces walkYaws[i] while walking to target i and looks at
+// the target, along breakYaws[i], from start to stop.
+// broken blocks are passable for the rest of the plan, targets without a reachable place to stand are skipped.
+public final class BreakScheduler {
+
+    // how far from the eyes of the player a block can be broken
+    public static final double REACH = 4.5;
+    private static final double EYE_HEIGHT = 1.62;
+    // places to stand tried per target before it is skipped
+    private static final int PLACES = 4;
+
+    private final Walkability walkability;
+    private float yaw;
+    private double blocksPerTick = PathFinder.WALK_SPEED;
+    private int maxNodes = 20_000;
+
+    public BreakScheduler(Walkability walkability) {
+        this.walkability = walkability;
+    }
+
+    public BreakScheduler yaw(float yaw) {
+        this.yaw = yaw;
+        return this;
+    }
+
+    public BreakScheduler blocksPerTick(double blocksPerTick) {
+        if(blocksPerTick <= 0) throw new IllegalArgumentException("blocksPerTick must be positive");
+        this.blocksPerTick = blocksPerTick;
+        return this;
+    }
+
+    // the most blocks a route between two targets may search
+    public BreakScheduler maxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    // the targets, packed like PathFinder.pack, in the order to break them from start
+    public static long[] order(long start, long[] targets) {
+        return BreakOrder.order(start, targets);
+    }
+
+    // straight line length of the walk visiting targets in order from start
+    public static double length(long start, long[] targets) {
+        return BreakOrder.length(start, targets);
+    }
+
+    // moves and break times of the targets in the order given, call order first to shorten the walk
+    // breakTicks gives how long each target takes to break
+    public Schedule schedule(int startX, int startY, int startZ, long[] targets, LongToIntFunction breakTicks, String name) {
+        Broken broken = new Broken(this.walkability, targets.length);
+        PathFinder pathFinder = new PathFinder(broken).maxNodes(this.maxNodes);
+        MoveSequence moves = new MoveSequence(name, Move.STAND_TALL);
+        long[] scheduled = new long[targets.length];
+        int[] starts = new int[targets.length];
+        int[] stops = new int[targets.length];
+        float[] walkYaws = new float[targets.length];
+        float[] breakYaws = new float[targets.length];
+        long[] skipped = new long[targets.length];
+        int count = 0;
+        int skippedCount = 0;
+        int x = startX;
+        int y = startY;
+        int z = startZ;
+        float yaw = this.yaw;
+        long[] places = new long[PLACES];
+        double[] distances = new double[PLACES];
+        for(long target : targets) {
+            long[] route = route(pathFinder, broken, x, y, z, target, places, distances);
+            if(route == null) {
+                skipped[skippedCount++] = target;
+                continue;
+            }
+            float walkYaw = Math.round(yaw / 90f) * 90f;
+            if(route.length > 1) moves.add(PathFinder.toMoves(route, walkYaw, this.blocksPerTick, name));
+            long standing = route[route.length - 1];
+            x = PathFinder.x(standing);
+            y = PathFinder.y(standing);
+            z = PathFinder.z(standing);
+            yaw = yawTowards(x, z, target, yaw);
+            int start = moves.tick() + 1;
+            int stop = start + Math.max(1, breakTicks.applyAsInt(target));
+            moves.addFromUntil(start, stop, Move.STAND_TALL);
+            scheduled[count] = target;
+            starts[count] = start;
+            stops[count] = stop;
+            walkYaws[count] = walkYaw;
+            breakYaws[count] = yaw;
+            count++;
+            broken.add(target);
+        }
+        return new Schedule(moves, Arrays.copyOf(scheduled, count), Arrays.copyOf(starts, count), Arrays.copyOf(stops, count),
+                Arrays.copyOf(walkYaws, count), Arrays.copyOf(breakYaws, count), Arrays.copyOf(skipped, skippedCount));
+    }
+
+    // the yaw looking from the middle of block x, z at the middle of target, yaw 0 looks south along +z and 90 west along -x
+    // yaw when the target is straight above or below
+    static float yawTowards(int x, int z, long target, float yaw) {
+        int dx = PathFinder.x(target) - x;
+        int dz = PathFinder.z(target) - z;
+        if(dx == 0 && dz == 0) return yaw;
+        return (float) Math.toDegrees(Math.atan2(-dx, dz));
+    }
+
+    // order and schedule in one
+    public Schedule orderAndSchedule(int startX, int startY, int startZ, long[] targets, LongToIntFunction breakTicks, String name) {
+        return schedule(startX, startY, startZ, order(PathFinder.pack(startX, startY, startZ), targets), breakTicks, name);
+    }
+
+    // route from x, y, z to the nearest place within reach of target, trying the PLACES nearest places
+    private static long[] route(PathFinder pathFinder, Walkability walkability, int x, int y, int z, long target, long[] places, double[] distances) {
+        int targetX = PathFinder.x(target);
+        int targetY = PathFinder.y(target);
+        int targetZ = PathFinder.z(target);
+        int range = (int) Math.ceil(REACH);
+        int count = 0;
+        for(int dy = -range - 1; dy <= range - 1; dy++) {
+            for(int dz = -range; dz <= range; dz++) {
+                for(int dx = -range; dx <= range; dx++) {
+                    int px = targetX + dx;
+                    int py = targetY + dy;
+                    int pz = targetZ + dz;
+                    // standing on the target would drop the player when it breaks
+                    if(dx == 0 && dz == 0 && dy == 1) continue;
+                    double ex = dx;
+                    double ey = dy + EYE_HEIGHT - 0.5;
+                    double ez = dz;
+                    if(ex * ex + ey * ey + ez * ez > REACH * REACH) continue;
+                    if(!walkability.standable(px, py, pz)) continue;
+                    double fx = px - x;
+                    double fy = py - y;
+                    double fz = pz - z;
+                    double distance = fx * fx + fy * fy + fz * fz;
+                    if(count == PLACES && distance >= distances[PLACES - 1]) continue;
+                    int at = count < PLACES ? count++ : PLACES - 1;
+                    while(at > 0 && distances[at - 1] > distance) {
+                        distances[at] = distances[at - 1];
+                        places[at] = places[at - 1];
+                        at--;
+                    }
+                    distances[at] = distance;
+                    places[at] = PathFinder.pack(px, py, pz);
+                }
+            }
+        }
+        for(int i = 0; i < count; i++) {
+            long[] route = pathFinder.find(x, y, z, PathFinder.x(places[i]), PathFinder.y(places[i]), PathFinder.z(places[i]));
+            if(route != null) return route;
+        }
+        return null;
+    }
+
+    // the moves for the whole batch, the ticks [start, stop) each target is broken in,
+    // the yaw the walk to each target was planned for and the yaw looking at each target
+    public record Schedule(MoveSequence moves, long[] targets, int[] starts, int[] stops, float[] walkYaws, float[] breakYaws, long[] skipped) {
+
+        public int ticks() {
+            return this.moves.tick() + 1;
+        }
+
+        // at 20 ticks per second
+        public double blocksPerMinute() {
+            return ticks() == 0 ? 0 : this.targets.length * 1200.0 / ticks();
+        }
+    }
+
+    // walkability with the blocks broken so far turned to air
+    private static final class Broken implements Walkability {
+
+        private final Walkability walkability;
+        private long[] keys;
+        private boolean[] used;
+        private int count;
+
+        Broken(Walkability walkability, int expected) {
+            this.walkability = walkability;
+            int capacity = Integer.highestOneBit(Math.max(expected, 8)) * 4;
+            this.keys = new long[capacity];
+            this.used = new boolean[capacity];
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) ((key * ContentHash.BASE) >>> 32) & mask;
+        }
+
+        boolean contains(long key) {
+            if(this.count == 0) return false;
+            int mask = this.keys.length - 1;
+            for(int slot = slot(key, mask); this.used[slot]; slot = (slot + 1) & mask) {
+                if(this.keys[slot] == key) return true;
+            }
+            return false;
+        }
+
+        void add(long key) {
+            if(contains(key)) return;
+            if((this.count + 1) * 2 > this.keys.length) {
+                long[] keys = this.keys;
+                boolean[] used = this.used;
+                this.keys = new long[keys.length * 2];
+                this.used = new boolean[keys.length * 2];
+                this.count = 0;
+                for(int i = 0; i < keys.length; i++) {
+                    if(used[i]) add(keys[i]);
+                }
+            }
+            int mask = this.keys.length - 1;
+            int slot = slot(key, mask);
+            while(this.used[slot]) slot = (slot + 1) & mask;
+            this.keys[slot] = key;
+            this.used[slot] = true;
+            this.count++;
+        }
+
+        public boolean passable(int x, int y, int z) {
+            return contains(PathFinder.pack(x, y, z)) || this.walkability.passable(x, y, z);
+        }
+
+        public boolean solid(int x, int y, int z) {
+            return !contains(PathFinder.pack(x, y, z)) && this.walkability.solid(x, y, z);
+        }
+    }
+}
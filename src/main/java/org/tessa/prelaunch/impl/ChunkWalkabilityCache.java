@@ -0,0 +1,179 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.Walkability;
+import java.util.Arrays;
+
+// remembers the answers of another Walkability in bit sets per 16x16x16 chunk section,
+// so replanning over the same area asks the level once per block instead of once per search.
+// sections are found in an open addressing table keyed by the packed section position, no object per lookup.
+// the cache is not thread safe, use one per thread, and call invalidate when blocks change.
+public final class ChunkWalkabilityCache implements Walkability {
+
+    private static final int WORDS = 16 * 16 * 16 / Long.SIZE;
+
+    private final Walkability walkability;
+    private final int maxSections;
+    private long[] keys;
+    private Section[] sections;
+    private int count;
+    // consecutive lookups mostly hit the same section
+    private long lastKey;
+    private Section lastSection;
+
+    public ChunkWalkabilityCache(Walkability walkability) {
+        this(walkability, 4096);
+    }
+
+    // the cache starts over once it holds maxSections sections, 4096 sections hold about 10 MB of bits
+    public ChunkWalkabilityCache(Walkability walkability, int maxSections) {
+        if(maxSections < 1) throw new IllegalArgumentException("maxSections must be positive");
+        this.walkability = walkability;
+        this.maxSections = maxSections;
+        this.keys = new long[64];
+        this.sections = new Section[64];
+    }
+
+    private static final class Section {
+        final long[] known = new long[WORDS];
+        final long[] passable = new long[WORDS];
+        final long[] solid = new long[WORDS];
+        // standable depends on the blocks above and below, which may be in other sections
+        final long[] standableKnown = new long[WORDS];
+        final long[] standable = new long[WORDS];
+    }
+
+    public boolean passable(int x, int y, int z) {
+        Section section = section(x, y, z);
+        int bit = bit(x, y, z);
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        if((section.known[word] & mask) == 0) load(section, word, mask, x, y, z);
+        return (section.passable[word] & mask) != 0;
+    }
+
+    public boolean solid(int x, int y, int z) {
+        Section section = section(x, y, z);
+        int bit = bit(x, y, z);
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        if((section.known[word] & mask) == 0) load(section, word, mask, x, y, z);
+        return (section.solid[word] & mask) != 0;
+    }
+
+    // one bit lookup instead of three once known
+    @Override
+    public boolean standable(int x, int y, int z) {
+        Section section = section(x, y, z);
+        int bit = bit(x, y, z);
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        if((section.standableKnown[word] & mask) == 0) {
+            if(solid(x, y - 1, z) && passable(x, y, z) && passable(x, y + 1, z)) section.standable[word] |= mask;
+            else section.standable[word] &= ~mask;
+            section.standableKnown[word] |= mask;
+        }
+        return (section.standable[word] & mask) != 0;
+    }
+
+    private void load(Section section, int word, long mask, int x, int y, int z) {
+        if(this.walkability.passable(x, y, z)) section.passable[word] |= mask;
+        else section.passable[word] &= ~mask;
+        if(this.walkability.solid(x, y, z)) section.solid[word] |= mask;
+        else section.solid[word] &= ~mask;
+        section.known[word] |= mask;
+    }
+
+    private static int bit(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    private static long key(int sectionX, int sectionY, int sectionZ) {
+        return PathFinder.pack(sectionX, sectionY, sectionZ);
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) ((key * ContentHash.BASE) >>> 40) & mask;
+    }
+
+    private Section section(int x, int y, int z) {
+        long key = key(x >> 4, y >> 4, z >> 4);
+        if(key == this.lastKey && this.lastSection != null) return this.lastSection;
+        int mask = this.keys.length - 1;
+        Section section = null;
+        for(int slot = slot(key, mask); this.sections[slot] != null; slot = (slot + 1) & mask) {
+            if(this.keys[slot] == key) {
+                section = this.sections[slot];
+                break;
+            }
+        }
+        if(section == null) {
+            if(this.count >= this.maxSections) clear();
+            else if((this.count + 1) * 2 > this.keys.length) grow();
+            section = new Section();
+            put(key, section);
+        }
+        this.lastKey = key;
+        this.lastSection = section;
+        return section;
+    }
+
+    private void put(long key, Section section) {
+        int mask = this.keys.length - 1;
+        int slot = slot(key, mask);
+        while(this.sections[slot] != null) slot = (slot + 1) & mask;
+        this.keys[slot] = key;
+        this.sections[slot] = section;
+        this.count++;
+    }
+
+    private void grow() {
+        long[] keys = this.keys;
+        Section[] sections = this.sections;
+        this.keys = new long[keys.length * 2];
+        this.sections = new Section[sections.length * 2];
+        this.count = 0;
+        for(int i = 0; i < keys.length; i++) {
+            if(sections[i] != null) put(keys[i], sections[i]);
+        }
+    }
+
+    // forgets the block at x, y, z, call it when the block changed
+    public void invalidate(int x, int y, int z) {
+        forget(x, y, z, true);
+        // standing in the blocks above and below depends on this one
+        forget(x, y + 1, z, false);
+        forget(x, y - 1, z, false);
+    }
+
+    private void forget(int x, int y, int z, boolean block) {
+        int mask = this.keys.length - 1;
+        long key = key(x >> 4, y >> 4, z >> 4);
+        for(int slot = slot(key, mask); this.sections[slot] != null; slot = (slot + 1) & mask) {
+            if(this.keys[slot] != key) continue;
+            int bit = bit(x, y, z);
+            if(block) this.sections[slot].known[bit >>> 6] &= ~(1L << bit);
+            this.sections[slot].standableKnown[bit >>> 6] &= ~(1L << bit);
+            return;
+        }
+    }
+
+    // forgets every section of a chunk column, call it when a chunk is loaded, unloaded or rewritten
+    public void invalidateChunk(int chunkX, int chunkZ) {
+        for(int slot = 0; slot < this.keys.length; slot++) {
+            Section section = this.sections[slot];
+            if(section == null || PathFinder.x(this.keys[slot]) != chunkX || PathFinder.z(this.keys[slot]) != chunkZ) continue;
+            Arrays.fill(section.known, 0L);
+            Arrays.fill(section.standableKnown, 0L);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, 0L);
+        Arrays.fill(this.sections, null);
+        this.count = 0;
+        this.lastSection = null;
+    }
+
+    public int sections() {
+        return this.count;
+    }
+}
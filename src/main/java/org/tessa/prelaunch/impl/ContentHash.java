@@ -0,0 +1,98 @@
+package org.tessa.prelaunch.impl;
+
+// polynomial hash of the terms of a sequence, the sum of term(t_i) * BASE^i modulo 2^64
+//
+// the sum is positional and linear, so sequences keep it up to date in O(1) per appended or overwritten term:
+// a run of n equal terms adds term(t) * BASE^i * (1 + BASE + ... + BASE^(n-1)), computed in O(log n),
+// and inserting or removing ticks in the middle multiplies the terms after them by a power of BASE or of its inverse.
+// equal terms always give equal hashes, and enum terms hash by name, so a hash doesn't depend on how the terms are stored.
+// the hash of a term is taken when it is added, non enum terms edited in place afterwards leave the hash stale.
+final class ContentHash {
+
+    // odd, so it has an inverse modulo 2^64 and removals can shift the later terms back
+    static final long BASE = 0x9E3779B97F4A7C15L;
+    static final long INVERSE = inverse(BASE);
+    private static final long NULL_TERM = 0x2545F4914F6CDD1DL;
+    private static final long LENGTH_MIX = 0xC2B2AE3D27D4EB4FL;
+
+    private ContentHash() {}
+
+    // Newton iteration, every step doubles the number of correct low bits, 3 to start with for any odd value
+    private static long inverse(long value) {
+        long inverse = value;
+        for(int i = 0; i < 5; i++) inverse *= 2 - value * inverse;
+        return inverse;
+    }
+
+    // the murmur3 finalizer, spreads the bits of small or similar hashes over the whole long
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        return hash ^ hash >>> 33;
+    }
+
+    // hash of a single term, enum constants hash by name since Enum.hashCode changes from run to run
+    static long term(Object value) {
+        if(value == null) return NULL_TERM;
+        return mix(value instanceof Enum<?> constant ? constant.name().hashCode() : value.hashCode());
+    }
+
+    static long pow(long base, long exponent) {
+        long result = 1;
+        while(exponent > 0) {
+            if((exponent & 1) != 0) result *= base;
+            base *= base;
+            exponent >>>= 1;
+        }
+        return result;
+    }
+
+    // 1 + BASE + ... + BASE^(count - 1), by doubling over the bits of count
+    static long geometric(int count) {
+        long sum = 0;
+        long power = 1;
+        for(int bit = Integer.highestOneBit(count); bit != 0; bit >>>= 1) {
+            sum += sum * power;
+            power *= power;
+            if((count & bit) != 0) {
+                sum += power;
+                power *= BASE;
+            }
+        }
+        return sum;
+    }
+
+    // the part of the sum contributed by terms [from, until), summed run by run
+    static long of(Terms<?> terms, int from, int until) {
+        long sum = 0;
+        long power = pow(BASE, from);
+        for(int i = from; i < until; ) {
+            int end = Math.min(terms.runEnd(i), until);
+            long term = term(terms.get(i));
+            if(end == i + 1) {
+                sum += term * power;
+                power *= BASE;
+            } else {
+                sum += term * power * geometric(end - i);
+                power *= pow(BASE, end - i);
+            }
+            i = end;
+        }
+        return sum;
+    }
+
+    // the hash of a sequence of length ticks whose terms sum to sum
+    static long finish(long sum, int length) {
+        return mix(sum ^ length * LENGTH_MIX);
+    }
+
+    static long of(Terms<?> terms) {
+        return finish(of(terms, 0, terms.size()), terms.size());
+    }
+
+    static int hashCode(long hash) {
+        return (int) (hash ^ hash >>> 32);
+    }
+}
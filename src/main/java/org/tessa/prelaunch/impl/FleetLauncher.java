@@ -0,0 +1,203 @@
+package org.tessa.prelaunch.impl;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+// starts several clients on one machine for load tests
+//
+// every client gets its own instance id, passed as TESSA_INSTANCE and -Dtessa.instance when the command is a java command,
+// and its own game directory base/instance-<id>, so the instances never share config, saves or logs.
+// starts are staggered so clients don't all load the game at the same moment.
+// on Linux each client is started through taskset with its own share of the cores when taskset is available,
+// the cores are always passed as TESSA_CPUS as a hint.
+// {instance} and {gameDir} in the command are replaced, --gameDir <dir> is appended when the command has no {gameDir}.
+// the launcher runs on a plain classpath without the game or the loader: it logs to System.err and writes the
+// quick play profiles with java.util.Properties instead of going through TessaPropertyModifier.
+//
+// java -cp tessa.jar org.tessa.prelaunch.impl.FleetLauncher --instances 8 --stagger 5s --base runs --server localhost -- <client command>
+public final class FleetLauncher {
+
+    public static final String CPUS_ENVIRONMENT = "TESSA_CPUS";
+
+    private final List<String> command;
+    private int instances = 1;
+    private int firstInstance = 0;
+    private Duration stagger = Duration.ofSeconds(5);
+    private File baseDirectory = new File("fleet");
+    private String serverAddress;
+    private boolean affinity = true;
+
+    public FleetLauncher(List<String> command) {
+        if(command.isEmpty()) throw new IllegalArgumentException("FleetLauncher needs a client command");
+        this.command = List.copyOf(command);
+    }
+
+    public FleetLauncher instances(int instances) {
+        if(instances < 1) throw new IllegalArgumentException("FleetLauncher needs at least one instance");
+        this.instances = instances;
+        return this;
+    }
+
+    // id of the first instance, the others count up from it
+    public FleetLauncher firstInstance(int firstInstance) {
+        this.firstInstance = firstInstance;
+        return this;
+    }
+
+    public FleetLauncher stagger(Duration stagger) {
+        this.stagger = stagger.isNegative() ? Duration.ZERO : stagger;
+        return this;
+    }
+
+    public FleetLauncher baseDirectory(File baseDirectory) {
+        this.baseDirectory = baseDirectory;
+        return this;
+    }
+
+    // written to the quick play profile of every instance, null leaves the profiles as they are
+    public FleetLauncher serverAddress(String serverAddress) {
+        this.serverAddress = serverAddress;
+        return this;
+    }
+
+    public FleetLauncher affinity(boolean affinity) {
+        this.affinity = affinity;
+        return this;
+    }
+
+    public File gameDirectory(String instanceId) {
+        return new File(this.baseDirectory, "instance-" + instanceId);
+    }
+
+    // the cores of instance index out of instances on a machine with cores processors,
+    // a contiguous block per instance when there are enough cores, shared round robin otherwise
+    static String cpus(int index, int instances, int cores) {
+        int share = Math.max(1, cores / instances);
+        int first = (index * share) % cores;
+        int last = Math.min(first + share, cores) - 1;
+        return first == last ? Integer.toString(first) : first + "-" + last;
+    }
+
+    // starts the instances one stagger apart and returns their processes, stops the ones it started on failure
+    public List<Process> launch() throws IOException, InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        boolean taskset = this.affinity && hasTaskset();
+        List<Process> processes = new ArrayList<>(this.instances);
+        try {
+            for(int i = 0; i < this.instances; i++) {
+                if(i > 0 && !this.stagger.isZero()) Thread.sleep(this.stagger.toMillis());
+                processes.add(start(Integer.toString(this.firstInstance + i), cpus(i, this.instances, cores), taskset));
+            }
+        } catch (IOException | InterruptedException e) {
+            processes.forEach(Process::destroy);
+            throw e;
+        }
+        return processes;
+    }
+
+    private Process start(String instanceId, String cpus, boolean taskset) throws IOException {
+        File gameDirectory = gameDirectory(instanceId).getAbsoluteFile();
+        File configDirectory = new File(gameDirectory, "config");
+        if(!configDirectory.isDirectory() && !configDirectory.mkdirs()) throw new IOException("Can't create " + configDirectory);
+        if(this.serverAddress != null) writeServerAddress(new File(configDirectory, "tessa." + LaunchProfile.namespace("quickplay", instanceId) + ".properties").toPath());
+        List<String> command = new ArrayList<>(this.command.size() + 6);
+        if(taskset) {
+            command.add("taskset");
+            command.add("-c");
+            command.add(cpus);
+        }
+        boolean gameDirectoryPlaceholder = false;
+        for(int i = 0; i < this.command.size(); i++) {
+            String argument = this.command.get(i);
+            gameDirectoryPlaceholder |= argument.contains("{gameDir}");
+            command.add(argument.replace("{instance}", instanceId).replace("{gameDir}", gameDirectory.getPath()));
+            // system properties have to come before the main class
+            if(i == 0 && isJava(argument)) command.add("-D" + LaunchProfile.INSTANCE_PROPERTY + "=" + instanceId);
+        }
+        if(!gameDirectoryPlaceholder) {
+            command.add("--gameDir");
+            command.add(gameDirectory.getPath());
+        }
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .directory(gameDirectory)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(new File(gameDirectory, "fleet.log")));
+        builder.environment().put(LaunchProfile.INSTANCE_ENVIRONMENT, instanceId);
+        builder.environment().put(CPUS_ENVIRONMENT, cpus);
+        Process process = builder.start();
+        log("instance " + instanceId + " pid " + process.pid() + " cpus " + cpus + " in " + gameDirectory);
+        return process;
+    }
+
+    // sets server_address in the quick play profile at file, keeping its other properties, the file is replaced atomically
+    private void writeServerAddress(Path file) throws IOException {
+        Properties properties = new Properties();
+        if(Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            }
+        }
+        properties.setProperty("server_address", this.serverAddress);
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            properties.store(writer, "Tessa Properties");
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void log(String message) {
+        System.err.println("[FleetLauncher] " + message);
+    }
+
+    private static boolean isJava(String argument) {
+        String name = new File(argument).getName();
+        return name.equals("java") || name.equals("java.exe") || name.equals("javaw.exe");
+    }
+
+    private static boolean hasTaskset() {
+        if(!System.getProperty("os.name", "").toLowerCase().contains("linux")) return false;
+        try {
+            return new ProcessBuilder("taskset", "-V").redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // launches the fleet, waits for every client to exit and stops them when the launcher is stopped
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int separator = List.of(args).indexOf("--");
+        if(separator < 0 || separator == args.length - 1) {
+            System.err.println("usage: FleetLauncher [--instances n] [--first id] [--stagger 5s] [--base dir] [--server address] [--no-affinity] -- <client command>");
+            System.exit(2);
+        }
+        FleetLauncher launcher = new FleetLauncher(List.of(args).subList(separator + 1, args.length));
+        for(int i = 0; i < separator; i++) {
+            switch(args[i]) {
+                case "--instances" -> launcher.instances(Integer.parseInt(args[++i]));
+                case "--first" -> launcher.firstInstance(Integer.parseInt(args[++i]));
+                case "--stagger" -> launcher.stagger(TessaPropertyModifier.parseDuration(args[++i]));
+                case "--base" -> launcher.baseDirectory(new File(args[++i]));
+                case "--server" -> launcher.serverAddress(args[++i]);
+                case "--no-affinity" -> launcher.affinity(false);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        List<Process> processes = launcher.launch();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroy), "Tessa Fleet Stop"));
+        for(Process process : processes) {
+            int exitCode = process.waitFor();
+            log("pid " + process.pid() + " exited with " + exitCode);
+        }
+    }
+}
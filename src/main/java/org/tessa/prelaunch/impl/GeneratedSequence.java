@@ -0,0 +1,173 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+
+// a read only sequence whose terms are computed on demand instead of stored, for soak tests of any length
+//
+// of() computes the term at a tick with a function of the tick.
+// randomWalk() moves between values, staying on each one for a dwell time drawn from a DwellTime distribution.
+// the walk is cut into blocks of BLOCK_TICKS ticks, each generated from its own random stream derived from the
+// seed and the block index, so the term at any tick depends only on the seed and the tick: reads in any order
+// and on any machine see the same terms. a read regenerates at most the block holding the tick, sequential reads
+// only advance the walk, and memory stays constant whatever the length. dwells are cut at block boundaries.
+//
+// slice, concat and the other views compose with generated sequences without materializing them,
+// subsequence, deepCopy and materialize copy the terms into an RleSequence.
+public final class GeneratedSequence<T extends SafeValue> extends ReadOnlySequence<T> {
+
+    public static final int BLOCK_TICKS = 1 << 12;
+
+    private final long seed;
+
+    private GeneratedSequence(Terms<T> terms, String name, T defaultValue, long seed) {
+        super(terms, "GeneratedSequence", name, defaultValue);
+        this.seed = seed;
+    }
+
+    // length terms, the term at tick is generator.apply(tick)
+    // generator must be a pure function of the tick, it may be called from several threads and any number of times
+    public static <T extends SafeValue> GeneratedSequence<T> of(String name, T defaultValue, int length, IntFunction<? extends T> generator) {
+        if(length < 0) throw new IllegalArgumentException("Negative sequence length " + length);
+        return new GeneratedSequence<>(new Computed<>(length, generator), name, defaultValue, 0);
+    }
+
+    // length terms walking between values, every step stays on its value for dwell ticks and moves to another value
+    public static <T extends SafeValue> GeneratedSequence<T> randomWalk(String name, T defaultValue, int length, long seed, T[] values, DwellTime<? super T> dwell) {
+        if(length < 0) throw new IllegalArgumentException("Negative sequence length " + length);
+        if(values.length == 0) throw new IllegalArgumentException("Nothing to walk over");
+        return new GeneratedSequence<>(new RandomWalk<>(length, seed, values.clone(), dwell), name, defaultValue, seed);
+    }
+
+    // the seed of a random walk, 0 for sequences generated by a function
+    public long seed() {
+        return this.seed;
+    }
+
+    // the number of ticks a random walk stays on a value
+    @FunctionalInterface
+    public interface DwellTime<T> {
+
+        // ticks to stay on value, at least 1, drawn from random
+        int ticks(T value, SplittableRandom random);
+
+        static <T> DwellTime<T> fixed(int ticks) {
+            return (value, random) -> ticks;
+        }
+
+        // uniform in [min, max]
+        static <T> DwellTime<T> uniform(int min, int max) {
+            if(min < 1 || max < min) throw new IllegalArgumentException("Invalid dwell range [" + min + ", " + max + "]");
+            return (value, random) -> random.nextInt(min, max + 1);
+        }
+
+        // geometric with the given mean, most dwells are short and a few are long
+        static <T> DwellTime<T> geometric(double mean) {
+            if(!(mean >= 1)) throw new IllegalArgumentException("Invalid mean dwell " + mean);
+            if(mean == 1) return fixed(1);
+            double scale = 1 / Math.log1p(-1 / mean);
+            return (value, random) -> 1 + (int) Math.min(Integer.MAX_VALUE - 1, Math.floor(Math.log(1 - random.nextDouble()) * scale));
+        }
+    }
+
+    // the seed of the random stream of block, a SplitMix64 step so neighbouring blocks get unrelated streams
+    static long blockSeed(long seed, long block) {
+        long z = seed + (block + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Computed<T> extends ViewTerms<T> {
+
+        private final int length;
+        private final IntFunction<? extends T> generator;
+
+        Computed(int length, IntFunction<? extends T> generator) {
+            this.length = length;
+            this.generator = generator;
+        }
+
+        public int size() {
+            return this.length;
+        }
+
+        public T get(int index) {
+            return this.generator.apply(index);
+        }
+    }
+
+    private static final class RandomWalk<T> extends ViewTerms<T> {
+
+        private final int length;
+        private final long seed;
+        private final T[] values;
+        private final DwellTime<? super T> dwell;
+        // the walk position of the last read of every thread, so readers never wait on each other
+        private final ThreadLocal<Cursor> cursor = ThreadLocal.withInitial(Cursor::new);
+
+        RandomWalk(int length, long seed, T[] values, DwellTime<? super T> dwell) {
+            this.length = length;
+            this.seed = seed;
+            this.values = values;
+            this.dwell = dwell;
+        }
+
+        public int size() {
+            return this.length;
+        }
+
+        public T get(int index) {
+            return this.values[seek(index).value];
+        }
+
+        // steps never cross a block boundary, so the end of the step holding index is the end of its run or earlier
+        public int runEnd(int index) {
+            return seek(index).stepEnd;
+        }
+
+        // moves the walk of the calling thread to the step holding index
+        private Cursor seek(int index) {
+            Cursor cursor = this.cursor.get();
+            long block = index / BLOCK_TICKS;
+            if(block != cursor.block || index < cursor.stepStart) {
+                cursor.block = block;
+                cursor.random = new SplittableRandom(blockSeed(this.seed, block));
+                cursor.value = cursor.random.nextInt(this.values.length);
+                cursor.stepStart = (int) (block * BLOCK_TICKS);
+                cursor.stepEnd = end(cursor, cursor.stepStart);
+            }
+            while(index >= cursor.stepEnd) {
+                if(this.values.length > 1) cursor.value = (cursor.value + 1 + cursor.random.nextInt(this.values.length - 1)) % this.values.length;
+                cursor.stepStart = cursor.stepEnd;
+                cursor.stepEnd = end(cursor, cursor.stepStart);
+            }
+            return cursor;
+        }
+
+        // exclusive end of the step starting at start for the value of cursor, within its block and the sequence
+        private int end(Cursor cursor, int start) {
+            int ticks = Math.max(1, this.dwell.ticks(this.values[cursor.value], cursor.random));
+            long blockEnd = Math.min((cursor.block + 1) * BLOCK_TICKS, this.length);
+            return (int) Math.min((long) start + ticks, blockEnd);
+        }
+
+        @Override
+        public boolean contentEquals(Terms<T> other) {
+            if(other instanceof RandomWalk<T> walk && walk.seed == this.seed && walk.length == this.length
+                    && walk.dwell == this.dwell && Arrays.equals(walk.values, this.values)) return true;
+            return super.contentEquals(other);
+        }
+    }
+
+    // a position in a random walk
+    private static final class Cursor {
+
+        private long block = -1;
+        private SplittableRandom random;
+        private int value;
+        private int stepStart;
+        private int stepEnd;
+    }
+}
@@ -0,0 +1,74 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.PropertyModifier;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// properties of one client instance when several clients are launched on the same machine
+//
+// the instance id comes from the tessa.instance system property or the TESSA_INSTANCE environment variable.
+// a namespace resolves to namespace.id for an instance, so tessa.quickplay.3.properties for instance 3 of quickplay,
+// and to the namespace itself without one, so a single client keeps using tessa.quickplay.properties.
+// reads fall back to the shared namespace for keys the instance doesn't set.
+public final class LaunchProfile {
+
+    public static final String INSTANCE_PROPERTY = "tessa.instance";
+    public static final String INSTANCE_ENVIRONMENT = "TESSA_INSTANCE";
+
+    private static final String INSTANCE_ID = resolveInstanceId();
+
+    private LaunchProfile() {}
+
+    // the id of this instance, null if it wasn't launched as one
+    public static String instanceId() {
+        return INSTANCE_ID;
+    }
+
+    public static String namespace(String namespace) {
+        return namespace(namespace, INSTANCE_ID);
+    }
+
+    public static String namespace(String namespace, String instanceId) {
+        return instanceId == null ? namespace : namespace + "." + instanceId;
+    }
+
+    // the properties of namespace for this instance
+    public static PropertyModifier modify(String namespace) {
+        return PropertyModifier.modify(namespace(namespace));
+    }
+
+    // the value of key for this instance, then the shared value, then defaultValue
+    public static String getProperty(String namespace, String key, String defaultValue) {
+        return getProperty(namespace, INSTANCE_ID, key, defaultValue);
+    }
+
+    // the value of key for the instance instanceId, then the shared value, then defaultValue
+    public static String getProperty(String namespace, String instanceId, String key, String defaultValue) {
+        if(instanceId != null) {
+            String value = PropertyModifier.modify(namespace(namespace, instanceId)).getProperty(key, null);
+            if(value != null) return value;
+        }
+        return PropertyModifier.modify(namespace).getProperty(key, defaultValue);
+    }
+
+    // ids become part of file names, so they may only hold letters, digits, '-' and '_'
+    public static boolean isValidInstanceId(String instanceId) {
+        if(instanceId == null || instanceId.isEmpty() || instanceId.length() > 64) return false;
+        for(int i = 0; i < instanceId.length(); i++) {
+            char c = instanceId.charAt(i);
+            if(!Character.isLetterOrDigit(c) && c != '-' && c != '_') return false;
+        }
+        return true;
+    }
+
+    private static String resolveInstanceId() {
+        String instanceId = System.getProperty(INSTANCE_PROPERTY);
+        if(instanceId == null || instanceId.isBlank()) instanceId = System.getenv(INSTANCE_ENVIRONMENT);
+        if(instanceId == null || instanceId.isBlank()) return null;
+        instanceId = instanceId.trim();
+        if(!isValidInstanceId(instanceId)) {
+            logger.error("LaunchProfile::resolveInstanceId ignoring instance id {}, only letters, digits, '-' and '_' are allowed", instanceId);
+            return null;
+        }
+        return instanceId;
+    }
+}
@@ -0,0 +1,148 @@
+package org.tessa.prelaunch.impl;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// general purpose storage, one reference per term
+final class ListTerms<T> implements Terms<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] term;
+    private int size;
+    // terms [0, sharedUntil) of the array are also visible through a snapshot and must be copied before they change
+    private int sharedUntil;
+
+    ListTerms() {
+        this.term = new Object[INITIAL_CAPACITY];
+    }
+
+    private ListTerms(Object[] term, int size, int sharedUntil) {
+        this.term = term;
+        this.size = size;
+        this.sharedUntil = sharedUntil;
+    }
+
+    private void ensureCapacity(int required) {
+        if(required <= this.term.length) return;
+        if(required < 0) throw new OutOfMemoryError("Sequence too long");
+        int capacity = Math.max(required, this.term.length + (this.term.length >> 1));
+        if(capacity < 0) capacity = Integer.MAX_VALUE - 8;
+        this.term = Arrays.copyOf(this.term, capacity);
+        this.sharedUntil = 0;
+    }
+
+    // copies the array if terms from index on are shared with a snapshot
+    private void unshare(int index) {
+        if(index >= this.sharedUntil) return;
+        this.term = this.term.clone();
+        this.sharedUntil = 0;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) this.term[index];
+    }
+
+    public void set(int index, T value) {
+        unshare(index);
+        this.term[index] = value;
+    }
+
+    public void add(T value) {
+        ensureCapacity(this.size + 1);
+        this.term[this.size++] = value;
+    }
+
+    public void addAll(Terms<T> source, int from, int until) {
+        ensureCapacity(this.size + until - from);
+        if(source instanceof ListTerms<T> other) {
+            System.arraycopy(other.term, from, this.term, this.size, until - from);
+            this.size += until - from;
+            return;
+        }
+        for(int i = from; i < until; ) {
+            int end = Math.min(source.runEnd(i), until);
+            Arrays.fill(this.term, this.size, this.size + end - i, source.get(i));
+            this.size += end - i;
+            i = end;
+        }
+    }
+
+    public void insert(int index, int count, T value) {
+        unshare(index);
+        ensureCapacity(this.size + count);
+        System.arraycopy(this.term, index, this.term, index + count, this.size - index);
+        Arrays.fill(this.term, index, index + count, value);
+        this.size += count;
+    }
+
+    public void fill(int from, int until, T value) {
+        unshare(from);
+        Arrays.fill(this.term, from, until, value);
+    }
+
+    public void remove(int from, int until) {
+        unshare(from);
+        System.arraycopy(this.term, until, this.term, from, this.size - until);
+        Arrays.fill(this.term, this.size - (until - from), this.size, null);
+        this.size -= until - from;
+    }
+
+    @SuppressWarnings("unchecked")
+    public int removeIf(Predicate<? super T> filter) {
+        unshare(0);
+        int kept = 0;
+        for(int i = 0; i < this.size; i++) {
+            if(!filter.test((T) this.term[i])) this.term[kept++] = this.term[i];
+        }
+        Arrays.fill(this.term, kept, this.size, null);
+        int count = this.size - kept;
+        this.size = kept;
+        return count;
+    }
+
+    public void clear() {
+        if(this.sharedUntil > 0) {
+            this.term = new Object[INITIAL_CAPACITY];
+            this.sharedUntil = 0;
+        } else {
+            Arrays.fill(this.term, 0, this.size, null);
+        }
+        this.size = 0;
+    }
+
+    public int runEnd(int index) {
+        Object value = this.term[index];
+        int end = index + 1;
+        while(end < this.size && Objects.equals(this.term[end], value)) end++;
+        return end;
+    }
+
+    public boolean contentEquals(Terms<T> other) {
+        if(this.size != other.size()) return false;
+        if(other instanceof ListTerms<T> terms) return Arrays.equals(this.term, 0, this.size, terms.term, 0, this.size);
+        for(int i = 0; i < this.size; i++) {
+            if(!Objects.equals(this.term[i], other.get(i))) return false;
+        }
+        return true;
+    }
+
+    public ListTerms<T> empty() {
+        return new ListTerms<>();
+    }
+
+    public ListTerms<T> copy() {
+        return new ListTerms<>(Arrays.copyOf(this.term, Math.max(this.size, INITIAL_CAPACITY)), this.size, 0);
+    }
+
+    // appends only write past the shared terms, so a storage that is only appended to is never copied
+    public ListTerms<T> snapshot() {
+        this.sharedUntil = this.size;
+        return new ListTerms<>(this.term, this.size, this.size);
+    }
+}
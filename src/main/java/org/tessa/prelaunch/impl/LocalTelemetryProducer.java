@@ -0,0 +1,80 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.impl.TelemetryProtocol.Kind;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+// a stand in for a server sending telemetry: a daemon thread that encodes made up TPS, tick times, entity counts,
+// plugin timings and packet counters into payloads and decodes them into a TelemetrySink, every 50 ms like a server tick
+// it is the producer of the sink, don't run it while connected to a server that sends telemetry
+public final class LocalTelemetryProducer implements AutoCloseable {
+
+    private static final String[] NAMES = {"tps_x100", "mspt_us", "entities", "chunks", "plugin.example_us", "packets_out"};
+    private static final Kind[] KINDS = {Kind.GAUGE, Kind.TIMER, Kind.GAUGE, Kind.GAUGE, Kind.TIMER, Kind.COUNTER};
+
+    private final TelemetrySink sink;
+    private final int samplesPerSecond;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private LocalTelemetryProducer(TelemetrySink sink, int samplesPerSecond) {
+        this.sink = sink;
+        this.samplesPerSecond = samplesPerSecond;
+        this.thread = new Thread(this::run, "Tessa Local Telemetry");
+        this.thread.setDaemon(true);
+    }
+
+    // produces about samplesPerSecond samples every second until closed
+    public static LocalTelemetryProducer start(TelemetrySink sink, int samplesPerSecond) {
+        if(samplesPerSecond < 1) throw new IllegalArgumentException("samplesPerSecond must be positive");
+        LocalTelemetryProducer producer = new LocalTelemetryProducer(sink, samplesPerSecond);
+        producer.thread.start();
+        return producer;
+    }
+
+    private void run() {
+        SplittableRandom random = new SplittableRandom();
+        int perTick = Math.max(1, this.samplesPerSecond / 20);
+        int[] ids = new int[perTick];
+        long[] values = new long[perTick];
+        // at most 2 varints of 10 bytes per sample and the record header
+        ByteBuffer payload = ByteBuffer.allocate(perTick * 20 + 16);
+        for(int id = 0; id < NAMES.length; id++) {
+            payload.clear();
+            TelemetryProtocol.writeDefinition(payload, id, NAMES[id], KINDS[id]);
+            this.sink.decode(payload.flip());
+        }
+        long next = System.nanoTime();
+        while(this.running) {
+            for(int i = 0; i < perTick; i++) {
+                int id = i % NAMES.length;
+                ids[i] = id;
+                values[i] = switch(id) {
+                    case 0 -> 2000 - (random.nextInt(100) < 3 ? random.nextInt(400) : random.nextInt(5));
+                    case 1 -> (long) Math.max(500, 12_000 + random.nextGaussian() * 4_000);
+                    case 2 -> 800 + random.nextInt(200);
+                    case 3 -> 1200 + random.nextInt(50);
+                    case 4 -> (long) Math.max(10, Math.exp(5 + random.nextGaussian()));
+                    default -> random.nextInt(40);
+                };
+            }
+            payload.clear();
+            TelemetryProtocol.writeSamples(payload, ids, values, 0, perTick);
+            this.sink.decode(payload.flip());
+            next += 50_000_000L;
+            long sleep = next - System.nanoTime();
+            if(sleep > 0) {
+                try {
+                    Thread.sleep(sleep / 1_000_000, (int) (sleep % 1_000_000));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.thread.interrupt();
+    }
+}
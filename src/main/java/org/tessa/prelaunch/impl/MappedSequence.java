@@ -0,0 +1,163 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// a read only sequence read straight from a memory mapped SequenceFile, without copying the terms onto the heap
+//
+// every JVM that opens the same file maps the same pages, so the operating system keeps one physical copy of a script
+// however many clients on the host play it, and the heap holds a few objects per sequence instead of a term array.
+// ordinal files are read one ordinal per tick, run files by binary search over the run ends, both with absolute reads
+// of the shared mapping, so any number of threads can read without locking. the reads trust the mapping, so open()
+// checks it once in a linear pass: every ordinal inside the enum, run ends increasing up to the number of terms.
+// mapped files must never be rewritten in place, a truncated mapping fails the readers of every JVM using it:
+// publish new versions under new file names, as ScriptStore does.
+public final class MappedSequence<T extends SafeValue> extends ReadOnlySequence<T> {
+
+    private final File file;
+
+    MappedSequence(Terms<T> terms, File file, String sequenceType, String name, T defaultValue) {
+        super(terms, sequenceType, name, defaultValue);
+        this.file = file;
+    }
+
+    // maps the sequence file filename, returns null if it can't be read or is not an ORDINALS or RUNS file
+    @SuppressWarnings("unchecked")
+    public static <T extends SafeValue> MappedSequence<T> open(String filename) {
+        File file = new File(filename);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            SequenceFile.Header header = SequenceFile.Header.read(buffer);
+            header.checkPayload(buffer);
+            T[] domain = (T[]) header.domain();
+            T defaultValue = header.defaultOrdinal() < 0 ? null : domain[header.defaultOrdinal()];
+            Terms<T> terms = switch(header.encoding()) {
+                case SequenceFile.ORDINALS -> new Ordinals<>(buffer, buffer.position(), header.size(), header.width(), domain);
+                case SequenceFile.RUNS -> new Runs<>(buffer, buffer.position(), header.size(), header.width(), domain);
+                default -> throw new IllegalArgumentException("Only ORDINALS and RUNS sequence files can be mapped");
+            };
+            return new MappedSequence<>(terms, file, header.type(), header.name(), defaultValue);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ReflectiveOperationException e) {
+            logger.error("MappedSequence::open {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    // a new sequence over the same mapping, for callers that rename it or change its default value
+    MappedSequence<T> share() {
+        return new MappedSequence<>(this.terms, this.file, this.sequenceType, name(), defaultValue());
+    }
+
+    static int ordinal(MappedByteBuffer buffer, int index, int width) {
+        return width == Byte.BYTES ? buffer.get(index) & 0xFF : buffer.getShort(index) & 0xFFFF;
+    }
+
+    // one ordinal per tick starting at offset
+    private static final class Ordinals<T> extends ViewTerms<T> {
+
+        private final MappedByteBuffer buffer;
+        private final int offset;
+        private final int size;
+        private final int width;
+        private final T[] domain;
+
+        Ordinals(MappedByteBuffer buffer, int offset, int size, int width, T[] domain) throws IOException {
+            if(size < 0 || (long) offset + (long) size * width > buffer.limit()) throw new IllegalArgumentException("Sequence file shorter than its header says");
+            SequenceFile.checkOrdinals(buffer.duplicate().position(offset), size, width, domain.length);
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+            this.width = width;
+            this.domain = domain;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public T get(int index) {
+            return this.domain[ordinal(this.buffer, this.offset + index * this.width, this.width)];
+        }
+
+        public int runEnd(int index) {
+            int ordinal = ordinal(this.buffer, this.offset + index * this.width, this.width);
+            int end = index + 1;
+            while(end < this.size && ordinal(this.buffer, this.offset + end * this.width, this.width) == ordinal) end++;
+            return end;
+        }
+    }
+
+    // int run count, the cumulative exclusive end of every run, then one ordinal per run
+    private static final class Runs<T> extends ViewTerms<T> {
+
+        private final MappedByteBuffer buffer;
+        private final int runs;
+        private final int ends;
+        private final int ordinals;
+        private final int size;
+        private final int width;
+        private final T[] domain;
+        // last run found, sequential reads stay O(1), racing readers at worst search again
+        private int cursor;
+
+        Runs(MappedByteBuffer buffer, int offset, int size, int width, T[] domain) throws IOException {
+            this.buffer = buffer;
+            this.runs = buffer.getInt(offset);
+            this.ends = offset + Integer.BYTES;
+            this.ordinals = this.ends + this.runs * Integer.BYTES;
+            this.size = size;
+            this.width = width;
+            this.domain = domain;
+            if(this.runs < 0 || (long) this.ordinals + (long) this.runs * width > buffer.limit()) throw new IllegalArgumentException("Sequence file shorter than its header says");
+            int previous = 0;
+            for(int run = 0; run < this.runs; run++) {
+                int end = end(run);
+                if(end <= previous) throw new IOException("Sequence file run ends out of order at run " + run);
+                previous = end;
+            }
+            if(previous != size) throw new IOException("Sequence file runs end at " + previous + " for " + size + " terms");
+            SequenceFile.checkOrdinals(buffer.duplicate().position(this.ordinals), this.runs, width, domain.length);
+        }
+
+        private int end(int run) {
+            return this.buffer.getInt(this.ends + run * Integer.BYTES);
+        }
+
+        private int runOf(int index) {
+            int run = this.cursor;
+            if(run < this.runs && index < end(run) && (run == 0 || index >= end(run - 1))) return run;
+            int lo = 0;
+            int hi = this.runs - 1;
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(end(mid) > index) hi = mid;
+                else lo = mid + 1;
+            }
+            this.cursor = lo;
+            return lo;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public T get(int index) {
+            return this.domain[ordinal(this.buffer, this.ordinals + runOf(index) * this.width, this.width)];
+        }
+
+        public int runEnd(int index) {
+            return end(runOf(index));
+        }
+    }
+}
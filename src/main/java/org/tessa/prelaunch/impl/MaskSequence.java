@@ -0,0 +1,144 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.InputMask;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.Sequence;
+import org.tessa.prelaunch.impl.SequenceMetrics.Operation;
+
+// a sequence of input masks stored as one byte of key bits per tick
+// or, and, andNot and mask edit a range of ticks with a single pass over the bytes, so layering a key
+// such as SPRINT over a million tick script costs about as much as copying it, with no per tick set() calls
+public class MaskSequence extends AbstractSequence<InputMask> implements Sequence<InputMask> {
+
+    private static final InputMask[] DOMAIN = InputMask.values();
+    private static final SequenceMetrics METRICS = SequenceMetrics.get();
+
+    public MaskSequence(String name, InputMask defaultValue) {
+        super(name, defaultValue, SequenceStorage.ORDINAL, new OrdinalTerms<>(DOMAIN, InputMask::bits, defaultValue));
+    }
+
+    // a mask sequence holding the keys of every move of moves
+    public static MaskSequence of(String name, Sequence<Move> moves) {
+        Terms<Move> source = ViewTerms.of(moves);
+        MaskSequence masks = new MaskSequence(name, moves.defaultValue() == null ? InputMask.NONE : InputMask.of(moves.defaultValue()));
+        synchronized(masks) {
+            Terms<InputMask> terms = masks.terms();
+            for(int i = 0; i < source.size(); ) {
+                int end = source.runEnd(i);
+                Move move = source.get(i);
+                terms.insert(terms.size(), end - i, move == null ? masks.defaultValue() : InputMask.of(move));
+                i = end;
+            }
+            masks.rehash(0, terms.size());
+            masks.publish();
+        }
+        return masks;
+    }
+
+    public String sequenceType() {
+        return "MaskSequence";
+    }
+
+    @SuppressWarnings("unchecked")
+    private OrdinalTerms<InputMask> ordinals() {
+        return (OrdinalTerms<InputMask>) terms();
+    }
+
+    // adds keys to every term of [startingTick, until)
+    public synchronized MaskSequence or(int startingTick, int until, int keys) {
+        long start = METRICS.start();
+        int lo = clampedStart("MaskSequence::or", startingTick, until);
+        int hi = Math.min(until, terms().size());
+        if(hi > lo) {
+            unhash(lo, hi);
+            ordinals().orOrdinals(lo, hi, keys & InputMask.ALL);
+            rehash(lo, hi);
+        }
+        return published(Operation.BITWISE, start);
+    }
+
+    // keeps only keys in every term of [startingTick, until)
+    public synchronized MaskSequence and(int startingTick, int until, int keys) {
+        long start = METRICS.start();
+        int lo = clampedStart("MaskSequence::and", startingTick, until);
+        int hi = Math.min(until, terms().size());
+        if(hi > lo) {
+            unhash(lo, hi);
+            ordinals().andOrdinals(lo, hi, keys & InputMask.ALL);
+            rehash(lo, hi);
+        }
+        return published(Operation.BITWISE, start);
+    }
+
+    // removes keys from every term of [startingTick, until)
+    public synchronized MaskSequence andNot(int startingTick, int until, int keys) {
+        long start = METRICS.start();
+        int lo = clampedStart("MaskSequence::andNot", startingTick, until);
+        int hi = Math.min(until, terms().size());
+        if(hi > lo) {
+            unhash(lo, hi);
+            ordinals().andOrdinals(lo, hi, ~keys & InputMask.ALL);
+            rehash(lo, hi);
+        }
+        return published(Operation.BITWISE, start);
+    }
+
+    // keeps in every term only the keys also held by other at the same tick
+    // terms past the end of other are left as they are, null terms of other mask everything out
+    public MaskSequence mask(Sequence<InputMask> other) {
+        // the snapshot of other is taken before locking this sequence, so two sequences masking each other can't deadlock
+        Terms<InputMask> mask = ViewTerms.of(other);
+        synchronized(this) {
+            long start = METRICS.start();
+            OrdinalTerms<InputMask> terms = ordinals();
+            int until = Math.min(terms.size(), mask.size());
+            unhash(0, until);
+            if(mask instanceof OrdinalTerms<InputMask> ordinals && ordinals.domain() == DOMAIN && ordinals.width() == terms.width()) {
+                terms.andOrdinals(ordinals, 0, until);
+            } else {
+                for(int i = 0; i < until; ) {
+                    int end = Math.min(mask.runEnd(i), until);
+                    InputMask value = mask.get(i);
+                    terms.andOrdinals(i, end, value == null ? 0 : value.bits());
+                    i = end;
+                }
+            }
+            rehash(0, until);
+            return published(Operation.BITWISE, start);
+        }
+    }
+
+    // the start of [startingTick, until) clamped to the sequence, out of bounds ticks are logged
+    private int clampedStart(String methodName, int startingTick, int until) {
+        if(startingTick < 0 || until > terms().size()) logWarning(methodName, startingTick < 0 ? startingTick : until, "Tick outside of sequence");
+        return Math.max(startingTick, 0);
+    }
+
+    @Override
+    public synchronized boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(obj == null || getClass() != obj.getClass()) return false;
+        return termsEqual((MaskSequence) obj);
+    }
+
+    public synchronized MaskSequence subsequence(int startingTick, int until) {
+        if(startingTick < 0 || until > tick() + 1) {
+            logWarning("MaskSequence:subsequence", startingTick < 0 ? startingTick : until, "indices on subsequence call out of bounds");
+            startingTick = Math.max(startingTick, 0);
+            until = Math.min(until, tick() + 1);
+        }
+        MaskSequence subsequence = new MaskSequence(name() + "_[" + startingTick + "," + until + ")", defaultValue());
+        if(until > startingTick) subsequence.addRange(this, startingTick, until);
+        return subsequence;
+    }
+
+    // InputMask instances are shared and immutable, so shallow and deep copies of the terms are the same
+    public synchronized MaskSequence copy(String copyname) {
+        MaskSequence copy = new MaskSequence(copyname, defaultValue());
+        copy.addRange(this, 0, tick() + 1);
+        return copy;
+    }
+
+    public synchronized MaskSequence deepCopy(String copyname) {
+        return copy(copyname);
+    }
+}
@@ -16,35 +16,31 @@ public class MoveSequence extends AbstractSequence<Move> implements Sequence<Mov
     public synchronized boolean equals(Object obj) {
         if(this == obj) return true;
         if(obj == null || getClass() != obj.getClass()) return false;
-        MoveSequence sequence = (MoveSequence) obj;
-        if(tick() != sequence.tick()) return false;
-        for(int i = 0; i <= tick(); i++) {
-            if(!at(i).equals(sequence.at(i))) return false;
-        }
-        return true;
+        return termsEqual((MoveSequence) obj);
     }
 
     public synchronized MoveSequence subsequence(int startingTick, int until) {
         if(startingTick < 0 || until > tick() + 1) {
-            logWarning("MoveSequence:subsequence", new IndexOutOfBoundsException("indices on subsequence call out of bounds"));
+            logWarning("MoveSequence:subsequence", startingTick < 0 ? startingTick : until, "indices on subsequence call out of bounds");
             startingTick = Math.max(startingTick, 0);
             until = Math.min(until, tick() + 1);
         }
         MoveSequence subsequence = new MoveSequence(name() + "_[" + startingTick + "," + until + ")", defaultValue());
-        for(int i = startingTick; i < until; i++) subsequence.add(at(i).deepCopy());
+        if(until > startingTick) subsequence.addRange(this, startingTick, until);
         return subsequence;
     }
 
+    // Move is an enum, so shallow and deep copies of the terms are the same
     public synchronized MoveSequence copy(String copyname) {
         MoveSequence copy = new MoveSequence(copyname, defaultValue().shallowCopy());
-        for(int i = 0; i <= tick(); i++) copy.add(at(i).shallowCopy());
+        copy.addRange(this, 0, tick() + 1);
         return copy;
     }
 
     public synchronized MoveSequence deepCopy(String copyname) {
         MoveSequence copy = new MoveSequence(copyname, defaultValue().deepCopy());
-        for(int i = 0; i <= tick(); i++) copy.add(at(i).deepCopy());
+        copy.addRange(this, 0, tick() + 1);
         return copy;
     }
 
-}
\ No newline at end of file
+}
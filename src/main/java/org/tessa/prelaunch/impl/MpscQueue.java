@@ -0,0 +1,68 @@
+package org.tessa.prelaunch.impl;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// bounded lock free queue for any number of producer threads and exactly one consumer thread
+// producers claim a slot with one compare and set on the tail, offer and poll never block or allocate,
+// offer fails when the queue is full
+public final class MpscQueue<E> {
+
+    private final AtomicReferenceArray<E> buffer;
+    private final int mask;
+    // next slot to claim, advanced by the producers
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to read, only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+
+    // capacity is rounded up to a power of two
+    public MpscQueue(int capacity) {
+        if(capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("Invalid queue capacity " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) size <<= 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return this.buffer.length();
+    }
+
+    // producer side, any thread, returns false if the queue is full
+    public boolean offer(E element) {
+        if(element == null) throw new NullPointerException();
+        long tail;
+        do {
+            tail = this.tail.get();
+            if(tail - this.head.get() >= this.buffer.length()) return false;
+        } while(!this.tail.compareAndSet(tail, tail + 1));
+        // the slot was emptied by the consumer before head moved past it
+        this.buffer.lazySet((int) tail & this.mask, element);
+        return true;
+    }
+
+    // consumer side, the next element or null if there is none yet
+    // an element whose producer claimed its slot but didn't store it yet counts as not there
+    public E poll() {
+        long head = this.head.get();
+        int slot = (int) head & this.mask;
+        E element = this.buffer.get(slot);
+        if(element == null) return null;
+        this.buffer.lazySet(slot, null);
+        this.head.lazySet(head + 1);
+        return element;
+    }
+
+    // consumer side, the next element without removing it
+    public E peek() {
+        return this.buffer.get((int) this.head.get() & this.mask);
+    }
+
+    // approximate number of queued elements, safe to call from any thread
+    public int size() {
+        return (int) Math.max(0, Math.min(this.buffer.length(), this.tail.get() - this.head.get()));
+    }
+
+    public boolean isEmpty() {
+        return this.tail.get() == this.head.get();
+    }
+}
@@ -0,0 +1,286 @@
+package org.tessa.prelaunch.impl;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+// storage for values drawn from a small fixed domain, e.g. the constants of an enum
+// each term is stored as its index into the domain: one byte per term for domains of up to 256 values,
+// two bytes per term for domains of up to 65536 values
+// null values can't be represented and are stored as the fallback value
+final class OrdinalTerms<T> implements Terms<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final T[] domain;
+    private final ToIntFunction<? super T> ordinal;
+    private final int fallback;
+    private byte[] bytes;
+    private short[] shorts;
+    private int size;
+    // terms [0, sharedUntil) of the arrays are also visible through a snapshot and must be copied before they change
+    private int sharedUntil;
+
+    OrdinalTerms(T[] domain, ToIntFunction<? super T> ordinal, T fallback) {
+        if(domain.length > 1 << 16) throw new IllegalArgumentException("Domain too large for ordinal storage: " + domain.length);
+        this.domain = domain;
+        this.ordinal = ordinal;
+        this.fallback = fallback == null ? 0 : ordinal.applyAsInt(fallback);
+        if(domain.length <= 1 << 8) this.bytes = new byte[INITIAL_CAPACITY];
+        else this.shorts = new short[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    private OrdinalTerms(OrdinalTerms<T> source) {
+        this.domain = source.domain;
+        this.ordinal = source.ordinal;
+        this.fallback = source.fallback;
+        if(source.bytes != null) this.bytes = Arrays.copyOf(source.bytes, Math.max(source.size, INITIAL_CAPACITY));
+        else this.shorts = Arrays.copyOf(source.shorts, Math.max(source.size, INITIAL_CAPACITY));
+        this.size = source.size;
+    }
+
+    // a snapshot sharing the arrays of source
+    private OrdinalTerms(OrdinalTerms<T> source, int size) {
+        this.domain = source.domain;
+        this.ordinal = source.ordinal;
+        this.fallback = source.fallback;
+        this.bytes = source.bytes;
+        this.shorts = source.shorts;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> OrdinalTerms<T> ofEnum(T value) {
+        T[] constants = (T[]) ((Enum<?>) value).getDeclaringClass().getEnumConstants();
+        return new OrdinalTerms<>(constants, v -> ((Enum<?>) v).ordinal(), value);
+    }
+
+    T[] domain() {
+        return this.domain;
+    }
+
+    int ordinalOf(T value) {
+        return value == null ? this.fallback : this.ordinal.applyAsInt(value);
+    }
+
+    int ordinalAt(int index) {
+        return this.bytes != null ? this.bytes[index] & 0xFF : this.shorts[index] & 0xFFFF;
+    }
+
+    // bytes used per term, 1 or 2
+    int width() {
+        return this.bytes != null ? Byte.BYTES : Short.BYTES;
+    }
+
+    // bulk copy of the ordinals of terms [from, until) into out
+    void writeOrdinals(ByteBuffer out, int from, int until) {
+        if(this.bytes != null) {
+            out.put(this.bytes, from, until - from);
+            return;
+        }
+        out.asShortBuffer().put(this.shorts, from, until - from);
+        out.position(out.position() + (until - from) * Short.BYTES);
+    }
+
+    // bulk append of count ordinals read from in, encoded with the same width as this storage
+    void readOrdinals(ByteBuffer in, int count) {
+        ensureCapacity(this.size + count);
+        if(this.bytes != null) {
+            in.get(this.bytes, this.size, count);
+        } else {
+            in.asShortBuffer().get(this.shorts, this.size, count);
+            in.position(in.position() + count * Short.BYTES);
+        }
+        this.size += count;
+    }
+
+    // bitwise edits of the ordinals of terms [from, until), for domains indexed by bit mask such as InputMask
+    // the results must stay inside the domain, each is a single pass over the array that the JIT vectorizes
+    // (the masks stay ints: C2 vectorizes bytes[i] = (byte) (bytes[i] & bits) but not bytes[i] &= (byte) bits)
+    void orOrdinals(int from, int until, int bits) {
+        unshare(from);
+        if(this.bytes != null) {
+            byte[] bytes = this.bytes;
+            for(int i = from; i < until; i++) bytes[i] = (byte) (bytes[i] | bits);
+        } else {
+            short[] shorts = this.shorts;
+            for(int i = from; i < until; i++) shorts[i] = (short) (shorts[i] | bits);
+        }
+    }
+
+    void andOrdinals(int from, int until, int bits) {
+        unshare(from);
+        if(this.bytes != null) {
+            byte[] bytes = this.bytes;
+            for(int i = from; i < until; i++) bytes[i] = (byte) (bytes[i] & bits);
+        } else {
+            short[] shorts = this.shorts;
+            for(int i = from; i < until; i++) shorts[i] = (short) (shorts[i] & bits);
+        }
+    }
+
+    // ands the ordinals of terms [from, until) with the ordinals of other at the same indices, other must have the same width
+    void andOrdinals(OrdinalTerms<T> other, int from, int until) {
+        unshare(from);
+        if(this.bytes != null) {
+            byte[] bytes = this.bytes;
+            byte[] mask = other.bytes;
+            for(int i = from; i < until; i++) bytes[i] &= mask[i];
+        } else {
+            short[] shorts = this.shorts;
+            short[] mask = other.shorts;
+            for(int i = from; i < until; i++) shorts[i] &= mask[i];
+        }
+    }
+
+    // index of the first of terms [0, until) whose ordinal differs from other, or -1, other must have the same domain and width
+    int mismatch(OrdinalTerms<T> other, int until) {
+        if(this.bytes != null) return Arrays.mismatch(this.bytes, 0, until, other.bytes, 0, until);
+        return Arrays.mismatch(this.shorts, 0, until, other.shorts, 0, until);
+    }
+
+    private void put(int index, int ordinal) {
+        if(this.bytes != null) this.bytes[index] = (byte) ordinal;
+        else this.shorts[index] = (short) ordinal;
+    }
+
+    private Object data() {
+        return this.bytes != null ? this.bytes : this.shorts;
+    }
+
+    private int capacity() {
+        return this.bytes != null ? this.bytes.length : this.shorts.length;
+    }
+
+    private void ensureCapacity(int required) {
+        if(required <= capacity()) return;
+        if(required < 0) throw new OutOfMemoryError("Sequence too long");
+        int capacity = Math.max(required, capacity() + (capacity() >> 1));
+        if(capacity < 0) capacity = Integer.MAX_VALUE - 8;
+        if(this.bytes != null) this.bytes = Arrays.copyOf(this.bytes, capacity);
+        else this.shorts = Arrays.copyOf(this.shorts, capacity);
+    }
+
+    // copies the arrays if terms from index on are shared with a snapshot
+    private void unshare(int index) {
+        if(index >= this.sharedUntil) return;
+        if(this.bytes != null) this.bytes = this.bytes.clone();
+        else this.shorts = this.shorts.clone();
+        this.sharedUntil = 0;
+    }
+
+    private void fillOrdinal(int from, int until, int ordinal) {
+        if(this.bytes != null) Arrays.fill(this.bytes, from, until, (byte) ordinal);
+        else Arrays.fill(this.shorts, from, until, (short) ordinal);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public T get(int index) {
+        return this.domain[ordinalAt(index)];
+    }
+
+    public void set(int index, T value) {
+        unshare(index);
+        put(index, ordinalOf(value));
+    }
+
+    public void add(T value) {
+        ensureCapacity(this.size + 1);
+        put(this.size++, ordinalOf(value));
+    }
+
+    public void addAll(Terms<T> source, int from, int until) {
+        int count = until - from;
+        ensureCapacity(this.size + count);
+        if(source instanceof OrdinalTerms<T> other && other.domain == this.domain && (other.bytes != null) == (this.bytes != null)) {
+            System.arraycopy(other.data(), from, data(), this.size, count);
+            this.size += count;
+            return;
+        }
+        for(int i = from; i < until; ) {
+            int end = Math.min(source.runEnd(i), until);
+            fillOrdinal(this.size, this.size + end - i, ordinalOf(source.get(i)));
+            this.size += end - i;
+            i = end;
+        }
+    }
+
+    public void insert(int index, int count, T value) {
+        unshare(index);
+        ensureCapacity(this.size + count);
+        System.arraycopy(data(), index, data(), index + count, this.size - index);
+        fillOrdinal(index, index + count, ordinalOf(value));
+        this.size += count;
+    }
+
+    public void fill(int from, int until, T value) {
+        unshare(from);
+        fillOrdinal(from, until, ordinalOf(value));
+    }
+
+    public void remove(int from, int until) {
+        unshare(from);
+        System.arraycopy(data(), until, data(), from, this.size - until);
+        this.size -= until - from;
+    }
+
+    public int removeIf(Predicate<? super T> filter) {
+        boolean[] removed = new boolean[this.domain.length];
+        for(int i = 0; i < this.domain.length; i++) removed[i] = filter.test(this.domain[i]);
+        unshare(0);
+        int kept = 0;
+        for(int i = 0; i < this.size; i++) {
+            int ordinal = ordinalAt(i);
+            if(!removed[ordinal]) put(kept++, ordinal);
+        }
+        int count = this.size - kept;
+        this.size = kept;
+        return count;
+    }
+
+    public void clear() {
+        if(this.sharedUntil > 0) {
+            if(this.bytes != null) this.bytes = new byte[INITIAL_CAPACITY];
+            else this.shorts = new short[INITIAL_CAPACITY];
+            this.sharedUntil = 0;
+        }
+        this.size = 0;
+    }
+
+    public int runEnd(int index) {
+        int ordinal = ordinalAt(index);
+        int end = index + 1;
+        while(end < this.size && ordinalAt(end) == ordinal) end++;
+        return end;
+    }
+
+    public boolean contentEquals(Terms<T> other) {
+        if(this.size != other.size()) return false;
+        if(other instanceof OrdinalTerms<T> terms && terms.domain == this.domain) {
+            if(this.bytes != null && terms.bytes != null) return Arrays.equals(this.bytes, 0, this.size, terms.bytes, 0, this.size);
+            if(this.shorts != null && terms.shorts != null) return Arrays.equals(this.shorts, 0, this.size, terms.shorts, 0, this.size);
+        }
+        for(int i = 0; i < this.size; i++) {
+            if(!this.domain[ordinalAt(i)].equals(other.get(i))) return false;
+        }
+        return true;
+    }
+
+    public OrdinalTerms<T> empty() {
+        return new OrdinalTerms<>(this.domain, this.ordinal, this.domain[this.fallback]);
+    }
+
+    public OrdinalTerms<T> copy() {
+        return new OrdinalTerms<>(this);
+    }
+
+    // appends only write past the shared terms, so a storage that is only appended to is never copied
+    public OrdinalTerms<T> snapshot() {
+        this.sharedUntil = this.size;
+        return new OrdinalTerms<>(this, this.size);
+    }
+}
@@ -0,0 +1,321 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.Walkability;
+import java.util.Arrays;
+
+// A* over the blocks a player can stand in, compiled into a MoveSequence that walks the route
+//
+// positions are packed into longs the way BlockPos.asLong packs them, nodes live in parallel primitive arrays,
+// the open set is a binary heap of node indices with decrease key and the closed set is a node state, so a search
+// allocates nothing once the arrays have grown to the size of the searched area.
+// a node is found from its position with an open addressing table stamped with the search number,
+// which is reset for the next search without clearing it.
+// from a block the player can walk to the 8 neighbours on the same level, diagonals only if both sides are clear,
+// jump one block up onto the 4 straight neighbours, or drop up to maxDrop blocks down from them.
+// the heuristic is the octile distance, every move goes one block sideways, so it never overestimates.
+// a PathFinder reuses its arrays between searches and is not thread safe, use one per thread.
+public final class PathFinder {
+
+    // blocks per tick of a walking player
+    public static final double WALK_SPEED = 0.21585;
+    private static final float SQRT2 = (float) Math.sqrt(2);
+    private static final float JUMP_COST = 1.0f;
+    private static final float DROP_COST = 0.2f;
+    private static final int[] DX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DZ = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final int CLOSED = -1;
+
+    private final Walkability walkability;
+    private int maxNodes = 1 << 20;
+    private int maxDrop = 3;
+
+    // nodes
+    private long[] positions = new long[1024];
+    private float[] costs = new float[1024];
+    private float[] estimates = new float[1024];
+    private int[] parents = new int[1024];
+    // heap index of an open node or CLOSED
+    private int[] states = new int[1024];
+    private int nodes;
+    // open set
+    private int[] heap = new int[1024];
+    private int heapSize;
+    // position to node, slots of older searches have an older stamp
+    private long[] tableKeys = new long[2048];
+    private int[] tableNodes = new int[2048];
+    private int[] tableStamps = new int[2048];
+    private int stamp;
+
+    public PathFinder(Walkability walkability) {
+        this.walkability = walkability;
+    }
+
+    // searches give up after opening maxNodes blocks
+    public PathFinder maxNodes(int maxNodes) {
+        this.maxNodes = Math.max(1, maxNodes);
+        return this;
+    }
+
+    // the highest drop a route may take
+    public PathFinder maxDrop(int maxDrop) {
+        this.maxDrop = Math.max(0, maxDrop);
+        return this;
+    }
+
+    // the number of blocks the last search opened, which counts the blocks it reached but never expanded
+    public int nodes() {
+        return this.nodes;
+    }
+
+    // BlockPos.asLong layout: 26 bits of x, 26 bits of z, 12 bits of y
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | ((long) y & 0xFFFL);
+    }
+
+    public static int x(long position) {
+        return (int) (position >> 38);
+    }
+
+    public static int y(long position) {
+        return (int) (position << 52 >> 52);
+    }
+
+    public static int z(long position) {
+        return (int) (position << 26 >> 38);
+    }
+
+    // the packed blocks from start to goal, both included, or null if the goal can't be reached within maxNodes
+    public long[] find(int startX, int startY, int startZ, int goalX, int goalY, int goalZ) {
+        long goal = pack(goalX, goalY, goalZ);
+        if(!this.walkability.standable(startX, startY, startZ) || !this.walkability.standable(goalX, goalY, goalZ)) return null;
+        if(++this.stamp == 0) {
+            Arrays.fill(this.tableStamps, 0);
+            this.stamp = 1;
+        }
+        this.nodes = 0;
+        this.heapSize = 0;
+        open(pack(startX, startY, startZ), -1, 0f, heuristic(startX, startZ, goalX, goalZ));
+        while(this.heapSize > 0) {
+            int node = poll();
+            long position = this.positions[node];
+            if(position == goal) return route(node);
+            this.states[node] = CLOSED;
+            if(this.nodes >= this.maxNodes) return null;
+            expand(node, x(position), y(position), z(position), goalX, goalZ);
+        }
+        return null;
+    }
+
+    private void expand(int node, int x, int y, int z, int goalX, int goalZ) {
+        Walkability walkability = this.walkability;
+        float cost = this.costs[node];
+        for(int direction = 0; direction < 8; direction++) {
+            int nx = x + DX[direction];
+            int nz = z + DZ[direction];
+            if(direction >= 4) {
+                // no cutting corners past blocks the player would collide with
+                if(walkability.standable(nx, y, nz) && walkability.standable(nx, y, z) && walkability.standable(x, y, nz)) {
+                    relax(node, nx, y, nz, cost + SQRT2, goalX, goalZ);
+                }
+                continue;
+            }
+            if(walkability.standable(nx, y, nz)) {
+                relax(node, nx, y, nz, cost + 1f, goalX, goalZ);
+            } else if(walkability.standable(nx, y + 1, nz) && walkability.passable(x, y + 2, z)) {
+                relax(node, nx, y + 1, nz, cost + 1f + JUMP_COST, goalX, goalZ);
+            } else if(walkability.passable(nx, y, nz) && walkability.passable(nx, y + 1, nz)) {
+                for(int ny = y - 1; ny >= y - this.maxDrop && walkability.passable(nx, ny, nz); ny--) {
+                    if(!walkability.solid(nx, ny - 1, nz)) continue;
+                    if(walkability.passable(nx, ny + 1, nz)) relax(node, nx, ny, nz, cost + 1f + DROP_COST * (y - ny), goalX, goalZ);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static float heuristic(int x, int z, int goalX, int goalZ) {
+        int dx = Math.abs(goalX - x);
+        int dz = Math.abs(goalZ - z);
+        return Math.max(dx, dz) + (SQRT2 - 1f) * Math.min(dx, dz);
+    }
+
+    private void relax(int parent, int x, int y, int z, float cost, int goalX, int goalZ) {
+        long position = pack(x, y, z);
+        int node = find(position);
+        if(node < 0) {
+            open(position, parent, cost, cost + heuristic(x, z, goalX, goalZ));
+            return;
+        }
+        if(this.states[node] == CLOSED || cost >= this.costs[node]) return;
+        this.estimates[node] -= this.costs[node] - cost;
+        this.costs[node] = cost;
+        this.parents[node] = parent;
+        up(this.states[node]);
+    }
+
+    private long[] route(int node) {
+        int length = 0;
+        for(int n = node; n >= 0; n = this.parents[n]) length++;
+        long[] route = new long[length];
+        for(int n = node; n >= 0; n = this.parents[n]) route[--length] = this.positions[n];
+        return route;
+    }
+
+    // node table
+
+    private static int slot(long position, int mask) {
+        return (int) ((position * ContentHash.BASE) >>> 32) & mask;
+    }
+
+    private int find(long position) {
+        int mask = this.tableKeys.length - 1;
+        for(int slot = slot(position, mask); this.tableStamps[slot] == this.stamp; slot = (slot + 1) & mask) {
+            if(this.tableKeys[slot] == position) return this.tableNodes[slot];
+        }
+        return -1;
+    }
+
+    private void insert(long position, int node) {
+        int mask = this.tableKeys.length - 1;
+        int slot = slot(position, mask);
+        while(this.tableStamps[slot] == this.stamp) slot = (slot + 1) & mask;
+        this.tableKeys[slot] = position;
+        this.tableNodes[slot] = node;
+        this.tableStamps[slot] = this.stamp;
+    }
+
+    private void open(long position, int parent, float cost, float estimate) {
+        int node = this.nodes++;
+        if(node == this.positions.length) growNodes();
+        if(this.nodes * 2 > this.tableKeys.length) growTable();
+        this.positions[node] = position;
+        this.costs[node] = cost;
+        this.estimates[node] = estimate;
+        this.parents[node] = parent;
+        insert(position, node);
+        this.heap[this.heapSize] = node;
+        this.states[node] = this.heapSize;
+        up(this.heapSize++);
+    }
+
+    private void growNodes() {
+        int length = this.positions.length * 2;
+        this.positions = Arrays.copyOf(this.positions, length);
+        this.costs = Arrays.copyOf(this.costs, length);
+        this.estimates = Arrays.copyOf(this.estimates, length);
+        this.parents = Arrays.copyOf(this.parents, length);
+        this.states = Arrays.copyOf(this.states, length);
+        this.heap = Arrays.copyOf(this.heap, length);
+    }
+
+    private void growTable() {
+        int length = this.tableKeys.length * 2;
+        this.tableKeys = new long[length];
+        this.tableNodes = new int[length];
+        this.tableStamps = new int[length];
+        for(int node = 0; node < this.nodes - 1; node++) insert(this.positions[node], node);
+    }
+
+    // open set, ordered by estimate and then by the larger cost, which prefers nodes closer to the goal on ties
+
+    private boolean before(int a, int b) {
+        float estimateA = this.estimates[a];
+        float estimateB = this.estimates[b];
+        return estimateA < estimateB || (estimateA == estimateB && this.costs[a] > this.costs[b]);
+    }
+
+    private int poll() {
+        int first = this.heap[0];
+        int last = this.heap[--this.heapSize];
+        if(this.heapSize > 0) {
+            this.heap[0] = last;
+            this.states[last] = 0;
+            down(0);
+        }
+        return first;
+    }
+
+    private void up(int index) {
+        int node = this.heap[index];
+        while(index > 0) {
+            int parentIndex = (index - 1) >>> 1;
+            int parent = this.heap[parentIndex];
+            if(!before(node, parent)) break;
+            this.heap[index] = parent;
+            this.states[parent] = index;
+            index = parentIndex;
+        }
+        this.heap[index] = node;
+        this.states[node] = index;
+    }
+
+    private void down(int index) {
+        int node = this.heap[index];
+        int half = this.heapSize >>> 1;
+        while(index < half) {
+            int child = 2 * index + 1;
+            if(child + 1 < this.heapSize && before(this.heap[child + 1], this.heap[child])) child++;
+            if(!before(this.heap[child], node)) break;
+            this.heap[index] = this.heap[child];
+            this.states[this.heap[index]] = index;
+            index = child;
+        }
+        this.heap[index] = node;
+        this.states[node] = index;
+    }
+
+    // route to moves
+
+    // the moves walking route for a player standing in the middle of its first block and looking along yaw,
+    // which is rounded to the nearest of south, west, north and east, at blocksPerTick
+    // steps up hold jump, the sequence ends with one tick of STAND_TALL
+    // the moves are open loop, long routes should be replanned from where the player actually is
+    public static MoveSequence toMoves(long[] route, float yaw, double blocksPerTick, String name) {
+        if(blocksPerTick <= 0) throw new IllegalArgumentException("blocksPerTick must be positive");
+        MoveSequence sequence = new MoveSequence(name, Move.STAND_TALL);
+        if(route == null || route.length < 2) return sequence;
+        // forward and left of the facing in world x and z, yaw 0 looks south along +z with +x on the left
+        int facing = Math.floorMod(Math.round(yaw / 90f), 4);
+        int forwardX = new int[] {0, -1, 0, 1}[facing];
+        int forwardZ = new int[] {1, 0, -1, 0}[facing];
+        int leftX = forwardZ;
+        int leftZ = -forwardX;
+        double distance = 0;
+        int ticks = 0;
+        for(int i = 1; i < route.length; i++) {
+            int dx = x(route[i]) - x(route[i - 1]);
+            int dz = z(route[i]) - z(route[i - 1]);
+            int forward = dx * forwardX + dz * forwardZ;
+            int left = dx * leftX + dz * leftZ;
+            Move move = move(forward, left, y(route[i]) > y(route[i - 1]));
+            distance += dx != 0 && dz != 0 ? SQRT2 : 1;
+            int until = (int) Math.ceil(distance / blocksPerTick);
+            if(until > ticks) {
+                sequence.addFromUntil(ticks, until, move);
+                ticks = until;
+            }
+        }
+        return sequence.add(Move.STAND_TALL);
+    }
+
+    // find and toMoves at walking speed, null if the goal can't be reached
+    public MoveSequence path(int startX, int startY, int startZ, int goalX, int goalY, int goalZ, float yaw, String name) {
+        long[] route = find(startX, startY, startZ, goalX, goalY, goalZ);
+        return route == null ? null : toMoves(route, yaw, WALK_SPEED, name);
+    }
+
+    private static Move move(int forward, int left, boolean jump) {
+        if(forward > 0) {
+            if(left > 0) return jump ? Move.JUMP_FORWARD_LEFT : Move.FORWARD_LEFT;
+            if(left < 0) return jump ? Move.JUMP_FORWARD_RIGHT : Move.FORWARD_RIGHT;
+            return jump ? Move.JUMP_FORWARD : Move.FORWARD;
+        }
+        if(forward < 0) {
+            if(left > 0) return jump ? Move.JUMP_BACKWARD_LEFT : Move.BACKWARD_LEFT;
+            if(left < 0) return jump ? Move.JUMP_BACKWARD_RIGHT : Move.BACKWARD_RIGHT;
+            return jump ? Move.JUMP_BACKWARD : Move.BACKWARD;
+        }
+        if(left > 0) return jump ? Move.JUMP_LEFT : Move.LEFT;
+        return jump ? Move.JUMP_RIGHT : Move.RIGHT;
+    }
+}
@@ -0,0 +1,113 @@
+package org.tessa.prelaunch.impl;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// one TessaPropertyModifier per namespace for the whole process, so every user of a namespace shares its values
+// and writes instead of reading the file again and overwriting each other.
+// the directories of the property files are watched by a daemon thread, a file changed by another process or by hand
+// is reloaded into its modifier, so settings can be changed while the game runs.
+public final class PropertyRegistry {
+
+    private static final PropertyRegistry INSTANCE = new PropertyRegistry();
+    // key of modifyDefault(), tessa.properties
+    private static final String DEFAULT_NAMESPACE = "";
+
+    private final ConcurrentHashMap<String, TessaPropertyModifier> modifiers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Path, TessaPropertyModifier> files = new ConcurrentHashMap<>();
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+    // created with the first watched directory, guarded by this
+    private WatchService watchService;
+    private boolean watchFailed;
+
+    private PropertyRegistry() {}
+
+    public static PropertyRegistry get() {
+        return INSTANCE;
+    }
+
+    // the modifier of tessa.namespace.properties
+    public TessaPropertyModifier modify(String namespace) {
+        if(namespace == null || namespace.isEmpty()) return modifyDefault();
+        TessaPropertyModifier modifier = this.modifiers.get(namespace);
+        if(modifier != null) return modifier;
+        return watch(this.modifiers.computeIfAbsent(namespace, TessaPropertyModifier::new));
+    }
+
+    // the modifier of tessa.properties
+    public TessaPropertyModifier modifyDefault() {
+        TessaPropertyModifier modifier = this.modifiers.get(DEFAULT_NAMESPACE);
+        if(modifier != null) return modifier;
+        return watch(this.modifiers.computeIfAbsent(DEFAULT_NAMESPACE, key -> new TessaPropertyModifier()));
+    }
+
+    // the namespaces modified so far, "" for the default properties
+    public Set<String> namespaces() {
+        return new TreeSet<>(this.modifiers.keySet());
+    }
+
+    // starts watching the file of modifier, outside computeIfAbsent since it may start the watcher thread
+    // threads racing to create the same modifier all get here, watching a file twice does nothing
+    private TessaPropertyModifier watch(TessaPropertyModifier modifier) {
+        Path file = modifier.file().toPath().toAbsolutePath().normalize();
+        this.files.put(file, modifier);
+        Path directory = file.getParent();
+        if(directory != null && this.directories.add(directory)) register(directory);
+        return modifier;
+    }
+
+    private synchronized void register(Path directory) {
+        if(this.watchFailed) return;
+        try {
+            if(this.watchService == null) {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                Thread thread = new Thread(this::run, "Tessa Property Watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            // properties still work, they are just not reloaded
+            this.watchFailed = true;
+            logger.error("PropertyRegistry::register can't watch {}, properties won't be reloaded", directory, e);
+        }
+    }
+
+    private void run() {
+        WatchService watchService;
+        synchronized(this) {
+            watchService = this.watchService;
+        }
+        try {
+            while(true) {
+                WatchKey key = watchService.take();
+                Path directory = (Path) key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events were lost, reload checks every file of the directory for changes
+                        this.files.forEach((file, modifier) -> {
+                            if(directory.equals(file.getParent())) modifier.reload();
+                        });
+                        continue;
+                    }
+                    // writes create temporary files first, they don't belong to any modifier
+                    TessaPropertyModifier modifier = this.files.get(directory.resolve((Path) event.context()));
+                    if(modifier != null) modifier.reload();
+                }
+                if(!key.reset()) this.directories.remove(directory);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.info("PropertyRegistry::run property watcher stopped");
+        }
+    }
+}
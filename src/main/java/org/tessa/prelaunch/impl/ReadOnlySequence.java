@@ -0,0 +1,277 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.InputMask;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// a sequence whose terms never change, read from ViewTerms instead of an editable storage
+// the terms can be read from any thread without locking, edits are refused and logged,
+// names and default values belong to the sequence and can be changed.
+// materialize() copies the terms into an editable sequence, subsequence and deepCopy return materialized copies
+public abstract class ReadOnlySequence<T extends SafeValue> implements Sequence<T> {
+
+    private static final SequenceMetrics METRICS = SequenceMetrics.get();
+
+    final Terms<T> terms;
+    // materialize() creates a sequence of this type when it can
+    final String sequenceType;
+    private volatile String name;
+    private volatile T defaultValue;
+    // the terms never change, so their ContentHash is computed once on first use
+    private volatile long contentHash;
+    private volatile boolean hashed;
+
+    ReadOnlySequence(Terms<T> terms, String sequenceType, String name, T defaultValue) {
+        this.terms = terms;
+        this.sequenceType = sequenceType;
+        this.name = name;
+        this.defaultValue = defaultValue;
+    }
+
+    final Terms<T> terms() {
+        return this.terms;
+    }
+
+    public String sequenceType() {
+        return this.sequenceType;
+    }
+
+    // copies the terms into a new editable sequence, a MoveSequence or MaskSequence for terms of those and an RleSequence otherwise
+    public <R extends Sequence<T>> R materialize(String name) {
+        return materialize(name, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    final <R extends Sequence<T>> R materialize(String name, boolean deep) {
+        T defaultValue = this.defaultValue;
+        AbstractSequence<T> sequence;
+        if(this.sequenceType.equals("MoveSequence") && defaultValue instanceof Move move) sequence = (AbstractSequence<T>) new MoveSequence(name, move);
+        else if(this.sequenceType.equals("MaskSequence") && defaultValue instanceof InputMask mask) sequence = (AbstractSequence<T>) new MaskSequence(name, mask);
+        else sequence = new RleSequence<>(name, defaultValue);
+        sequence.addRange(this, 0, this.terms.size());
+        if(deep && defaultValue != null && !defaultValue.isEnum()) return sequence.deepCopy(name);
+        return (R) sequence;
+    }
+
+    // counts the out of bounds tick and logs it, at most once per method every SequenceMetrics.WARNING_INTERVAL_NANOS
+    final void logWarning(String methodName, int tick, String message) {
+        METRICS.recordOutOfBounds(methodName);
+        long suppressed = METRICS.allowWarning(methodName);
+        if(suppressed < 0) return;
+        logger.warn(String.format(AbstractSequence.WARNING_MESSAGE, this.sequenceType, tick, this.terms.size(), "not listed for read only sequences", methodName, suppressed), new IndexOutOfBoundsException(message));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R extends Sequence<T>> R readOnly(String methodName) {
+        logger.error("{}::{} the sequence is read only, materialize {} to edit it", this.sequenceType, methodName, this.name);
+        return (R) this;
+    }
+
+    public int tick() {
+        return this.terms.size() - 1;
+    }
+
+    public T at(int tick) {
+        if(tick < 0 || tick >= this.terms.size()) {
+            logWarning("Sequence::at", tick, "Tick outside of sequence");
+            return this.defaultValue;
+        }
+        return this.terms.get(tick);
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R extends Sequence<T>> R setName(String name) {
+        this.name = name;
+        return (R) this;
+    }
+
+    public T defaultValue() {
+        return this.defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R extends Sequence<T>> R setDefaultValue(T defaultValue) {
+        this.defaultValue = defaultValue.deepCopy();
+        return (R) this;
+    }
+
+    // a materialized deep copy of terms [startingTick, until)
+    public <R extends Sequence<T>> R subsequence(int startingTick, int until) {
+        if(startingTick < 0 || until > this.terms.size()) {
+            logWarning("Sequence::subsequence", startingTick < 0 ? startingTick : until, "indices on subsequence call out of bounds");
+            startingTick = Math.max(startingTick, 0);
+            until = Math.min(until, this.terms.size());
+        }
+        until = Math.max(until, startingTick);
+        return new SequenceView<>(ViewTerms.slice(this.terms, startingTick, until), this.sequenceType, this.name, this.defaultValue)
+                .materialize(this.name + "_[" + startingTick + "," + until + ")", true);
+    }
+
+    public <R extends Sequence<T>> R add(T value) {
+        return readOnly("add");
+    }
+
+    public <R extends Sequence<T>> R add(int tick, T value) {
+        return readOnly("add");
+    }
+
+    public <R extends Sequence<T>> R add(R sequence) {
+        return readOnly("add");
+    }
+
+    public <R extends Sequence<T>> R addCopy(R sequence) {
+        return readOnly("addCopy");
+    }
+
+    public <R extends Sequence<T>> R addFromUntil(int startingTick, int until, T value) {
+        return readOnly("addFromUntil");
+    }
+
+    public <R extends Sequence<T>> R set(int tick, T value) {
+        return readOnly("set");
+    }
+
+    public <R extends Sequence<T>> R setFromUntil(int startingTick, int until, T value) {
+        return readOnly("setFromUntil");
+    }
+
+    public <R extends Sequence<T>> R remove(int tick) {
+        return readOnly("remove");
+    }
+
+    public <R extends Sequence<T>> R remove(int startingTick, int until) {
+        return readOnly("remove");
+    }
+
+    public <R extends Sequence<T>> R removeAll(T value) {
+        return readOnly("removeAll");
+    }
+
+    public <R extends Sequence<T>> R removeAll(Collection<T> values) {
+        return readOnly("removeAll");
+    }
+
+    public <R extends Sequence<T>> R removeAll(R subsequence) {
+        return readOnly("removeAll");
+    }
+
+    public <R extends Sequence<T>> R replaceAll(Sequence<T> pattern, Sequence<T> replacement) {
+        return readOnly("replaceAll");
+    }
+
+    public <R extends Sequence<T>> R clear() {
+        return readOnly("clear");
+    }
+
+    public int indexOf(Sequence<T> pattern, int fromTick) {
+        return new SequenceMatcher<>(pattern).find(this.terms, fromTick);
+    }
+
+    public int indexOf(Sequence<T> pattern) {
+        return indexOf(pattern, 0);
+    }
+
+    public int[] findAll(Sequence<T> pattern) {
+        SequenceMatcher<T> matcher = new SequenceMatcher<>(pattern);
+        int[] matches = new int[8];
+        int count = 0;
+        for(int match = matcher.find(this.terms, 0); match >= 0; match = matcher.find(this.terms, match + matcher.length())) {
+            if(count == matches.length) matches = Arrays.copyOf(matches, count << 1);
+            matches[count++] = match;
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    public int count(Sequence<T> pattern) {
+        SequenceMatcher<T> matcher = new SequenceMatcher<>(pattern);
+        int count = 0;
+        for(int match = matcher.find(this.terms, 0); match >= 0; match = matcher.find(this.terms, match + matcher.length())) count++;
+        return count;
+    }
+
+    // the terms never change, so a copy is a view of the same terms under another name
+    @SuppressWarnings("unchecked")
+    public <R extends Sequence<T>> R copy(String copyname) {
+        return (R) new SequenceView<>(this.terms, this.sequenceType, copyname, this.defaultValue);
+    }
+
+    // a materialized deep copy
+    public <R extends Sequence<T>> R deepCopy(String copyname) {
+        return materialize(copyname, true);
+    }
+
+    // read only sequences are equal to read only sequences holding equal terms at every tick
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(!(obj instanceof ReadOnlySequence<?> sequence)) return false;
+        if(this.hashed && sequence.hashed && this.contentHash != sequence.contentHash) return false;
+        return this.terms.contentEquals((Terms<T>) sequence.terms);
+    }
+
+    @Override
+    public int hashCode() {
+        return ContentHash.hashCode(contentHash());
+    }
+
+    // hash of the terms, equal to the contentHash of an editable sequence holding the same terms
+    // O(number of runs) the first time, O(1) afterwards
+    public final long contentHash() {
+        if(!this.hashed) {
+            this.contentHash = ContentHash.of(this.terms);
+            this.hashed = true;
+        }
+        return this.contentHash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < this.terms.size(); i++) builder.append(i).append('=').append(this.terms.get(i)).append('\n');
+        return builder.toString();
+    }
+
+    public Set<T> asSet() {
+        HashSet<T> set = new HashSet<>();
+        for(int i = 0; i < this.terms.size(); i = this.terms.runEnd(i)) set.add(this.terms.get(i));
+        return set;
+    }
+
+    public Map<Integer, T> asMap() {
+        HashMap<Integer, T> map = new HashMap<>();
+        for(int i = 0; i < this.terms.size(); i++) map.put(i, this.terms.get(i));
+        return map;
+    }
+
+    // debug export in the form tick=value\n, like AbstractSequence.write
+    public File write(String filename) {
+        File file = new File(filename);
+        try (Writer writer = new BufferedWriter(new FileWriter(file, false))) {
+            for(int i = 0; i < this.terms.size(); i++) {
+                writer.append(Integer.toString(i)).append('=').append(String.valueOf(this.terms.get(i))).append('\n');
+            }
+        } catch (IOException e) {
+            logger.error("{}::write", this.sequenceType, e);
+            return null;
+        }
+        return file;
+    }
+
+    // writes the materialized terms in the binary format read back by SequenceFile.read
+    public File writeBinary(String filename) {
+        return SequenceFile.write(materialize(this.name), filename);
+    }
+}
@@ -0,0 +1,65 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.Sequence;
+import org.tessa.prelaunch.api.SafeValue;
+
+// a sequence stored as runs of equal terms, for scripts like FORWARD for 2000 ticks then SPRINT for 5000
+// at() is a binary search over the runs, range operations cost O(number of runs)
+public class RleSequence<T extends SafeValue> extends AbstractSequence<T> implements Sequence<T> {
+
+    public RleSequence(String name, T defaultValue) {
+        super(name, defaultValue, SequenceStorage.RUN_LENGTH);
+    }
+
+    // a sequence holding terms, e.g. runs built in bulk by ScriptCompiler
+    RleSequence(String name, T defaultValue, RleTerms<T> terms) {
+        super(name, defaultValue, SequenceStorage.RUN_LENGTH, terms);
+    }
+
+    public String sequenceType() {
+        return "RleSequence";
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized boolean equals(Object obj) {
+        if(this == obj) return true;
+        if(obj == null || getClass() != obj.getClass()) return false;
+        return termsEqual((RleSequence<T>) obj);
+    }
+
+    public synchronized RleSequence<T> subsequence(int startingTick, int until) {
+        if(startingTick < 0 || until > tick() + 1) {
+            logWarning("RleSequence:subsequence", startingTick < 0 ? startingTick : until, "indices on subsequence call out of bounds");
+            startingTick = Math.max(startingTick, 0);
+            until = Math.min(until, tick() + 1);
+        }
+        RleSequence<T> subsequence = new RleSequence<>(name() + "_[" + startingTick + "," + until + ")", defaultValue());
+        if(until > startingTick) subsequence.addDeepRange(this, startingTick, until);
+        return subsequence;
+    }
+
+    public synchronized RleSequence<T> copy(String copyname) {
+        RleSequence<T> copy = new RleSequence<>(copyname, defaultValue().shallowCopy());
+        copy.addRange(this, 0, tick() + 1);
+        return copy;
+    }
+
+    public synchronized RleSequence<T> deepCopy(String copyname) {
+        RleSequence<T> copy = new RleSequence<>(copyname, defaultValue().deepCopy());
+        copy.addDeepRange(this, 0, tick() + 1);
+        return copy;
+    }
+
+    // enum terms are their own deep copies, other terms are copied once per run
+    private void addDeepRange(RleSequence<T> source, int from, int until) {
+        if(defaultValue() == null || defaultValue().isEnum()) {
+            addRange(source, from, until);
+            return;
+        }
+        for(int i = from; i < until; ) {
+            int end = Math.min(source.runEnd(i), until);
+            addFromUntil(tick() + 1, tick() + 1 + end - i, source.at(i).deepCopy());
+            i = end;
+        }
+    }
+}
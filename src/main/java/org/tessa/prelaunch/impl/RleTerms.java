@@ -0,0 +1,330 @@
+package org.tessa.prelaunch.impl;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// run length encoded storage, each maximal run of equal terms is stored once as (value, end)
+// ends are cumulative (exclusive end tick of the run), so a tick is found by binary search
+// and range operations cost O(number of runs) independent of the run lengths
+final class RleTerms<T> implements Terms<T> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Object[] values;
+    private int[] ends;
+    private int runs;
+    // runs [0, sharedRuns) are also visible through a snapshot, their values and all but the last of their ends
+    // must be copied before they change. the snapshot keeps its own size, so the last shared run can still grow
+    private int sharedRuns;
+    // last run found, sequential reads stay O(1)
+    private int cursor;
+    // scratch space for splicing, at most 5 runs are rebuilt per edit
+    private final Object[] spliceValues = new Object[5];
+    private final int[] spliceLengths = new int[5];
+
+    RleTerms() {
+        this.values = new Object[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+        this.runs = 0;
+    }
+
+    // takes over values and ends, holding runs maximal runs, the caller must not use the arrays afterwards
+    RleTerms(Object[] values, int[] ends, int runs) {
+        this.values = values;
+        this.ends = ends;
+        this.runs = runs;
+    }
+
+    private RleTerms(RleTerms<T> source) {
+        this.values = Arrays.copyOf(source.values, Math.max(source.runs, INITIAL_CAPACITY));
+        this.ends = Arrays.copyOf(source.ends, Math.max(source.runs, INITIAL_CAPACITY));
+        this.runs = source.runs;
+    }
+
+    int runs() {
+        return this.runs;
+    }
+
+    @SuppressWarnings("unchecked")
+    T runValue(int run) {
+        return (T) this.values[run];
+    }
+
+    int runStart(int run) {
+        return run == 0 ? 0 : this.ends[run - 1];
+    }
+
+    int runEndOf(int run) {
+        return this.ends[run];
+    }
+
+    // index of the run holding tick, tick must be in [0, size())
+    int findRun(int tick) {
+        int run = this.cursor;
+        if(run < this.runs && tick < this.ends[run] && tick >= runStart(run)) return run;
+        // reading on from the end of the last run found
+        if(run + 1 < this.runs && tick >= this.ends[run] && tick < this.ends[run + 1]) {
+            this.cursor = run + 1;
+            return run + 1;
+        }
+        int lo = 0;
+        int hi = this.runs - 1;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(this.ends[mid] > tick) hi = mid;
+            else lo = mid + 1;
+        }
+        this.cursor = lo;
+        return lo;
+    }
+
+    private void ensureCapacity(int required) {
+        if(required <= this.ends.length) return;
+        int capacity = Math.max(required, this.ends.length << 1);
+        this.values = Arrays.copyOf(this.values, capacity);
+        this.ends = Arrays.copyOf(this.ends, capacity);
+        this.sharedRuns = 0;
+    }
+
+    // copies the arrays if runs from run on are shared with a snapshot
+    private void unshare(int run) {
+        if(run >= this.sharedRuns) return;
+        this.values = this.values.clone();
+        this.ends = this.ends.clone();
+        this.sharedRuns = 0;
+    }
+
+    private void appendRun(T value, int length) {
+        if(length <= 0) return;
+        if(this.runs > 0 && Objects.equals(this.values[this.runs - 1], value)) {
+            this.ends[this.runs - 1] += length;
+            return;
+        }
+        ensureCapacity(this.runs + 1);
+        this.values[this.runs] = value;
+        this.ends[this.runs] = size() + length;
+        this.runs++;
+    }
+
+    private int piece(int count, Object value, int length) {
+        if(length <= 0) return count;
+        if(count > 0 && Objects.equals(this.spliceValues[count - 1], value)) {
+            this.spliceLengths[count - 1] += length;
+            return count;
+        }
+        this.spliceValues[count] = value;
+        this.spliceLengths[count] = length;
+        return count + 1;
+    }
+
+    // replaces terms [from, until) with count copies of value, merging equal neighbouring runs
+    private void replace(int from, int until, int count, T value) {
+        int size = size();
+        if(from == size) {
+            appendRun(value, count);
+            return;
+        }
+        int first = findRun(from);
+        int last = until > from ? findRun(until - 1) + 1 : first + 1;
+        // the neighbouring runs are rebuilt too so they can merge with the new run
+        int lo = Math.max(first - 1, 0);
+        int hi = Math.min(last + 1, this.runs);
+        unshare(lo);
+        int base = runStart(lo);
+        int pieces = 0;
+        if(lo < first) pieces = piece(pieces, this.values[lo], this.ends[lo] - base);
+        pieces = piece(pieces, this.values[first], from - runStart(first));
+        pieces = piece(pieces, value, count);
+        pieces = piece(pieces, this.values[last - 1], this.ends[last - 1] - until);
+        if(hi > last) pieces = piece(pieces, this.values[last], this.ends[last] - this.ends[last - 1]);
+        int shift = pieces - (hi - lo);
+        ensureCapacity(this.runs + shift);
+        System.arraycopy(this.values, hi, this.values, hi + shift, this.runs - hi);
+        System.arraycopy(this.ends, hi, this.ends, hi + shift, this.runs - hi);
+        this.runs += shift;
+        int end = base;
+        for(int i = 0; i < pieces; i++) {
+            end += this.spliceLengths[i];
+            this.values[lo + i] = this.spliceValues[i];
+            this.ends[lo + i] = end;
+            this.spliceValues[i] = null;
+        }
+        int delta = count - (until - from);
+        if(delta != 0) for(int i = lo + pieces; i < this.runs; i++) this.ends[i] += delta;
+        for(int i = this.runs; i < this.runs - shift && i < this.values.length; i++) this.values[i] = null;
+        this.cursor = lo;
+    }
+
+    public int size() {
+        return this.runs == 0 ? 0 : this.ends[this.runs - 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T) this.values[findRun(index)];
+    }
+
+    public void set(int index, T value) {
+        int run = findRun(index);
+        if(Objects.equals(this.values[run], value)) return;
+        replace(index, index + 1, 1, value);
+    }
+
+    public void add(T value) {
+        appendRun(value, 1);
+    }
+
+    public void addAll(Terms<T> source, int from, int until) {
+        if(source == this) source = copy();
+        if(source instanceof RleTerms<T> other) {
+            if(from >= until) return;
+            for(int run = other.findRun(from); run < other.runs && other.runStart(run) < until; run++) {
+                appendRun(other.runValue(run), Math.min(other.ends[run], until) - Math.max(other.runStart(run), from));
+            }
+            return;
+        }
+        for(int i = from; i < until; ) {
+            int end = Math.min(source.runEnd(i), until);
+            appendRun(source.get(i), end - i);
+            i = end;
+        }
+    }
+
+    public void insert(int index, int count, T value) {
+        if(count > 0) replace(index, index, count, value);
+    }
+
+    public void fill(int from, int until, T value) {
+        if(until > from) replace(from, until, until - from, value);
+    }
+
+    public void remove(int from, int until) {
+        if(until > from) replace(from, until, 0, null);
+    }
+
+    public int removeIf(Predicate<? super T> filter) {
+        unshare(0);
+        int size = size();
+        int kept = 0;
+        int end = 0;
+        int start = 0;
+        for(int run = 0; run < this.runs; run++) {
+            int length = this.ends[run] - start;
+            start = this.ends[run];
+            if(filter.test(runValue(run))) continue;
+            end += length;
+            if(kept > 0 && Objects.equals(this.values[kept - 1], this.values[run])) {
+                this.ends[kept - 1] = end;
+                continue;
+            }
+            this.values[kept] = this.values[run];
+            this.ends[kept] = end;
+            kept++;
+        }
+        Arrays.fill(this.values, kept, this.runs, null);
+        this.runs = kept;
+        this.cursor = 0;
+        return size - end;
+    }
+
+    public void clear() {
+        if(this.sharedRuns > 0) {
+            this.values = new Object[INITIAL_CAPACITY];
+            this.ends = new int[INITIAL_CAPACITY];
+            this.sharedRuns = 0;
+        } else {
+            Arrays.fill(this.values, 0, this.runs, null);
+        }
+        this.runs = 0;
+        this.cursor = 0;
+    }
+
+    public int runEnd(int index) {
+        return this.ends[findRun(index)];
+    }
+
+    public boolean contentEquals(Terms<T> other) {
+        if(size() != other.size()) return false;
+        if(other instanceof RleTerms<T> terms) {
+            // runs are always maximal, so equal content means equal runs
+            if(this.runs != terms.runs) return false;
+            return Arrays.equals(this.ends, 0, this.runs, terms.ends, 0, this.runs)
+                    && Arrays.equals(this.values, 0, this.runs, terms.values, 0, this.runs);
+        }
+        for(int i = 0; i < size(); i++) {
+            if(!Objects.equals(get(i), other.get(i))) return false;
+        }
+        return true;
+    }
+
+    public RleTerms<T> empty() {
+        return new RleTerms<>();
+    }
+
+    public RleTerms<T> copy() {
+        return new RleTerms<>(this);
+    }
+
+    // appends only grow the last shared run or write past it, so a storage that is only appended to is never copied
+    public Terms<T> snapshot() {
+        if(this.runs == 0) return new RleTerms<>();
+        this.sharedRuns = this.runs;
+        return new Snapshot<>(this.values, this.ends, this.runs, size());
+    }
+
+    // the runs of an RleTerms as they were, sharing its arrays
+    // the end of the last run is the snapshot's size, the storage may have grown that run since
+    private static final class Snapshot<T> extends ViewTerms<T> {
+
+        private final Object[] values;
+        private final int[] ends;
+        private final int runs;
+        private final int size;
+        // last run found, racing readers at worst search again
+        private int cursor;
+
+        Snapshot(Object[] values, int[] ends, int runs, int size) {
+            this.values = values;
+            this.ends = ends;
+            this.runs = runs;
+            this.size = size;
+        }
+
+        private int end(int run) {
+            return run == this.runs - 1 ? this.size : this.ends[run];
+        }
+
+        private int findRun(int tick) {
+            int run = this.cursor;
+            if(tick < end(run) && (run == 0 || tick >= this.ends[run - 1])) return run;
+            int lo = 0;
+            int hi = this.runs - 1;
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(this.ends[mid] > tick) hi = mid;
+                else lo = mid + 1;
+            }
+            this.cursor = lo;
+            return lo;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            return (T) this.values[findRun(index)];
+        }
+
+        @Override
+        public int runEnd(int index) {
+            return end(findRun(index));
+        }
+
+        @Override
+        public Terms<T> empty() {
+            return new RleTerms<>();
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// compiles text scripts of enum values into RleSequences
+//
+// a script is a list of statements, one per line or separated by ;, # and // start comments:
+//   FORWARD                    one tick of FORWARD
+//   40 SPRINT                  40 ticks of SPRINT
+//   0..1999 FORWARD            ticks 0 to 1999 of FORWARD, ticks skipped since the last statement get the default value
+//   2000=JUMP                  tick 2000 is JUMP, the tick=value lines written by AbstractSequence.write
+//   repeat 50 { ... }          the statements in braces 50 times
+//   fragment name { ... }      defines a fragment, only at the top of the script, and adds nothing
+//   include name               the fragment, defined before in the script, added with fragment or found by the resolver
+//   default STAND_TALL         the default value of the sequence and of skipped ticks
+// ticks of ranges are counted from the start of the enclosing braces, so 0..19 inside a repeat is the first 20 ticks
+// of every repetition. a range may not start before the ticks already in its braces.
+//
+// the input is read in blocks of bytes and tokenized in place, words are looked up in tables of the enum names and
+// fragment names without making strings, and every block compiles to runs of values that are repeated by copying the
+// runs, so the cost is the length of the script and the number of runs, not the number of ticks.
+// not thread safe, use one compiler per thread.
+public final class ScriptCompiler<T extends Enum<T> & SafeValue> {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] REPEAT = bytes("repeat");
+    private static final byte[] FRAGMENT = bytes("fragment");
+    private static final byte[] INCLUDE = bytes("include");
+    private static final byte[] DEFAULT = bytes("default");
+    // tokens
+    private static final int EOF = 0, END = 1, NUMBER = 2, WORD = 3, RANGE = 4, EQUALS = 5, OPEN = 6, CLOSE = 7;
+
+    private final Class<T> type;
+    private final NameTable<T> values = new NameTable<>();
+    private final NameTable<Runs> fragments = new NameTable<>();
+    private Function<String, ? extends Sequence<T>> resolver;
+    private T defaultValue;
+
+    // per compile state
+    private final NameTable<Runs> scriptFragments = new NameTable<>();
+    private T scriptDefault;
+    private InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int line;
+    // the line the current token started on, a line break token belongs to the line it ends
+    private int tokenLine;
+    private int token;
+    private boolean pushedBack;
+    private long number;
+    private byte[] word = new byte[64];
+    private int wordLength;
+
+    public ScriptCompiler(Class<T> type) {
+        this.type = type;
+        for(T value : type.getEnumConstants()) this.values.put(bytes(value.name()), value);
+    }
+
+    public static <T extends Enum<T> & SafeValue> ScriptCompiler<T> of(Class<T> type) {
+        return new ScriptCompiler<>(type);
+    }
+
+    // default value of the compiled sequences, unless the script sets one
+    public ScriptCompiler<T> defaultValue(T defaultValue) {
+        this.defaultValue = defaultValue;
+        return this;
+    }
+
+    // makes sequence available to include as name, fragments defined by a script hide it in that script
+    public ScriptCompiler<T> fragment(String name, Sequence<T> sequence) {
+        this.fragments.put(bytes(name), Runs.of(sequence));
+        return this;
+    }
+
+    // looks up fragments included by scripts that are neither defined in the script nor added, for example ScriptStore::open
+    // a fragment is resolved once and kept, null means there is no such fragment
+    public ScriptCompiler<T> resolver(Function<String, ? extends Sequence<T>> resolver) {
+        this.resolver = resolver;
+        return this;
+    }
+
+    // compiles the script in file, returns null if it can't be read or doesn't compile
+    public RleSequence<T> compile(String name, Path file) {
+        try (InputStream input = Files.newInputStream(file)) {
+            return compile(name, input, file.toString());
+        } catch (IOException e) {
+            logger.error("ScriptCompiler::compile {}", file, e);
+            return null;
+        }
+    }
+
+    // compiles the script in source, returns null if it doesn't compile
+    public RleSequence<T> compile(String name, CharSequence source) {
+        return compile(name, new ByteArrayInputStream(source.toString().getBytes(StandardCharsets.UTF_8)), name);
+    }
+
+    // compiles the script read from input, which is not closed, returns null if it can't be read or doesn't compile
+    public RleSequence<T> compile(String name, InputStream input) {
+        return compile(name, input, name);
+    }
+
+    private RleSequence<T> compile(String name, InputStream input, String source) {
+        this.input = input;
+        this.position = 0;
+        this.limit = 0;
+        this.line = 1;
+        this.tokenLine = 1;
+        this.pushedBack = false;
+        this.scriptDefault = this.defaultValue;
+        this.scriptFragments.clear();
+        try {
+            Runs runs = new Runs();
+            block(runs, false, true);
+            return runs.toSequence(name, this.scriptDefault);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("ScriptCompiler::compile {}", source, e);
+            return null;
+        } finally {
+            this.input = null;
+            this.scriptFragments.clear();
+        }
+    }
+
+    // parser
+
+    // compiles statements into runs until the closing brace, or the end of the input at the top
+    private void block(Runs runs, boolean braced, boolean top) throws IOException {
+        for(;;) {
+            switch(next()) {
+                case END -> {
+                    continue;
+                }
+                case EOF -> {
+                    if(braced) throw error("Missing }");
+                    return;
+                }
+                case CLOSE -> {
+                    if(!braced) throw error("Unexpected }");
+                    return;
+                }
+                case NUMBER -> {
+                    long first = this.number;
+                    switch(next()) {
+                        case RANGE -> {
+                            long last = expectNumber();
+                            if(last < first) throw error("Range " + first + ".." + last + " ends before it starts");
+                            runs.at(first, last - first + 1, expectValue(), this);
+                        }
+                        case EQUALS -> runs.at(first, 1, expectValue(), this);
+                        case WORD -> runs.append(first, value(), this);
+                        default -> throw error("Expected a value, .. or = after " + first);
+                    }
+                }
+                case WORD -> {
+                    if(isWord(REPEAT)) {
+                        long count = expectNumber();
+                        expect(OPEN, "{");
+                        Runs body = new Runs();
+                        block(body, true, false);
+                        runs.repeat(body, count, this);
+                        continue;
+                    } else if(isWord(FRAGMENT)) {
+                        if(!top) throw error("Fragments can only be defined at the top of a script");
+                        expect(WORD, "a fragment name");
+                        byte[] fragmentName = Arrays.copyOf(this.word, this.wordLength);
+                        expect(OPEN, "{");
+                        Runs body = new Runs();
+                        block(body, true, false);
+                        this.scriptFragments.put(fragmentName, body);
+                        continue;
+                    } else if(isWord(INCLUDE)) {
+                        expect(WORD, "a fragment name");
+                        runs.appendAll(include(), this);
+                    } else if(isWord(DEFAULT)) {
+                        if(!top) throw error("The default value can only be set at the top of a script");
+                        this.scriptDefault = expectValue();
+                    } else {
+                        runs.append(1, value(), this);
+                    }
+                }
+                default -> throw error("Unexpected " + describe(this.token));
+            }
+            // a statement ends at the end of the line, a ; or the closing brace of its block
+            int end = next();
+            if(end == CLOSE || end == EOF) this.pushedBack = true;
+            else if(end != END) throw error("Expected the end of the statement, found " + describe(end));
+        }
+    }
+
+    private Runs include() {
+        Runs fragment = this.scriptFragments.get(this.word, this.wordLength);
+        if(fragment == null) fragment = this.fragments.get(this.word, this.wordLength);
+        if(fragment == null && this.resolver != null) {
+            String name = new String(this.word, 0, this.wordLength, StandardCharsets.UTF_8);
+            Sequence<T> sequence = this.resolver.apply(name);
+            if(sequence != null) {
+                fragment = Runs.of(sequence);
+                this.fragments.put(Arrays.copyOf(this.word, this.wordLength), fragment);
+            }
+        }
+        if(fragment == null) throw error("Unknown fragment " + new String(this.word, 0, this.wordLength, StandardCharsets.UTF_8));
+        return fragment;
+    }
+
+    private long expectNumber() throws IOException {
+        expect(NUMBER, "a number");
+        return this.number;
+    }
+
+    private T expectValue() throws IOException {
+        expect(WORD, "a value");
+        return value();
+    }
+
+    // the value named by the current word
+    private T value() {
+        T value = this.values.get(this.word, this.wordLength);
+        if(value == null) throw error("Unknown " + this.type.getSimpleName() + " " + new String(this.word, 0, this.wordLength, StandardCharsets.UTF_8));
+        return value;
+    }
+
+    private void expect(int token, String expected) throws IOException {
+        int found = next();
+        if(found != token) throw error("Expected " + expected + ", found " + describe(found));
+    }
+
+    private boolean isWord(byte[] keyword) {
+        return Arrays.equals(this.word, 0, this.wordLength, keyword, 0, keyword.length);
+    }
+
+    private String describe(int token) {
+        return switch(token) {
+            case EOF -> "the end of the script";
+            case END -> "the end of the line";
+            case NUMBER -> Long.toString(this.number);
+            case WORD -> new String(this.word, 0, this.wordLength, StandardCharsets.UTF_8);
+            case RANGE -> "..";
+            case EQUALS -> "=";
+            case OPEN -> "{";
+            default -> "}";
+        };
+    }
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Line " + this.tokenLine + ": " + message);
+    }
+
+    // tokenizer
+
+    private int next() throws IOException {
+        if(this.pushedBack) {
+            this.pushedBack = false;
+            return this.token;
+        }
+        return this.token = scan();
+    }
+
+    private int scan() throws IOException {
+        for(;;) {
+            int c = read();
+            this.tokenLine = this.line;
+            switch(c) {
+                case -1:
+                    return EOF;
+                case ' ', '\t', '\r':
+                    continue;
+                case '\n':
+                    this.line++;
+                    return END;
+                case ';':
+                    return END;
+                case '#':
+                    skipLine();
+                    continue;
+                case '/':
+                    if(peek() != '/') throw error("Unexpected /");
+                    skipLine();
+                    continue;
+                case '{':
+                    return OPEN;
+                case '}':
+                    return CLOSE;
+                case '=':
+                    return EQUALS;
+                case '.':
+                    if(read() != '.') throw error("Expected ..");
+                    return RANGE;
+                default:
+                    if(c >= '0' && c <= '9') return scanNumber(c);
+                    if(isWordStart(c)) return scanWord(c);
+                    throw error("Unexpected character " + (char) c);
+            }
+        }
+    }
+
+    // digits with optional _ separators, at most Integer.MAX_VALUE
+    private int scanNumber(int c) throws IOException {
+        long number = c - '0';
+        for(;;) {
+            int next = peek();
+            if(next >= '0' && next <= '9') {
+                number = number * 10 + next - '0';
+                if(number > Integer.MAX_VALUE) throw error("Number too large");
+            } else if(next != '_') {
+                break;
+            }
+            this.position++;
+        }
+        this.number = number;
+        return NUMBER;
+    }
+
+    private int scanWord(int c) throws IOException {
+        int length = 0;
+        for(;;) {
+            if(length == this.word.length) this.word = Arrays.copyOf(this.word, length * 2);
+            this.word[length++] = (byte) c;
+            int next = peek();
+            if(!isWordStart(next) && !(next >= '0' && next <= '9') && next != '-') break;
+            this.position++;
+            c = next;
+        }
+        this.wordLength = length;
+        return WORD;
+    }
+
+    private static boolean isWordStart(int c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_' || c == '$' || c >= 0x80;
+    }
+
+    // leaves the line break for the next token
+    private void skipLine() throws IOException {
+        for(int c = peek(); c != -1 && c != '\n'; c = peek()) this.position++;
+    }
+
+    private int read() throws IOException {
+        if(this.position == this.limit && !fill()) return -1;
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if(this.position == this.limit && !fill()) return -1;
+        return this.buffer[this.position] & 0xFF;
+    }
+
+    // only -1 ends the input, streams may return 0 bytes before the next ones arrive
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = this.input.read(this.buffer, 0, this.buffer.length);
+        } while(read == 0);
+        if(read < 0) return false;
+        this.position = 0;
+        this.limit = read;
+        return true;
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // compiled runs of a block, values are compared by identity, they are enum constants
+    private static final class Runs {
+
+        private Object[] values = new Object[8];
+        private int[] lengths = new int[8];
+        private int runs;
+        private long length;
+
+        // the runs of sequence, holding its lock so writers can't change it meanwhile
+        static <T extends SafeValue> Runs of(Sequence<T> sequence) {
+            Runs runs = new Runs();
+            synchronized(sequence) {
+                int size = sequence.tick() + 1;
+                for(int i = 0; i < size; ) {
+                    int end = runEnd(sequence, i);
+                    runs.add(sequence.at(i), end - i);
+                    i = end;
+                }
+            }
+            return runs;
+        }
+
+        private static <T extends SafeValue> int runEnd(Sequence<T> sequence, int tick) {
+            if(sequence instanceof AbstractSequence<T> stored) return stored.terms().runEnd(tick);
+            if(sequence instanceof ReadOnlySequence<T> readOnly) return readOnly.terms().runEnd(tick);
+            int end = tick + 1;
+            T value = sequence.at(tick);
+            while(end <= sequence.tick() && sequence.at(end) == value) end++;
+            return end;
+        }
+
+        private void add(Object value, int length) {
+            if(this.runs > 0 && this.values[this.runs - 1] == value) {
+                this.lengths[this.runs - 1] += length;
+            } else {
+                if(this.runs == this.values.length) {
+                    this.values = Arrays.copyOf(this.values, this.runs * 2);
+                    this.lengths = Arrays.copyOf(this.lengths, this.runs * 2);
+                }
+                this.values[this.runs] = value;
+                this.lengths[this.runs] = length;
+                this.runs++;
+            }
+            this.length += length;
+        }
+
+        private void grow(long count, ScriptCompiler<?> compiler) {
+            if(this.length + count > Integer.MAX_VALUE) throw compiler.error("Script longer than " + Integer.MAX_VALUE + " ticks");
+        }
+
+        void append(long count, Object value, ScriptCompiler<?> compiler) {
+            if(count <= 0) return;
+            grow(count, compiler);
+            add(value, (int) count);
+        }
+
+        // count ticks of value from tick start of the block, filling the ticks before it with the default value
+        void at(long start, long count, Object value, ScriptCompiler<?> compiler) {
+            if(start < this.length) throw compiler.error("Tick " + start + " comes before the end of the previous ticks, " + this.length);
+            if(start > this.length) {
+                if(compiler.scriptDefault == null) throw compiler.error("Ticks before " + start + " are missing and there is no default value");
+                append(start - this.length, compiler.scriptDefault, compiler);
+            }
+            append(count, value, compiler);
+        }
+
+        void appendAll(Runs runs, ScriptCompiler<?> compiler) {
+            grow(runs.length, compiler);
+            for(int run = 0; run < runs.runs; run++) add(runs.values[run], runs.lengths[run]);
+        }
+
+        void repeat(Runs body, long count, ScriptCompiler<?> compiler) {
+            if(body.runs == 0 || count == 0) return;
+            grow(body.length * count, compiler);
+            if(body.runs == 1) {
+                add(body.values[0], (int) (body.length * count));
+                return;
+            }
+            for(long i = 0; i < count; i++) appendAll(body, compiler);
+        }
+
+        // hands the runs over as the run storage of a new sequence, turning the lengths into run ends in place,
+        // so the runs can't be used afterwards
+        <T extends SafeValue> RleSequence<T> toSequence(String name, T defaultValue) {
+            int[] ends = this.lengths;
+            for(int run = 1; run < this.runs; run++) ends[run] += ends[run - 1];
+            return new RleSequence<>(name, defaultValue, new RleTerms<>(this.values, ends, this.runs));
+        }
+    }
+
+    // open addressing table from UTF-8 names to values, looked up by a slice of a byte array
+    private static final class NameTable<V> {
+
+        private byte[][] keys = new byte[16][];
+        private Object[] values = new Object[16];
+        private int count;
+
+        private static int hash(byte[] bytes, int length) {
+            int hash = 0x811C9DC5;
+            for(int i = 0; i < length; i++) hash = (hash ^ bytes[i]) * 0x01000193;
+            return hash ^ (hash >>> 16);
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(byte[] bytes, int length) {
+            int mask = this.keys.length - 1;
+            for(int slot = hash(bytes, length) & mask; this.keys[slot] != null; slot = (slot + 1) & mask) {
+                if(Arrays.equals(this.keys[slot], 0, this.keys[slot].length, bytes, 0, length)) return (V) this.values[slot];
+            }
+            return null;
+        }
+
+        void put(byte[] key, V value) {
+            if((this.count + 1) * 2 > this.keys.length) {
+                byte[][] keys = this.keys;
+                Object[] values = this.values;
+                this.keys = new byte[keys.length * 2][];
+                this.values = new Object[keys.length * 2];
+                this.count = 0;
+                for(int i = 0; i < keys.length; i++) {
+                    if(keys[i] != null) insert(keys[i], values[i]);
+                }
+            }
+            insert(key, value);
+        }
+
+        private void insert(byte[] key, Object value) {
+            int mask = this.keys.length - 1;
+            int slot = hash(key, key.length) & mask;
+            while(this.keys[slot] != null && !Arrays.equals(this.keys[slot], key)) slot = (slot + 1) & mask;
+            if(this.keys[slot] == null) this.count++;
+            this.keys[slot] = key;
+            this.values[slot] = value;
+        }
+
+        void clear() {
+            if(this.count == 0) return;
+            Arrays.fill(this.keys, null);
+            Arrays.fill(this.values, null);
+            this.count = 0;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// a directory of scripts shared by every client on a host, opened by name as memory mapped sequences
+//
+// the directory holds SequenceFiles and catalog.properties, which maps script names to file names.
+// publish() writes a script under a file name made from its name, its content hash, its type and its default value
+// and never rewrites a file, so clients that mapped an older version keep reading it while new opens get the new one.
+// publishing the same script twice reuses the existing file once its header and terms are checked against the script.
+// the catalog is replaced atomically under a file lock, so clients in other JVMs can publish at the same time,
+// and it is reread whenever its modification time, size or file key changed on disk.
+// open() maps a file once per JVM and hands out sequences sharing that mapping.
+public final class ScriptStore {
+
+    public static final String CATALOG = "catalog.properties";
+    private static final String LOCK = "catalog.lock";
+    private static final String EXTENSION = ".tseq";
+
+    private final File directory;
+    private final File catalogFile;
+    private final ConcurrentHashMap<String, MappedSequence<?>> mapped = new ConcurrentHashMap<>();
+    private Properties catalog = new Properties();
+    // the catalog file as it was when last read, null before the first read
+    private Stamp catalogStamp;
+
+    private ScriptStore(File directory) {
+        this.directory = directory;
+        this.catalogFile = new File(directory, CATALOG);
+    }
+
+    // the store in directory, which is created if it doesn't exist, returns null if it can't be created
+    public static ScriptStore open(File directory) {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            logger.error("ScriptStore::open can't create {}", directory.getAbsolutePath());
+            return null;
+        }
+        return new ScriptStore(directory);
+    }
+
+    public File directory() {
+        return this.directory;
+    }
+
+    // the names of the published scripts
+    public synchronized Set<String> names() {
+        reloadCatalog();
+        return new TreeSet<>(this.catalog.stringPropertyNames());
+    }
+
+    // the script published as name, mapped from its file, or null if there is none or it can't be read
+    @SuppressWarnings("unchecked")
+    public <T extends SafeValue> MappedSequence<T> open(String name) {
+        String filename;
+        synchronized(this) {
+            reloadCatalog();
+            filename = this.catalog.getProperty(name);
+        }
+        if(filename == null) {
+            logger.error("ScriptStore::open no script named {} in {}", name, this.directory.getAbsolutePath());
+            return null;
+        }
+        MappedSequence<?> sequence = this.mapped.computeIfAbsent(filename, key -> MappedSequence.open(new File(this.directory, key).getPath()));
+        if(sequence == null) return null;
+        return ((MappedSequence<T>) sequence).share().setName(name);
+    }
+
+    // writes the terms of sequence to the store and publishes them as name, returns the script file or null on exception
+    // only sequences of enum values can be published
+    // the sequence is locked until its file is written, so the file holds the terms its name was made from
+    public <T extends SafeValue> File publish(String name, AbstractSequence<T> sequence) {
+        if(SequenceStorage.of(sequence.defaultValue()) != SequenceStorage.ORDINAL) {
+            logger.error("ScriptStore::publish only sequences of enum values can be published, sequence {}", name);
+            return null;
+        }
+        File file;
+        try {
+            synchronized(sequence) {
+                long key = key(sequence);
+                // a file of that name holding other terms, from a hash collision or a damaged store, moves on to the next name
+                int attempt = 0;
+                file = new File(this.directory, fileName(name, key, attempt));
+                while(file.exists() && !holds(file, sequence)) file = new File(this.directory, fileName(name, key, ++attempt));
+                if(!file.exists()) {
+                    File temporary = File.createTempFile("publish", EXTENSION + ".tmp", this.directory);
+                    if(SequenceFile.write(sequence, temporary.getPath()) == null) {
+                        Files.deleteIfExists(temporary.toPath());
+                        return null;
+                    }
+                    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            updateCatalog(name, file.getName());
+        } catch (IOException e) {
+            logger.error("ScriptStore::publish {} in {}", name, this.directory.getAbsolutePath(), e);
+            return null;
+        }
+        return file;
+    }
+
+    // removes name from the catalog, its file is left for clients still playing it
+    public boolean unpublish(String name) {
+        try {
+            updateCatalog(name, null);
+            return true;
+        } catch (IOException e) {
+            logger.error("ScriptStore::unpublish {} in {}", name, this.directory.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    // the content hash mixed with the header fields a reader sees besides the name: sequence type, value class and default
+    // callers hold the sequence lock and checked that the default is an enum value
+    private static long key(AbstractSequence<?> sequence) {
+        Enum<?> defaultValue = (Enum<?>) sequence.defaultValue();
+        long key = sequence.contentHash();
+        key = key * 31 + sequence.sequenceType().hashCode();
+        key = key * 31 + defaultValue.getDeclaringClass().getName().hashCode();
+        return key * 31 + defaultValue.ordinal();
+    }
+
+    // true if file holds a script of the same type, default value and terms as sequence
+    private static <T extends SafeValue> boolean holds(File file, AbstractSequence<T> sequence) {
+        Sequence<T> stored = SequenceFile.read(file.getPath());
+        return stored instanceof AbstractSequence<T> terms && stored.getClass() == sequence.getClass()
+                && Objects.equals(stored.defaultValue(), sequence.defaultValue()) && sequence.termsEqual(terms);
+    }
+
+    // script names can hold anything, file names only keep letters, digits, '-' and '_'
+    private static String fileName(String name, long key, int attempt) {
+        StringBuilder builder = new StringBuilder(name.length() + 28 + EXTENSION.length());
+        for(int i = 0; i < name.length() && builder.length() < 64; i++) {
+            char c = name.charAt(i);
+            builder.append(Character.isLetterOrDigit(c) || c == '-' || c == '_' ? c : '_');
+        }
+        builder.append('.').append(String.format("%016x", key));
+        if(attempt > 0) builder.append('-').append(attempt);
+        return builder.append(EXTENSION).toString();
+    }
+
+    // sets or removes name in the catalog, holding the lock shared with other JVMs while the catalog is read and replaced
+    private void updateCatalog(String name, String filename) throws IOException {
+        try (FileChannel lockChannel = FileChannel.open(new File(this.directory, LOCK).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = lockChannel.lock();
+            try {
+                synchronized(this) {
+                    Properties catalog = readCatalog();
+                    if(filename == null) catalog.remove(name);
+                    else catalog.setProperty(name, filename);
+                    Path temporary = Files.createTempFile(this.directory.toPath(), "catalog", ".tmp");
+                    try (Writer writer = Files.newBufferedWriter(temporary)) {
+                        catalog.store(writer, "Tessa scripts, name=file");
+                    }
+                    Files.move(temporary, this.catalogFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    this.catalog = catalog;
+                    this.catalogStamp = stamp();
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // rereads the catalog if it changed on disk since it was last read
+    // the file key catches a catalog replaced within the resolution of the modification time, the size where there is no file key
+    private void reloadCatalog() {
+        Stamp stamp = stamp();
+        if(stamp.equals(this.catalogStamp)) return;
+        try {
+            this.catalog = readCatalog();
+            this.catalogStamp = stamp;
+        } catch (IOException e) {
+            logger.error("ScriptStore::reloadCatalog {}", this.catalogFile.getAbsolutePath(), e);
+        }
+    }
+
+    // the catalog file as it is on disk now, all zero if there is none
+    private Stamp stamp() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(this.catalogFile.toPath(), BasicFileAttributes.class);
+            return new Stamp(attributes.lastModifiedTime().toMillis(), attributes.size(), attributes.fileKey());
+        } catch (IOException e) {
+            return new Stamp(0, 0, null);
+        }
+    }
+
+    private Properties readCatalog() throws IOException {
+        Properties catalog = new Properties();
+        if(!this.catalogFile.exists()) return catalog;
+        try (Reader reader = Files.newBufferedReader(this.catalogFile.toPath())) {
+            catalog.load(reader);
+        }
+        return catalog;
+    }
+
+    private record Stamp(long modified, long size, Object fileKey) {}
+}
@@ -0,0 +1,587 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// chunked and compressed archive of a sequence of enum values, for long recordings that need random access
+//
+// layout, big endian:
+//   SequenceFile header with the ARCHIVE encoding and -1 terms, the count is only known once the last chunk is written
+//   chunks of chunkTicks ticks each, the last one may be shorter, every chunk on its own:
+//     varint run count, then per run the varint run length and the zigzag varint change of the ordinal from the previous run
+//     deflated when the writer asks for it and that makes the chunk smaller
+//   index, one entry per chunk:
+//     long offset, int first tick, int stored bytes, int encoded bytes, int CRC32 of the stored bytes, byte PLAIN or DEFLATED
+//   trailer:
+//     long index offset, int chunk count, int number of terms, int ticks per chunk, int magic 'TARC'
+//
+// Writer streams: appended terms are run length encoded into the current chunk, which is written out as soon as it is full,
+// so memory stays at one chunk plus one index entry per written chunk however long the recording runs.
+// open() reads only the header and the index. at(), subsequence() and the views decode just the chunks holding the ticks
+// they read, and the last CACHED_CHUNKS decoded chunks are kept as runs, so a sequential read decodes every chunk once.
+// a corrupt chunk fails the reads that touch it and leaves the rest of the archive readable: at() and the views throw
+// UncheckedIOException rather than make up terms, subsequence() and materialize() return null.
+public final class SequenceArchive<T extends SafeValue> extends ReadOnlySequence<T> implements AutoCloseable {
+
+    public static final int TRAILER_MAGIC = 0x54415243;
+    public static final int DEFAULT_CHUNK_TICKS = 1 << 12;
+    static final byte PLAIN = 0;
+    static final byte DEFLATED = 1;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + 4 * Integer.BYTES + 1;
+    private static final int TRAILER_BYTES = Long.BYTES + 4 * Integer.BYTES;
+    // the header strings are at most 0xFFFF bytes each
+    private static final int MAX_HEADER_BYTES = 4 + 2 + 3 * (2 + 0xFFFF) + 4 + 4 + 1 + 1;
+    private static final int CACHED_CHUNKS = 8;
+
+    private final Chunks<T> chunks;
+
+    private SequenceArchive(Chunks<T> chunks, String sequenceType, String name, T defaultValue) {
+        super(chunks, sequenceType, name, defaultValue);
+        this.chunks = chunks;
+    }
+
+    // opens the archive filename for reading, returns null if the file can't be read or was not finished
+    @SuppressWarnings("unchecked")
+    public static <T extends SafeValue> SequenceArchive<T> open(String filename) {
+        File file = new File(filename);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long size = channel.size();
+            SequenceFile.Header header = SequenceFile.Header.read(read(channel, 0, (int) Math.min(size, MAX_HEADER_BYTES)));
+            if(header.encoding() != SequenceFile.ARCHIVE) throw new IllegalArgumentException("Not a sequence archive");
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long indexOffset = trailer.getLong();
+            int count = trailer.getInt();
+            int terms = trailer.getInt();
+            int chunkTicks = trailer.getInt();
+            if(trailer.getInt() != TRAILER_MAGIC) throw new IllegalArgumentException("Sequence archive without an index, the writer was not finished");
+            if(count < 0 || terms < 0 || chunkTicks <= 0 || (long) count * chunkTicks < terms || (long) (count - 1) * chunkTicks >= Math.max(terms, 1)) {
+                throw new IllegalArgumentException("Inconsistent sequence archive trailer");
+            }
+            if(indexOffset < 0 || indexOffset + (long) count * INDEX_ENTRY_BYTES > size - TRAILER_BYTES) throw new IllegalArgumentException("Sequence archive index outside the file");
+            ByteBuffer index = read(channel, indexOffset, Math.multiplyExact(count, INDEX_ENTRY_BYTES));
+            T[] domain = (T[]) header.domain();
+            T defaultValue = header.defaultOrdinal() < 0 ? null : domain[header.defaultOrdinal()];
+            Chunks<T> chunks = new Chunks<>(file, channel, domain, terms, chunkTicks, count, index);
+            return new SequenceArchive<>(chunks, header.type(), header.name(), defaultValue);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ArithmeticException | ReflectiveOperationException e) {
+            logger.error("SequenceArchive::open {}", file.getAbsolutePath(), e);
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    // starts a new archive filename for terms of the enum of defaultValue, returns null if it can't be created
+    public static <T extends SafeValue> Writer<T> writer(String filename, String sequenceType, String name, T defaultValue, int chunkTicks, boolean deflate) {
+        File file = new File(filename);
+        if(SequenceStorage.of(defaultValue) != SequenceStorage.ORDINAL) {
+            logger.error("SequenceArchive::writer only sequences of enum values can be archived, sequence {}", name);
+            return null;
+        }
+        if(chunkTicks <= 0) throw new IllegalArgumentException("Invalid chunk length " + chunkTicks);
+        Enum<?> value = (Enum<?>) defaultValue;
+        SequenceFile.Header header = new SequenceFile.Header(sequenceType, value.getDeclaringClass().getName(), String.valueOf(name),
+                value.ordinal(), -1, SequenceFile.ARCHIVE, SequenceFile.width(value));
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer buffer = header.write(0);
+            buffer.flip();
+            long position = 0;
+            while(buffer.hasRemaining()) position += channel.write(buffer);
+            return new Writer<>(file, channel, position, value.ordinal(), chunkTicks, deflate);
+        } catch (IOException e) {
+            logger.error("SequenceArchive::writer {}", file.getAbsolutePath(), e);
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    // archives the terms of sequence, named and typed after it, returns null on exception or if the terms are not enum values
+    public static <T extends SafeValue> File write(Sequence<T> sequence, String filename, int chunkTicks, boolean deflate) {
+        Writer<T> writer = writer(filename, SequenceView.typeOf(sequence), sequence.name(), sequence.defaultValue(), chunkTicks, deflate);
+        return writer == null ? null : writer.append(sequence).finish();
+    }
+
+    public static <T extends SafeValue> File write(Sequence<T> sequence, String filename) {
+        return write(sequence, filename, DEFAULT_CHUNK_TICKS, true);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if(position < 0 || length < 0) throw new IOException("Truncated sequence archive");
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) throw new IOException("Truncated sequence archive");
+        }
+        return buffer.flip();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if(channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public File file() {
+        return this.chunks.file;
+    }
+
+    public int chunkTicks() {
+        return this.chunks.chunkTicks;
+    }
+
+    public int chunkCount() {
+        return this.chunks.count;
+    }
+
+    // number of chunks decoded so far, reads served from the decoded chunks don't count
+    public long decodedChunks() {
+        return this.chunks.decodes();
+    }
+
+    // null when a chunk holding one of the ticks can't be read, the error is logged
+    @Override
+    public <R extends Sequence<T>> R subsequence(int startingTick, int until) {
+        try {
+            return super.subsequence(startingTick, until);
+        } catch (UncheckedIOException e) {
+            logger.error("SequenceArchive::subsequence {} [{}, {})", this.chunks.file.getAbsolutePath(), startingTick, until, e);
+            return null;
+        }
+    }
+
+    @Override
+    public <R extends Sequence<T>> R materialize(String name) {
+        try {
+            return super.materialize(name);
+        } catch (UncheckedIOException e) {
+            logger.error("SequenceArchive::materialize {}", this.chunks.file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(this.chunks.channel);
+    }
+
+    static int zigzag(int value) {
+        return value << 1 ^ value >> 31;
+    }
+
+    static int unzigzag(int value) {
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    // writes value as an unsigned LEB128 varint at position, returns the position after it
+    static int putVarint(byte[] bytes, int position, int value) {
+        while((value & ~0x7F) != 0) {
+            bytes[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[position++] = (byte) value;
+        return position;
+    }
+
+    // appends terms chunk by chunk to a new archive, must be finished to write the index that makes the archive readable
+    // not thread safe, a writer is fed by one thread at a time
+    public static final class Writer<T extends SafeValue> implements AutoCloseable {
+
+        private final File file;
+        private final FileChannel channel;
+        private final int defaultOrdinal;
+        private final int chunkTicks;
+        private final Deflater deflater;
+        private final CRC32 crc = new CRC32();
+        // runs of the chunk being filled
+        private final int[] runLengths;
+        private final int[] runOrdinals;
+        private int runs;
+        private int chunkSize;
+        // a run count and at most two 5 byte varints per run
+        private final byte[] encoded;
+        private final byte[] compressed;
+        private ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY_BYTES);
+        private int chunks;
+        private int terms;
+        private long position;
+        private boolean closed;
+        // appends to a closed archive are only logged once
+        private boolean lossLogged;
+
+        private Writer(File file, FileChannel channel, long position, int defaultOrdinal, int chunkTicks, boolean deflate) {
+            this.file = file;
+            this.channel = channel;
+            this.position = position;
+            this.defaultOrdinal = defaultOrdinal;
+            this.chunkTicks = chunkTicks;
+            this.deflater = deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+            this.runLengths = new int[chunkTicks];
+            this.runOrdinals = new int[chunkTicks];
+            this.encoded = new byte[5 + 10 * chunkTicks];
+            this.compressed = deflate ? new byte[this.encoded.length] : null;
+        }
+
+        public File file() {
+            return this.file;
+        }
+
+        // number of terms appended so far
+        public int terms() {
+            return this.terms + this.chunkSize;
+        }
+
+        public Writer<T> append(T value) {
+            return appendRun(value == null ? this.defaultOrdinal : ((Enum<?>) value).ordinal(), 1);
+        }
+
+        // appends count copies of value
+        public Writer<T> append(T value, int count) {
+            return appendRun(value == null ? this.defaultOrdinal : ((Enum<?>) value).ordinal(), count);
+        }
+
+        public Writer<T> append(Sequence<T> sequence) {
+            return append(sequence, 0, sequence.tick() + 1);
+        }
+
+        // appends terms [from, until) of sequence run by run
+        public Writer<T> append(Sequence<T> sequence, int from, int until) {
+            Terms<T> source = ViewTerms.of(sequence);
+            until = Math.min(until, source.size());
+            for(int i = Math.max(from, 0); i < until && !this.closed; ) {
+                int end = Math.min(source.runEnd(i), until);
+                append(source.get(i), end - i);
+                i = end;
+            }
+            return this;
+        }
+
+        private Writer<T> appendRun(int ordinal, int count) {
+            if(this.closed) {
+                if(!this.lossLogged) logger.error("SequenceArchive.Writer::append archive {} is closed, terms are being lost", this.file.getAbsolutePath());
+                this.lossLogged = true;
+                return this;
+            }
+            if(count <= 0) return this;
+            if((long) terms() + count > Integer.MAX_VALUE) {
+                logger.error("SequenceArchive.Writer::append archive {} is full at Integer.MAX_VALUE ticks", this.file.getAbsolutePath());
+                return this;
+            }
+            while(count > 0) {
+                int taken = Math.min(count, this.chunkTicks - this.chunkSize);
+                if(this.runs > 0 && this.runOrdinals[this.runs - 1] == ordinal) {
+                    this.runLengths[this.runs - 1] += taken;
+                } else {
+                    this.runOrdinals[this.runs] = ordinal;
+                    this.runLengths[this.runs++] = taken;
+                }
+                this.chunkSize += taken;
+                count -= taken;
+                if(this.chunkSize == this.chunkTicks && !writeChunk()) return this;
+            }
+            return this;
+        }
+
+        // encodes, compresses and writes the chunk being filled, returns false if the archive failed and was closed
+        private boolean writeChunk() {
+            int length = putVarint(this.encoded, 0, this.runs);
+            int previous = 0;
+            for(int run = 0; run < this.runs; run++) {
+                length = putVarint(this.encoded, length, this.runLengths[run]);
+                length = putVarint(this.encoded, length, zigzag(this.runOrdinals[run] - previous));
+                previous = this.runOrdinals[run];
+            }
+            byte[] stored = this.encoded;
+            int storedLength = length;
+            byte encoding = PLAIN;
+            if(this.deflater != null) {
+                this.deflater.reset();
+                this.deflater.setInput(this.encoded, 0, length);
+                this.deflater.finish();
+                int deflated = this.deflater.deflate(this.compressed, 0, this.compressed.length);
+                if(this.deflater.finished() && deflated < length) {
+                    stored = this.compressed;
+                    storedLength = deflated;
+                    encoding = DEFLATED;
+                }
+            }
+            this.crc.reset();
+            this.crc.update(stored, 0, storedLength);
+            long offset = this.position;
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(stored, 0, storedLength);
+                while(buffer.hasRemaining()) this.position += this.channel.write(buffer);
+            } catch (IOException e) {
+                fail(e);
+                return false;
+            }
+            if(this.index.remaining() < INDEX_ENTRY_BYTES) {
+                ByteBuffer grown = ByteBuffer.allocate(this.index.capacity() << 1);
+                this.index = grown.put(this.index.flip());
+            }
+            this.index.putLong(offset).putInt(this.terms).putInt(storedLength).putInt(length).putInt((int) this.crc.getValue()).put(encoding);
+            this.chunks++;
+            this.terms += this.chunkSize;
+            this.chunkSize = 0;
+            this.runs = 0;
+            return true;
+        }
+
+        private void fail(IOException e) {
+            logger.error("SequenceArchive.Writer {}", this.file.getAbsolutePath(), e);
+            this.closed = true;
+            closeQuietly(this.channel);
+            if(this.deflater != null) this.deflater.end();
+        }
+
+        // writes the last chunk, the index and the trailer and closes the file
+        // returns the archive file, or null if it could not be written
+        public File finish() {
+            if(this.closed) return null;
+            if(this.chunkSize > 0 && !writeChunk()) return null;
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            trailer.putLong(this.position).putInt(this.chunks).putInt(this.terms).putInt(this.chunkTicks).putInt(TRAILER_MAGIC).flip();
+            try {
+                this.index.flip();
+                while(this.index.hasRemaining()) this.channel.write(this.index);
+                while(trailer.hasRemaining()) this.channel.write(trailer);
+                this.channel.force(false);
+            } catch (IOException e) {
+                fail(e);
+                return null;
+            }
+            this.closed = true;
+            closeQuietly(this.channel);
+            if(this.deflater != null) this.deflater.end();
+            return this.file;
+        }
+
+        @Override
+        public void close() {
+            finish();
+        }
+    }
+
+    // the terms of an open archive, decoded a chunk at a time
+    // reads are serialized on this, the decoded chunks and the read buffers are shared
+    private static final class Chunks<T> extends ViewTerms<T> {
+
+        private final File file;
+        private final FileChannel channel;
+        private final T[] domain;
+        private final int size;
+        private final int chunkTicks;
+        private final int count;
+        private final long[] offsets;
+        private final int[] storedLengths;
+        private final int[] encodedLengths;
+        private final int[] crcs;
+        private final byte[] encodings;
+        // why a chunk could not be read, so it is neither read nor logged again
+        private final IOException[] failures;
+        private final Decoded<T>[] cache;
+        private final CRC32 crc = new CRC32();
+        private final Inflater inflater = new Inflater();
+        private byte[] stored = new byte[0];
+        private byte[] encoded = new byte[0];
+        // the chunk read last, sequential reads find it without a lookup
+        private Decoded<T> current;
+        private long uses;
+        private long decodes;
+
+        Chunks(File file, FileChannel channel, T[] domain, int size, int chunkTicks, int count, ByteBuffer index) {
+            this.file = file;
+            this.channel = channel;
+            this.domain = domain;
+            this.size = size;
+            this.chunkTicks = chunkTicks;
+            this.count = count;
+            this.offsets = new long[count];
+            this.storedLengths = new int[count];
+            this.encodedLengths = new int[count];
+            this.crcs = new int[count];
+            this.encodings = new byte[count];
+            for(int chunk = 0; chunk < count; chunk++) {
+                this.offsets[chunk] = index.getLong();
+                if(index.getInt() != chunk * chunkTicks) throw new IllegalArgumentException("Sequence archive chunk " + chunk + " starts at the wrong tick");
+                this.storedLengths[chunk] = index.getInt();
+                this.encodedLengths[chunk] = index.getInt();
+                this.crcs[chunk] = index.getInt();
+                this.encodings[chunk] = index.get();
+                if(this.storedLengths[chunk] < 0 || this.encodedLengths[chunk] < 0) throw new IllegalArgumentException("Negative sequence archive chunk length");
+            }
+            this.failures = new IOException[count];
+            // java can't create a Decoded<T>[], the raw array only ever holds chunks of this archive
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Decoded<T>[] cache = new Decoded[CACHED_CHUNKS];
+            this.cache = cache;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public synchronized T get(int index) {
+            Decoded<T> chunk = chunkOf(index);
+            return chunk.values[chunk.runOf(index)];
+        }
+
+        // runs end at chunk boundaries at the latest
+        public synchronized int runEnd(int index) {
+            Decoded<T> chunk = chunkOf(index);
+            return chunk.ends[chunk.runOf(index)];
+        }
+
+        synchronized long decodes() {
+            return this.decodes;
+        }
+
+        private Decoded<T> chunkOf(int tick) {
+            Decoded<T> current = this.current;
+            if(current != null && tick >= current.first && tick < current.end) return current;
+            int chunk = tick / this.chunkTicks;
+            // slots fill up in order, the least recently used chunk is replaced once they are all taken
+            int victim = 0;
+            for(int slot = 0; slot < this.cache.length; slot++) {
+                Decoded<T> decoded = this.cache[slot];
+                if(decoded == null) {
+                    victim = slot;
+                    break;
+                }
+                if(decoded.chunk == chunk) return use(decoded);
+                if(decoded.used < this.cache[victim].used) victim = slot;
+            }
+            Decoded<T> decoded = decode(chunk);
+            this.cache[victim] = decoded;
+            return use(decoded);
+        }
+
+        private Decoded<T> use(Decoded<T> decoded) {
+            decoded.used = ++this.uses;
+            this.current = decoded;
+            return decoded;
+        }
+
+        // reads, checks, inflates and parses chunk into runs
+        private Decoded<T> decode(int chunk) {
+            if(this.failures[chunk] != null) throw new UncheckedIOException(this.failures[chunk]);
+            int storedLength = this.storedLengths[chunk];
+            int encodedLength = this.encodedLengths[chunk];
+            if(this.stored.length < storedLength) this.stored = new byte[storedLength];
+            if(this.encoded.length < encodedLength) this.encoded = new byte[encodedLength];
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(this.stored, 0, storedLength);
+                while(buffer.hasRemaining()) {
+                    if(this.channel.read(buffer, this.offsets[chunk] + buffer.position()) < 0) throw new IOException("Truncated sequence archive chunk " + chunk);
+                }
+                this.crc.reset();
+                this.crc.update(this.stored, 0, storedLength);
+                if((int) this.crc.getValue() != this.crcs[chunk]) throw new IOException("Corrupt sequence archive chunk " + chunk);
+                byte[] bytes = this.stored;
+                if(this.encodings[chunk] == DEFLATED) {
+                    this.inflater.reset();
+                    this.inflater.setInput(this.stored, 0, storedLength);
+                    if(this.inflater.inflate(this.encoded, 0, encodedLength) != encodedLength || !this.inflater.finished()) {
+                        throw new IOException("Corrupt sequence archive chunk " + chunk);
+                    }
+                    bytes = this.encoded;
+                }
+                this.decodes++;
+                return parse(chunk, bytes, encodedLength);
+            } catch (IOException | DataFormatException | IndexOutOfBoundsException e) {
+                IOException failure = e instanceof IOException io ? io : new IOException("Corrupt sequence archive chunk " + chunk, e);
+                logger.error("SequenceArchive {} ticks [{}, {}) can't be read", this.file.getAbsolutePath(), chunk * this.chunkTicks,
+                        Math.min(this.size, (long) (chunk + 1) * this.chunkTicks), failure);
+                this.failures[chunk] = failure;
+                throw new UncheckedIOException(failure);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Decoded<T> parse(int chunk, byte[] bytes, int length) throws IOException {
+            int first = chunk * this.chunkTicks;
+            int end = (int) Math.min((long) first + this.chunkTicks, this.size);
+            int[] position = {0};
+            int runs = getVarint(bytes, position, length);
+            if(runs <= 0 || runs > end - first) throw new IOException("Corrupt sequence archive chunk " + chunk);
+            int[] ends = new int[runs];
+            Object[] values = new Object[runs];
+            int tick = first;
+            int ordinal = 0;
+            // the CRC only proves the bytes are the ones written, every run is checked before it is used
+            for(int run = 0; run < runs; run++) {
+                int ticks = getVarint(bytes, position, length);
+                if(ticks <= 0 || ticks > end - tick) throw new IOException("Sequence archive chunk " + chunk + " run of " + ticks + " ticks out of range");
+                tick += ticks;
+                ordinal += unzigzag(getVarint(bytes, position, length));
+                if(ordinal < 0 || ordinal >= this.domain.length) throw new IOException("Sequence archive chunk " + chunk + " ordinal " + ordinal + " outside the enum");
+                ends[run] = tick;
+                values[run] = this.domain[ordinal];
+            }
+            if(tick != end) throw new IOException("Sequence archive chunk " + chunk + " holds the wrong number of ticks");
+            return new Decoded<>(chunk, first, end, ends, (T[]) values);
+        }
+
+        private static int getVarint(byte[] bytes, int[] position, int length) throws IOException {
+            int value = 0;
+            for(int shift = 0; shift < 35; shift += 7) {
+                if(position[0] >= length) throw new IOException("Truncated varint");
+                byte b = bytes[position[0]++];
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) return value;
+            }
+            throw new IOException("Malformed varint");
+        }
+    }
+
+    // the runs of a decoded chunk
+    private static final class Decoded<T> {
+
+        private final int chunk;
+        private final int first;
+        private final int end;
+        // cumulative exclusive end tick of every run
+        private final int[] ends;
+        private final T[] values;
+        private long used;
+        private int cursor;
+
+        Decoded(int chunk, int first, int end, int[] ends, T[] values) {
+            this.chunk = chunk;
+            this.first = first;
+            this.end = end;
+            this.ends = ends;
+            this.values = values;
+        }
+
+        // run holding tick, tick must be in [first, end)
+        int runOf(int tick) {
+            int run = this.cursor;
+            if(tick < this.ends[run] && (run == 0 ? tick >= this.first : tick >= this.ends[run - 1])) return run;
+            if(run + 1 < this.ends.length && tick >= this.ends[run] && tick < this.ends[run + 1]) return this.cursor = run + 1;
+            int lo = 0;
+            int hi = this.ends.length - 1;
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(this.ends[mid] > tick) hi = mid;
+                else lo = mid + 1;
+            }
+            return this.cursor = lo;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.util.*;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// the differences between a source and a target sequence, e.g. the intended script and a recorded run
+//
+// the ticks of both sequences are diffed with Myers' O(ND) algorithm, using the linear space middle snake
+// divide and conquer. both sequences are cut into runs of equal terms first and a snake follows a diagonal
+// run by run, so long constant stretches cost one comparison and a run that only got longer or shorter is
+// an insert or delete of the difference. edits are counted in ticks, the script is minimal in ticks removed
+// plus ticks inserted. when a hunk costs more than costLimit edits the search gives up on a minimal script
+// and cuts it at the furthest point reached, like diff does for very different files, and once the search
+// has done WORK_PER_RUN steps per run of both sequences every remaining range becomes a single hunk.
+// the script is still exact, just not minimal, and the running time stays O(N + M) for sequences that have
+// nothing in common. a costLimit above half the ticks of both sequences never binds and the budget is then
+// lifted, so such a diff, e.g. with Integer.MAX_VALUE, is always minimal.
+//
+// edits reference views of both sequences instead of copies, apply() assembles the patched terms as a view.
+public final class SequenceDiff<T extends SafeValue> {
+
+    public static final int DEFAULT_COST_LIMIT = 256;
+    public static final int WORK_PER_RUN = 64;
+
+    public enum Kind { INSERT, DELETE, REPLACE }
+
+    // source terms [sourceTick, sourceTick + sourceLength) become target terms [targetTick, targetTick + targetLength)
+    // removed and inserted are views of the terms involved, empty for inserts and deletes respectively
+    public record Edit<T extends SafeValue>(Kind kind, int sourceTick, int sourceLength, int targetTick, int targetLength, Sequence<T> removed, Sequence<T> inserted) {
+
+        @Override
+        public String toString() {
+            return this.kind + " source [" + this.sourceTick + ", " + (this.sourceTick + this.sourceLength) + ") target [" + this.targetTick + ", " + (this.targetTick + this.targetLength) + ")";
+        }
+    }
+
+    private final SequenceView<T> source;
+    private final SequenceView<T> target;
+    private final List<Edit<T>> edits;
+
+    private SequenceDiff(SequenceView<T> source, SequenceView<T> target, List<Edit<T>> edits) {
+        this.source = source;
+        this.target = target;
+        this.edits = edits;
+    }
+
+    public static <T extends SafeValue> SequenceDiff<T> of(Sequence<T> source, Sequence<T> target) {
+        return of(source, target, DEFAULT_COST_LIMIT);
+    }
+
+    // diffs the terms of source and target as they are now
+    public static <T extends SafeValue> SequenceDiff<T> of(Sequence<T> source, Sequence<T> target, int costLimit) {
+        if(costLimit < 1) throw new IllegalArgumentException("Invalid cost limit " + costLimit);
+        SequenceView<T> sourceView = SequenceView.of(source);
+        SequenceView<T> targetView = SequenceView.of(target);
+        Map<Object, Integer> ids = new HashMap<>();
+        Runs sourceRuns = Runs.of(sourceView.terms(), ids);
+        Runs targetRuns = Runs.of(targetView.terms(), ids);
+        List<Edit<T>> edits = new ArrayList<>();
+        new Myers(sourceRuns, targetRuns, costLimit).diff((aFrom, aUntil, bFrom, bUntil) ->
+                addHunk(edits, sourceView, targetView, sourceRuns, targetRuns, aFrom, aUntil, bFrom, bUntil));
+        return new SequenceDiff<>(sourceView, targetView, Collections.unmodifiableList(edits));
+    }
+
+    // the first tick where the terms of a and b differ, the length of the shorter one if it is a prefix of the other,
+    // or -1 if both hold equal terms. the scan stops at the first difference
+    public static <T extends SafeValue> int firstDivergentTick(Sequence<T> a, Sequence<T> b) {
+        Terms<T> left = ViewTerms.of(a);
+        Terms<T> right = ViewTerms.of(b);
+        int common = Math.min(left.size(), right.size());
+        if(left instanceof OrdinalTerms<T> leftOrdinals && right instanceof OrdinalTerms<T> rightOrdinals
+                && leftOrdinals.domain() == rightOrdinals.domain() && leftOrdinals.width() == rightOrdinals.width()) {
+            int mismatch = leftOrdinals.mismatch(rightOrdinals, common);
+            if(mismatch >= 0) return mismatch;
+        } else {
+            // equal terms at i stay equal until the first of both runs ends
+            for(int i = 0; i < common; ) {
+                if(!Objects.equals(left.get(i), right.get(i))) return i;
+                i = Math.min(Math.min(left.runEnd(i), right.runEnd(i)), common);
+            }
+        }
+        return left.size() == right.size() ? -1 : common;
+    }
+
+    // trims the ticks both ranges share at their ends and records what is left
+    private static <T extends SafeValue> void addHunk(List<Edit<T>> edits, SequenceView<T> source, SequenceView<T> target, Runs sourceRuns, Runs targetRuns,
+                                                      int sourceFrom, int sourceUntil, int targetFrom, int targetUntil) {
+        int prefix = sourceRuns.commonPrefix(sourceFrom, sourceUntil, targetRuns, targetFrom, targetUntil);
+        sourceFrom += prefix;
+        targetFrom += prefix;
+        int suffix = sourceRuns.commonSuffix(sourceFrom, sourceUntil, targetRuns, targetFrom, targetUntil);
+        sourceUntil -= suffix;
+        targetUntil -= suffix;
+        if(sourceFrom == sourceUntil && targetFrom == targetUntil) return;
+        Kind kind = sourceFrom == sourceUntil ? Kind.INSERT : targetFrom == targetUntil ? Kind.DELETE : Kind.REPLACE;
+        edits.add(new Edit<>(kind, sourceFrom, sourceUntil - sourceFrom, targetFrom, targetUntil - targetFrom,
+                source.slice(sourceFrom, sourceUntil), target.slice(targetFrom, targetUntil)));
+    }
+
+    public List<Edit<T>> edits() {
+        return this.edits;
+    }
+
+    public boolean isEmpty() {
+        return this.edits.isEmpty();
+    }
+
+    // the number of source ticks removed plus target ticks inserted by the edits
+    public long cost() {
+        long cost = 0;
+        for(Edit<T> edit : this.edits) cost += edit.sourceLength() + edit.targetLength();
+        return cost;
+    }
+
+    public Sequence<T> source() {
+        return this.source;
+    }
+
+    public Sequence<T> target() {
+        return this.target;
+    }
+
+    // the terms of sequence with every edit applied, as a view sharing the terms of sequence and of the target
+    // sequence must hold the terms the edits remove at the same ticks, otherwise null is returned
+    public SequenceView<T> apply(Sequence<T> sequence) {
+        SequenceView<T> view = SequenceView.of(sequence);
+        if(view.tick() != this.source.tick()) {
+            logger.error("SequenceDiff::apply {} has {} terms, the diff expects {}", sequence.name(), view.tick() + 1, this.source.tick() + 1);
+            return null;
+        }
+        List<Sequence<T>> parts = new ArrayList<>(this.edits.size() * 2 + 1);
+        int kept = 0;
+        for(Edit<T> edit : this.edits) {
+            SequenceView<T> removed = view.slice(edit.sourceTick(), edit.sourceTick() + edit.sourceLength());
+            if(!removed.terms().contentEquals(((SequenceView<T>) edit.removed()).terms())) {
+                logger.error("SequenceDiff::apply {} doesn't match the diff source at {}", sequence.name(), edit);
+                return null;
+            }
+            parts.add(view.slice(kept, edit.sourceTick()));
+            parts.add(edit.inserted());
+            kept = edit.sourceTick() + edit.sourceLength();
+        }
+        parts.add(view.slice(kept, view.tick() + 1));
+        return SequenceView.concat(parts).setName(sequence.name());
+    }
+
+    // one edit per line
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for(Edit<T> edit : this.edits) builder.append(edit).append('\n');
+        return builder.toString();
+    }
+
+    // a sequence cut into runs of equal terms, each run is identified by the id of its value
+    private static final class Runs {
+
+        // starts[run] is the first tick of run, starts[runs] the number of ticks
+        final int[] starts;
+        final int[] ids;
+        final int runs;
+        // runs probed or stepped over by runOf, commonPrefix and commonSuffix, charged to the search budget
+        long steps;
+        // runs last found by commonPrefix and commonSuffix
+        private int prefixCursor;
+        private int suffixCursor;
+
+        private Runs(int[] starts, int[] ids, int runs) {
+            this.starts = starts;
+            this.ids = ids;
+            this.runs = runs;
+        }
+
+        static <T> Runs of(Terms<T> terms, Map<Object, Integer> ids) {
+            int[] starts = new int[16];
+            int[] values = new int[16];
+            int runs = 0;
+            for(int i = 0; i < terms.size(); runs++) {
+                if(runs + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length << 1);
+                    values = Arrays.copyOf(values, values.length << 1);
+                }
+                T value = terms.get(i);
+                Integer id = ids.get(value);
+                if(id == null) ids.put(value, id = ids.size());
+                starts[runs] = i;
+                values[runs] = id;
+                i = terms.runEnd(i);
+            }
+            starts[runs] = terms.size();
+            return new Runs(starts, values, runs);
+        }
+
+        int size() {
+            return this.starts[this.runs];
+        }
+
+        // run holding tick, tick must be in [0, number of ticks)
+        // gallops out from run and searches the bracket it lands in, so a tick d runs away costs O(log d) probes
+        int runOf(int tick, int run) {
+            int[] starts = this.starts;
+            int lo = run;
+            int hi = run + 1;
+            int step = 1;
+            while(tick >= starts[hi]) {
+                lo = hi;
+                hi = Math.min(this.runs, hi + step);
+                step <<= 1;
+                this.steps++;
+            }
+            while(tick < starts[lo]) {
+                hi = lo;
+                lo = Math.max(0, lo - step);
+                step <<= 1;
+                this.steps++;
+            }
+            // starts[lo] <= tick < starts[hi]
+            while(hi - lo > 1) {
+                int middle = (lo + hi) >>> 1;
+                if(tick < starts[middle]) hi = middle;
+                else lo = middle;
+                this.steps++;
+            }
+            return lo;
+        }
+
+        // number of leading ticks of [from, until) equal to the leading ticks of [otherFrom, otherUntil) of other
+        // one step per run boundary crossed in either sequence
+        int commonPrefix(int from, int until, Runs other, int otherFrom, int otherUntil) {
+            int max = Math.min(until - from, otherUntil - otherFrom);
+            if(max <= 0) return 0;
+            int run = this.prefixCursor = runOf(from, this.prefixCursor);
+            int otherRun = other.prefixCursor = other.runOf(otherFrom, other.prefixCursor);
+            int length = 0;
+            while(this.ids[run] == other.ids[otherRun]) {
+                this.steps++;
+                length = Math.min(max, Math.min(this.starts[run + 1] - from, other.starts[otherRun + 1] - otherFrom));
+                if(length == max) break;
+                if(this.starts[run + 1] == from + length) run++;
+                if(other.starts[otherRun + 1] == otherFrom + length) otherRun++;
+            }
+            return length;
+        }
+
+        // number of trailing ticks of [from, until) equal to the trailing ticks of [otherFrom, otherUntil) of other
+        int commonSuffix(int from, int until, Runs other, int otherFrom, int otherUntil) {
+            int max = Math.min(until - from, otherUntil - otherFrom);
+            if(max <= 0) return 0;
+            int run = this.suffixCursor = runOf(until - 1, this.suffixCursor);
+            int otherRun = other.suffixCursor = other.runOf(otherUntil - 1, other.suffixCursor);
+            int length = 0;
+            while(this.ids[run] == other.ids[otherRun]) {
+                this.steps++;
+                length = Math.min(max, Math.min(until - this.starts[run], otherUntil - other.starts[otherRun]));
+                if(length == max) break;
+                if(this.starts[run] == until - length) run--;
+                if(other.starts[otherRun] == otherUntil - length) otherRun--;
+            }
+            return length;
+        }
+    }
+
+    @FunctionalInterface
+    private interface HunkConsumer {
+        // ticks [aFrom, aUntil) of a differ from ticks [bFrom, bUntil) of b
+        void accept(int aFrom, int aUntil, int bFrom, int bUntil);
+    }
+
+    // Myers' diff of the ticks of two run sequences with the linear space middle snake, iterative so long inputs can't overflow the stack
+    private static final class Myers {
+
+        private final Runs a;
+        private final Runs b;
+        private final int costLimit;
+        private final int[] forward;
+        private final int[] backward;
+        // search steps left before the remaining ranges are given up on
+        private long budget;
+        // the split found by the last middleSnake call
+        private int splitX;
+        private int splitY;
+        // the hunk being built, -1 when there is none
+        private int hunkAFrom = -1;
+        private int hunkAUntil;
+        private int hunkBFrom;
+        private int hunkBUntil;
+
+        Myers(Runs a, Runs b, int costLimit) {
+            this.a = a;
+            this.b = b;
+            long unbounded = ((long) a.size() + b.size() + 1) / 2 + 1;
+            int maxCost = (int) Math.min(costLimit, unbounded);
+            this.costLimit = maxCost;
+            this.forward = new int[2 * maxCost + 3];
+            this.backward = new int[2 * maxCost + 3];
+            // a limit that never binds asks for a minimal script, whatever it costs
+            this.budget = costLimit >= unbounded ? Long.MAX_VALUE : WORK_PER_RUN * ((long) a.runs + b.runs) + 4L * maxCost * maxCost;
+        }
+
+        void diff(HunkConsumer hunks) {
+            // ranges still to compare, processed first to last so hunks are found in order
+            int[] stack = new int[64];
+            int top = 0;
+            stack[top++] = 0;
+            stack[top++] = this.a.size();
+            stack[top++] = 0;
+            stack[top++] = this.b.size();
+            while(top > 0) {
+                int bHi = stack[--top];
+                int bLo = stack[--top];
+                int aHi = stack[--top];
+                int aLo = stack[--top];
+                int prefix = this.a.commonPrefix(aLo, aHi, this.b, bLo, bHi);
+                aLo += prefix;
+                bLo += prefix;
+                int suffix = this.a.commonSuffix(aLo, aHi, this.b, bLo, bHi);
+                aHi -= suffix;
+                bHi -= suffix;
+                if(aLo == aHi || bLo == bHi) {
+                    if(aLo < aHi || bLo < bHi) hunk(aLo, aHi, bLo, bHi, hunks);
+                    continue;
+                }
+                if(!middleSnake(aLo, aHi, bLo, bHi)) {
+                    hunk(aLo, aHi, bLo, bHi, hunks);
+                    continue;
+                }
+                if(top + 8 > stack.length) stack = Arrays.copyOf(stack, stack.length << 1);
+                // the second half is pushed first so the first half is compared first
+                stack[top++] = this.splitX;
+                stack[top++] = aHi;
+                stack[top++] = this.splitY;
+                stack[top++] = bHi;
+                stack[top++] = aLo;
+                stack[top++] = this.splitX;
+                stack[top++] = bLo;
+                stack[top++] = this.splitY;
+            }
+            flush(hunks);
+        }
+
+        // joins adjacent differing ranges into one hunk
+        private void hunk(int aFrom, int aUntil, int bFrom, int bUntil, HunkConsumer hunks) {
+            if(this.hunkAFrom >= 0 && this.hunkAUntil == aFrom && this.hunkBUntil == bFrom) {
+                this.hunkAUntil = aUntil;
+                this.hunkBUntil = bUntil;
+                return;
+            }
+            flush(hunks);
+            this.hunkAFrom = aFrom;
+            this.hunkAUntil = aUntil;
+            this.hunkBFrom = bFrom;
+            this.hunkBUntil = bUntil;
+        }
+
+        private void flush(HunkConsumer hunks) {
+            if(this.hunkAFrom >= 0) hunks.accept(this.hunkAFrom, this.hunkAUntil, this.hunkBFrom, this.hunkBUntil);
+            this.hunkAFrom = -1;
+        }
+
+        // finds a point on an optimal path through [aLo, aHi) x [bLo, bHi) that splits it into two smaller problems,
+        // or past the cost limit the furthest point reached from the start. false if no point makes progress
+        private boolean middleSnake(int aLo, int aHi, int bLo, int bHi) {
+            if(this.budget < 0) return false;
+            int n = aHi - aLo;
+            int m = bHi - bLo;
+            int delta = n - m;
+            boolean odd = (delta & 1) != 0;
+            int offset = this.costLimit + 1;
+            int[] forward = this.forward;
+            int[] backward = this.backward;
+            // forward[offset + k] is the furthest x on diagonal k = x - y from the start,
+            // backward[offset + k] the furthest distance x from the end on diagonal k of the reversed problem
+            int maxCost = Math.min(this.costLimit, (n + m + 1) / 2);
+            // only the diagonals this search can reach are reset and looked at, small problems stay cheap
+            int lowest = offset - maxCost - 1;
+            int highest = offset + maxCost + 1;
+            Arrays.fill(forward, lowest, highest + 1, -1);
+            Arrays.fill(backward, lowest, highest + 1, -1);
+            this.budget -= maxCost;
+            forward[offset + 1] = 0;
+            backward[offset + 1] = 0;
+            int kForwardStart = 0;
+            int kForwardEnd = 0;
+            int kBackwardStart = 0;
+            int kBackwardEnd = 0;
+            for(int d = 0; d < maxCost; d++) {
+                // every diagonal visited and every run a snake steps over is charged to the budget
+                this.budget -= 2L * d + 2 + this.a.steps + this.b.steps;
+                this.a.steps = 0;
+                this.b.steps = 0;
+                for(int k = -d + kForwardStart; k <= d - kForwardEnd; k += 2) {
+                    int index = offset + k;
+                    int x = k == -d || (k != d && forward[index - 1] < forward[index + 1]) ? forward[index + 1] : forward[index - 1] + 1;
+                    int y = x - k;
+                    int snake = this.a.commonPrefix(aLo + x, aHi, this.b, bLo + y, bHi);
+                    x += snake;
+                    y += snake;
+                    forward[index] = x;
+                    if(x > n) {
+                        kForwardEnd += 2;
+                    } else if(y > m) {
+                        kForwardStart += 2;
+                    } else if(odd) {
+                        int backwardIndex = offset + delta - k;
+                        if(backwardIndex >= lowest && backwardIndex <= highest && backward[backwardIndex] != -1 && x >= n - backward[backwardIndex]) {
+                            return split(aLo + x, bLo + y, aLo, aHi, bLo, bHi);
+                        }
+                    }
+                }
+                for(int k = -d + kBackwardStart; k <= d - kBackwardEnd; k += 2) {
+                    int index = offset + k;
+                    int x = k == -d || (k != d && backward[index - 1] < backward[index + 1]) ? backward[index + 1] : backward[index - 1] + 1;
+                    int y = x - k;
+                    int snake = this.a.commonSuffix(aLo, aHi - x, this.b, bLo, bHi - y);
+                    x += snake;
+                    y += snake;
+                    backward[index] = x;
+                    if(x > n) {
+                        kBackwardEnd += 2;
+                    } else if(y > m) {
+                        kBackwardStart += 2;
+                    } else if(!odd) {
+                        int forwardIndex = offset + delta - k;
+                        if(forwardIndex >= lowest && forwardIndex <= highest && forward[forwardIndex] != -1) {
+                            int forwardX = forward[forwardIndex];
+                            int forwardY = forwardX - (delta - k);
+                            if(forwardX >= n - x) return split(aLo + forwardX, bLo + forwardY, aLo, aHi, bLo, bHi);
+                        }
+                    }
+                }
+            }
+            // too expensive: cut at the point on a forward diagonal that got furthest from the start
+            int bestX = -1;
+            int bestY = -1;
+            for(int k = -maxCost; k <= maxCost; k++) {
+                int x = forward[offset + k];
+                int y = x - k;
+                if(x < 0 || x > n || y < 0 || y > m) continue;
+                if(x + y > bestX + bestY) {
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+            return split(aLo + bestX, bLo + bestY, aLo, aHi, bLo, bHi);
+        }
+
+        // a split at either corner would leave the problem as it is
+        private boolean split(int x, int y, int aLo, int aHi, int bLo, int bHi) {
+            if(x < aLo || y < bLo || (x == aLo && y == bLo) || (x == aHi && y == bHi)) return false;
+            this.splitX = x;
+            this.splitY = y;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// versioned binary format for sequences of enum values
+//
+// header, big endian:
+//   int    magic 'TSEQ'
+//   short  version
+//   string sequence type, e.g. MoveSequence        (strings are a short byte length then UTF-8 bytes)
+//   string enum class of the terms
+//   string sequence name
+//   int    ordinal of the default value, -1 for none
+//   int    number of terms
+//   byte   encoding, ORDINALS, RUNS, JOURNAL or ARCHIVE
+//   byte   width of an ordinal in bytes, 1 or 2
+// payload:
+//   ORDINALS: one ordinal per term
+//   RUNS:     int run count, the cumulative exclusive end of every run as int, then one ordinal per run
+//   JOURNAL:  appended records, see SequenceJournal
+//   ARCHIVE:  compressed chunks and a chunk index, see SequenceArchive
+//
+// files are loaded through a memory mapping and copied into the sequence storage in bulk,
+// there is no parsing or allocation per term
+public final class SequenceFile {
+
+    public static final int MAGIC = 0x54534551;
+    public static final short VERSION = 1;
+    static final byte ORDINALS = 0;
+    static final byte RUNS = 1;
+    static final byte JOURNAL = 2;
+    static final byte ARCHIVE = 3;
+
+    private SequenceFile() {}
+
+    // writes sequence to filename, returns null on exception or if the terms are not enum values
+    public static <T extends SafeValue> File write(AbstractSequence<T> sequence, String filename) {
+        File file = new File(filename);
+        ByteBuffer buffer;
+        synchronized(sequence) {
+            T defaultValue = sequence.defaultValue();
+            if(SequenceStorage.of(defaultValue) != SequenceStorage.ORDINAL) {
+                logger.error("{}::writeBinary only sequences of enum values can be written, sequence {}", sequence.getClass().getName(), sequence.name());
+                return null;
+            }
+            try {
+                buffer = encode(sequence, (Enum<?>) defaultValue);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                logger.error("{}::writeBinary", sequence.getClass().getName(), e);
+                return null;
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            logger.error("{}::writeBinary", sequence.getClass().getName(), e);
+            return null;
+        }
+        return file;
+    }
+
+    // reads a sequence written by write, returns null if the file can't be read or is malformed
+    public static <T extends SafeValue, R extends Sequence<T>> R read(String filename) {
+        File file = new File(filename);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return decode(buffer);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ReflectiveOperationException e) {
+            logger.error("SequenceFile::read {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private static <T extends SafeValue> ByteBuffer encode(AbstractSequence<T> sequence, Enum<?> defaultValue) {
+        Terms<T> terms = sequence.terms();
+        int size = terms.size();
+        int width = width(defaultValue);
+        int runs = 0;
+        for(int i = 0; i < size; i = terms.runEnd(i)) runs++;
+        boolean encodeRuns = (long) runs * (Integer.BYTES + width) + Integer.BYTES < (long) size * width;
+        long payload = encodeRuns ? Integer.BYTES + (long) runs * (Integer.BYTES + width) : (long) size * width;
+        ByteBuffer buffer = Header.of(sequence, defaultValue, size, encodeRuns ? RUNS : ORDINALS).write(payload);
+        if(encodeRuns) {
+            buffer.putInt(runs);
+            for(int i = 0; i < size; i = terms.runEnd(i)) buffer.putInt(terms.runEnd(i));
+            for(int i = 0; i < size; i = terms.runEnd(i)) putOrdinal(buffer, ((Enum<?>) terms.get(i)).ordinal(), width);
+        } else if(terms instanceof OrdinalTerms<T> ordinals && ordinals.width() == width) {
+            ordinals.writeOrdinals(buffer, 0, size);
+        } else {
+            for(int i = 0; i < size; i++) putOrdinal(buffer, ((Enum<?>) terms.get(i)).ordinal(), width);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends SafeValue, R extends Sequence<T>> R decode(ByteBuffer buffer) throws IOException, ReflectiveOperationException {
+        Header header = Header.read(buffer);
+        if(header.encoding() == JOURNAL) throw new IllegalArgumentException("Sequence journal, use SequenceJournal.recover");
+        if(header.encoding() == ARCHIVE) throw new IllegalArgumentException("Sequence archive, use SequenceArchive.open");
+        header.checkPayload(buffer);
+        T[] domain = (T[]) header.domain();
+        T defaultValue = header.defaultOrdinal() < 0 ? null : domain[header.defaultOrdinal()];
+        AbstractSequence<T> sequence = newSequence(header.type(), header.name(), defaultValue, domain);
+        Terms<T> terms = sequence.terms();
+        if(header.encoding() == RUNS) {
+            int runs = buffer.getInt();
+            ByteBuffer ends = buffer.slice();
+            buffer.position(buffer.position() + runs * Integer.BYTES);
+            checkOrdinals(buffer, runs, header.width(), domain.length);
+            int start = 0;
+            for(int run = 0; run < runs; run++) {
+                int end = ends.getInt();
+                if(end <= start || end > header.size()) throw new IllegalArgumentException("Sequence file run ends out of order");
+                terms.insert(start, end - start, domain[getOrdinal(buffer, header.width())]);
+                start = end;
+            }
+        } else {
+            checkOrdinals(buffer, header.size(), header.width(), domain.length);
+            if(terms instanceof OrdinalTerms<T> ordinals && ordinals.width() == header.width()) {
+                ordinals.readOrdinals(buffer, header.size());
+            } else {
+                for(int i = 0; i < header.size(); i++) terms.add(domain[getOrdinal(buffer, header.width())]);
+            }
+        }
+        if(terms.size() != header.size()) throw new IllegalArgumentException("Sequence file length mismatch");
+        synchronized(sequence) {
+            sequence.rehash(0, terms.size());
+            sequence.publish();
+        }
+        return (R) sequence;
+    }
+
+    // creates an empty sequence of the given type, sequences of unknown types are loaded as RleSequence
+    @SuppressWarnings("unchecked")
+    static <T extends SafeValue> AbstractSequence<T> newSequence(String type, String name, T defaultValue, T[] domain) {
+        if(type.equals("MoveSequence") && domain instanceof Move[]) return (AbstractSequence<T>) new MoveSequence(name, (Move) defaultValue);
+        return new RleSequence<>(name, defaultValue);
+    }
+
+    // bytes used to store an ordinal of the enum of value
+    static int width(Enum<?> value) {
+        return value.getDeclaringClass().getEnumConstants().length <= 1 << 8 ? Byte.BYTES : Short.BYTES;
+    }
+
+    static void putOrdinal(ByteBuffer buffer, int ordinal, int width) {
+        if(width == Byte.BYTES) buffer.put((byte) ordinal);
+        else buffer.putShort((short) ordinal);
+    }
+
+    static int getOrdinal(ByteBuffer buffer, int width) {
+        return width == Byte.BYTES ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+    }
+
+    // throws if the count ordinals at the position of buffer are not all below domain, the position is left unchanged
+    // the bulk paths copy ordinals into the storage unchecked, so a file written for a larger enum is caught here
+    static void checkOrdinals(ByteBuffer buffer, int count, int width, int domain) throws IOException {
+        int position = buffer.position();
+        int max = 0;
+        if(width == Byte.BYTES) {
+            for(int i = 0; i < count; i++) max = Math.max(max, buffer.get(position + i) & 0xFF);
+        } else {
+            for(int i = 0; i < count; i++) max = Math.max(max, buffer.getShort(position + i * Short.BYTES) & 0xFFFF);
+        }
+        if(count > 0 && max >= domain) throw new IOException("Ordinal " + max + " outside the " + domain + " values of the enum");
+    }
+
+    static void putString(ByteBuffer buffer, byte[] bytes) {
+        if(bytes.length > 0xFFFF) throw new IllegalArgumentException("String of " + bytes.length + " bytes too long for a sequence file header");
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // the decoded file header, the buffer is left positioned at the payload
+    record Header(String type, String valueClass, String name, int defaultOrdinal, int size, byte encoding, int width) {
+
+        static Header read(ByteBuffer buffer) {
+            if(buffer.getInt() != MAGIC) throw new IllegalArgumentException("Not a sequence file");
+            short version = buffer.getShort();
+            if(version != VERSION) throw new IllegalArgumentException("Unsupported sequence file version " + version);
+            Header header = new Header(getString(buffer), getString(buffer), getString(buffer), buffer.getInt(), buffer.getInt(), buffer.get(), buffer.get());
+            if(header.encoding() < ORDINALS || header.encoding() > ARCHIVE) throw new IllegalArgumentException("Unknown sequence encoding " + header.encoding());
+            if(header.width() != Byte.BYTES && header.width() != Short.BYTES) throw new IllegalArgumentException("Unknown ordinal width " + header.width());
+            return header;
+        }
+
+        // throws if the payload at the position of buffer is too short for the terms the header counts,
+        // so a corrupt count can't size the storage
+        void checkPayload(ByteBuffer buffer) {
+            if(this.size < 0) throw new IllegalArgumentException("Negative sequence length " + this.size);
+            long payload = switch(this.encoding) {
+                case ORDINALS -> (long) this.size * this.width;
+                case RUNS -> {
+                    int runs = buffer.getInt(buffer.position());
+                    if(runs < 0 || runs > this.size) throw new IllegalArgumentException("Sequence file with " + runs + " runs for " + this.size + " terms");
+                    yield Integer.BYTES + (long) runs * (Integer.BYTES + this.width);
+                }
+                default -> 0;
+            };
+            if(payload > buffer.remaining()) throw new IllegalArgumentException("Sequence file shorter than its header says");
+        }
+
+        static Header of(AbstractSequence<?> sequence, Enum<?> defaultValue, int size, byte encoding) {
+            return new Header(sequence.sequenceType(), defaultValue.getDeclaringClass().getName(), String.valueOf(sequence.name()),
+                    defaultValue.ordinal(), size, encoding, SequenceFile.width(defaultValue));
+        }
+
+        // allocates a heap buffer for the header and payload bytes, the header is written and the buffer left positioned at the payload
+        ByteBuffer write(long payload) {
+            byte[] type = this.type.getBytes(StandardCharsets.UTF_8);
+            byte[] valueClass = this.valueClass.getBytes(StandardCharsets.UTF_8);
+            byte[] name = this.name.getBytes(StandardCharsets.UTF_8);
+            long length = 4 + 2 + 2 + type.length + 2 + valueClass.length + 2 + name.length + 4 + 4 + 1 + 1 + payload;
+            if(length > Integer.MAX_VALUE) throw new IllegalStateException("Sequence too large for a single buffer");
+            ByteBuffer buffer = ByteBuffer.allocate((int) length);
+            buffer.putInt(MAGIC).putShort(VERSION);
+            putString(buffer, type);
+            putString(buffer, valueClass);
+            putString(buffer, name);
+            buffer.putInt(this.defaultOrdinal).putInt(this.size).put(this.encoding).put((byte) this.width);
+            return buffer;
+        }
+
+        // the enum constants the ordinals index into
+        SafeValue[] domain() throws ReflectiveOperationException {
+            Class<?> type = Class.forName(this.valueClass, false, SequenceFile.class.getClassLoader());
+            // checked before getEnumConstants initializes the class, a file can't run the static initializer of an arbitrary class
+            if(!type.isEnum() || !SafeValue.class.isAssignableFrom(type)) throw new IllegalArgumentException("Not an enum of SafeValue: " + this.valueClass);
+            return (SafeValue[]) type.getEnumConstants();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+// content addressed cache of sequence terms, so identical fragments loaded from different script files share one copy
+//
+// intern() looks the terms up by their ContentHash and returns a read only view over the first copy of equal terms
+// it was given, under the name and default value of the interned sequence. candidates with the same hash are compared
+// term by term, so hash collisions never merge different terms. the cache only holds its copies weakly:
+// terms no view refers to anymore are collected and dropped from the cache.
+// interned views are read only, materialize() one to edit it without touching the shared copy.
+public final class SequenceInterner {
+
+    private static final SequenceInterner INSTANCE = new SequenceInterner();
+
+    private final HashMap<Long, List<Entry>> entries = new HashMap<>();
+    private final ReferenceQueue<Terms<?>> collected = new ReferenceQueue<>();
+    private long hits;
+    private long misses;
+
+    public SequenceInterner() {}
+
+    // the process wide cache
+    public static SequenceInterner get() {
+        return INSTANCE;
+    }
+
+    // a view of the terms of sequence backed by the cached copy of equal terms, which sequence becomes if there is none
+    public <T extends SafeValue> SequenceView<T> intern(Sequence<T> sequence) {
+        Terms<T> terms;
+        if(sequence instanceof AbstractSequence<T> abstractSequence) {
+            // looked up against the live terms, so a hit doesn't pay for a snapshot of them
+            synchronized(abstractSequence) {
+                terms = canonical(abstractSequence.contentHash(), abstractSequence.terms(), abstractSequence::snapshotTerms);
+            }
+        } else if(sequence instanceof ReadOnlySequence<T> readOnly) {
+            terms = canonical(readOnly.contentHash(), readOnly.terms(), readOnly::terms);
+        } else {
+            // other sequences are read through at() and may still change, so the cached copy is taken into run length storage
+            Terms<T> view = ViewTerms.of(sequence);
+            terms = canonical(ContentHash.of(view), view, () -> {
+                Terms<T> copy = new RleTerms<>();
+                ViewTerms.copy(view, copy, 0, view.size());
+                return copy;
+            });
+        }
+        return new SequenceView<>(terms, SequenceView.typeOf(sequence), sequence.name(), sequence.defaultValue());
+    }
+
+    // reads a sequence written by SequenceFile.write and interns it, returns null if the file can't be read
+    public <T extends SafeValue> SequenceView<T> read(String filename) {
+        Sequence<T> sequence = SequenceFile.read(filename);
+        return sequence == null ? null : intern(sequence);
+    }
+
+    // the cached terms equal to terms, or the unchanging copy of them made by snapshot once it is cached
+    @SuppressWarnings("unchecked")
+    private synchronized <T> Terms<T> canonical(long hash, Terms<T> terms, Supplier<Terms<T>> snapshot) {
+        expunge();
+        List<Entry> candidates = this.entries.computeIfAbsent(hash, key -> new ArrayList<>(1));
+        for(Entry entry : candidates) {
+            Terms<T> cached = (Terms<T>) entry.get();
+            if(cached != null && cached.size() == terms.size() && cached.contentEquals(terms)) {
+                this.hits++;
+                return cached;
+            }
+        }
+        Terms<T> copy = snapshot.get();
+        candidates.add(new Entry(hash, copy, this.collected));
+        this.misses++;
+        return copy;
+    }
+
+    // drops the entries of collected terms
+    private void expunge() {
+        for(Entry entry; (entry = (Entry) this.collected.poll()) != null; ) {
+            List<Entry> candidates = this.entries.get(entry.hash);
+            if(candidates == null) continue;
+            candidates.remove(entry);
+            if(candidates.isEmpty()) this.entries.remove(entry.hash);
+        }
+    }
+
+    // number of distinct cached terms still in use
+    public synchronized int size() {
+        expunge();
+        int size = 0;
+        for(List<Entry> candidates : this.entries.values()) size += candidates.size();
+        return size;
+    }
+
+    // interned sequences that shared an existing copy
+    public synchronized long hits() {
+        return this.hits;
+    }
+
+    // interned sequences that became the cached copy
+    public synchronized long misses() {
+        return this.misses;
+    }
+
+    // forgets every cached copy, views already handed out keep theirs
+    public synchronized void clear() {
+        this.entries.clear();
+        while(this.collected.poll() != null) {}
+    }
+
+    private static final class Entry extends WeakReference<Terms<?>> {
+
+        private final long hash;
+
+        Entry(long hash, Terms<?> terms, ReferenceQueue<Terms<?>> queue) {
+            super(terms, queue);
+            this.hash = hash;
+        }
+    }
+}
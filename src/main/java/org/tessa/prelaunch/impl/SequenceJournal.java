@@ -0,0 +1,356 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// append only journal for sequences of enum values that are recorded live
+//
+// the file starts with a SequenceFile header using the JOURNAL encoding, followed by records:
+//   int count, count ordinals, int CRC32 of the ordinals
+//
+// append() hands the ordinal of the term to a background writer through a lock free queue and only then adds the term
+// to the sequence, the writer batches the queued ordinals into records and forces them to disk every syncInterval.
+// persistence cost grows with the appended terms only. the appending thread never waits: when the writer falls a whole
+// queue behind, append chains a new queue of the same capacity and the writer drains the queues in order, so a stalled
+// disk costs memory rather than ticks and every term in the sequence is still in the journal, in order.
+// once the writer fails the journal is broken: the terms it had not written are counted as lost and appends are refused.
+// a journal only records terms appended through it, other edits of the sequence are not persisted.
+// on open, the records of an existing journal are replayed into the sequence and a torn or corrupt tail is cut off.
+public final class SequenceJournal<T extends SafeValue> implements AutoCloseable {
+
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(50);
+    public static final Duration DEFAULT_SYNC_INTERVAL = Duration.ofSeconds(1);
+    public static final int DEFAULT_QUEUE_CAPACITY = 1 << 16;
+    private static final int BATCH_SIZE = 4096;
+
+    private final AbstractSequence<T> sequence;
+    private final File file;
+    private final FileChannel channel;
+    private final int width;
+    private final int defaultOrdinal;
+    private final long flushNanos;
+    private final long syncNanos;
+    private final int queueCapacity;
+    // queue append offers to, appending thread only
+    private Segment tail;
+    // queue the writer drains, writer thread only
+    private Segment head;
+    private final long[] batch = new long[BATCH_SIZE];
+    private final ByteBuffer record;
+    private final CRC32 crc = new CRC32();
+    private final AtomicLong lost = new AtomicLong();
+    // terms queued by append, written by the appending thread only
+    private final AtomicLong appended = new AtomicLong();
+    // queues chained because the writer was a whole queue behind, written by the appending thread only
+    private final AtomicLong overflows = new AtomicLong();
+    private final Thread writer;
+    // refuses appends, set by close or when the writer fails
+    private volatile boolean closed;
+    // set by the appending thread while it queues a term, close waits for it so a racing append is either refused or written
+    private volatile boolean appending;
+    // tells the writer to write what is queued and stop, set by close once no append is in progress
+    private volatile boolean stopping;
+    private volatile boolean broken;
+    // appending thread only
+    private boolean refusalLogged;
+    private volatile long persisted;
+
+    private SequenceJournal(AbstractSequence<T> sequence, File file, FileChannel channel, Duration flushInterval, Duration syncInterval, int queueCapacity) {
+        Enum<?> defaultValue = (Enum<?>) sequence.defaultValue();
+        this.sequence = sequence;
+        this.file = file;
+        this.channel = channel;
+        this.width = SequenceFile.width(defaultValue);
+        this.defaultOrdinal = defaultValue.ordinal();
+        this.flushNanos = flushInterval.toNanos();
+        this.syncNanos = syncInterval.toNanos();
+        this.queueCapacity = queueCapacity;
+        this.tail = this.head = new Segment(new SpscLongQueue(queueCapacity));
+        this.record = ByteBuffer.allocateDirect(Integer.BYTES + BATCH_SIZE * this.width + Integer.BYTES);
+        this.writer = new Thread(this::run, "tessa-journal-" + sequence.name());
+        this.writer.setDaemon(true);
+    }
+
+    public static <T extends SafeValue> SequenceJournal<T> open(AbstractSequence<T> sequence, String filename) {
+        return open(sequence, filename, DEFAULT_FLUSH_INTERVAL, DEFAULT_SYNC_INTERVAL, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    // opens or creates the journal filename for sequence
+    // terms already in an existing journal are appended to sequence first
+    // returns null if the file can't be opened or the terms of sequence are not enum values
+    public static <T extends SafeValue> SequenceJournal<T> open(AbstractSequence<T> sequence, String filename, Duration flushInterval, Duration syncInterval, int queueCapacity) {
+        File file = new File(filename);
+        if(SequenceStorage.of(sequence.defaultValue()) != SequenceStorage.ORDINAL) {
+            logger.error("SequenceJournal::open only sequences of enum values can be journaled, sequence {}", sequence.name());
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if(channel.size() == 0) {
+                ByteBuffer header = SequenceFile.Header.of(sequence, (Enum<?>) sequence.defaultValue(), 0, SequenceFile.JOURNAL).write(0);
+                header.flip();
+                while(header.hasRemaining()) channel.write(header);
+            } else {
+                ByteBuffer buffer = readAll(channel);
+                SequenceFile.Header header = readHeader(buffer);
+                if(!header.valueClass().equals(((Enum<?>) sequence.defaultValue()).getDeclaringClass().getName())) {
+                    throw new IllegalArgumentException("Journal holds " + header.valueClass() + " terms");
+                }
+                replay(channel, buffer, header, sequence);
+            }
+            channel.position(channel.size());
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ReflectiveOperationException e) {
+            logger.error("SequenceJournal::open {}", file.getAbsolutePath(), e);
+            closeQuietly(channel);
+            return null;
+        }
+        SequenceJournal<T> journal = new SequenceJournal<>(sequence, file, channel, flushInterval, syncInterval, queueCapacity);
+        journal.writer.start();
+        return journal;
+    }
+
+    // reads the sequence stored in the journal filename and cuts off a torn or corrupt tail
+    // returns null if the file can't be read
+    @SuppressWarnings("unchecked")
+    public static <T extends SafeValue, R extends Sequence<T>> R recover(String filename) {
+        File file = new File(filename);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = readAll(channel);
+            SequenceFile.Header header = readHeader(buffer);
+            T[] domain = (T[]) header.domain();
+            T defaultValue = header.defaultOrdinal() < 0 ? null : domain[header.defaultOrdinal()];
+            AbstractSequence<T> sequence = SequenceFile.newSequence(header.type(), header.name(), defaultValue, domain);
+            replay(channel, buffer, header, sequence);
+            return (R) sequence;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ReflectiveOperationException e) {
+            logger.error("SequenceJournal::recover {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer readAll(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), Integer.MAX_VALUE));
+        channel.position(0);
+        while(buffer.hasRemaining() && channel.read(buffer) >= 0) {}
+        return buffer.flip();
+    }
+
+    private static SequenceFile.Header readHeader(ByteBuffer buffer) {
+        SequenceFile.Header header = SequenceFile.Header.read(buffer);
+        if(header.encoding() != SequenceFile.JOURNAL) throw new IllegalArgumentException("Not a sequence journal");
+        return header;
+    }
+
+    // appends the intact records following the header in buffer to sequence and cuts a torn or corrupt tail off the file
+    // the records are checked before any is replayed, an intact record with ordinals outside the enum fails the replay
+    // and leaves the sequence and the file as they were
+    @SuppressWarnings("unchecked")
+    private static <T extends SafeValue> void replay(FileChannel channel, ByteBuffer buffer, SequenceFile.Header header, AbstractSequence<T> sequence) throws IOException, ReflectiveOperationException {
+        T[] domain = (T[]) header.domain();
+        int start = buffer.position();
+        long end = intactEnd(buffer, header, domain.length);
+        buffer.position(start);
+        synchronized(sequence) {
+            Terms<T> terms = sequence.terms();
+            int replayed = terms.size();
+            while(buffer.position() < end) {
+                int count = buffer.getInt();
+                ByteBuffer payload = buffer.slice();
+                payload.limit(count * header.width());
+                buffer.position(buffer.position() + count * header.width() + Integer.BYTES);
+                if(terms instanceof OrdinalTerms<T> ordinals && ordinals.width() == header.width()) {
+                    ordinals.readOrdinals(payload, count);
+                } else {
+                    for(int i = 0; i < count; i++) terms.add(domain[SequenceFile.getOrdinal(payload, header.width())]);
+                }
+            }
+            sequence.rehash(replayed, terms.size());
+            sequence.publish();
+        }
+        if(end < channel.size()) {
+            logger.warn("SequenceJournal::replay discarding {} bytes of torn or corrupt records", channel.size() - end);
+            channel.truncate(end);
+        }
+    }
+
+    // the end of the intact records following the position of buffer, throws if one holds an ordinal outside the domain
+    private static long intactEnd(ByteBuffer buffer, SequenceFile.Header header, int domain) throws IOException {
+        CRC32 crc = new CRC32();
+        long end = buffer.position();
+        while(buffer.remaining() >= Integer.BYTES) {
+            int count = buffer.getInt();
+            long length = (long) count * header.width();
+            if(count <= 0 || buffer.remaining() < length + Integer.BYTES) break;
+            ByteBuffer payload = buffer.slice();
+            payload.limit((int) length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            buffer.position(buffer.position() + (int) length);
+            if((int) crc.getValue() != buffer.getInt()) break;
+            SequenceFile.checkOrdinals(payload, count, header.width(), domain);
+            end = buffer.position();
+        }
+        return end;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if(channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public AbstractSequence<T> sequence() {
+        return this.sequence;
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    // number of terms written to the journal file so far
+    public long persisted() {
+        return this.persisted;
+    }
+
+    // number of terms in the sequence that never reached the file because the writer failed
+    public long lost() {
+        return this.lost.get();
+    }
+
+    // number of times append found the queue full and chained another one
+    public long overflows() {
+        return this.overflows.get();
+    }
+
+    // true once the writer failed, the journal then refuses appends
+    public boolean broken() {
+        return this.broken;
+    }
+
+    // queues value for the journal and appends it to the sequence, must always be called from the same thread
+    // never waits, returns false without changing the sequence if the journal is closed or broken
+    public boolean append(T value) {
+        int ordinal = value == null ? this.defaultOrdinal : ((Enum<?>) value).ordinal();
+        this.appending = true;
+        try {
+            if(!this.closed) {
+                if(!this.tail.queue.offer(ordinal)) overflow(ordinal);
+                this.appended.lazySet(this.appended.get() + 1);
+                this.sequence.add(value);
+                return true;
+            }
+        } finally {
+            this.appending = false;
+        }
+        if(!this.refusalLogged) {
+            this.refusalLogged = true;
+            logger.error("SequenceJournal::append journal {} is {}, terms are refused", this.file.getAbsolutePath(), this.broken ? "broken" : "closed");
+        }
+        return false;
+    }
+
+    // the writer is a whole queue behind, queues ordinal on a new queue chained after the full one and wakes the writer
+    private void overflow(int ordinal) {
+        Segment next = new Segment(new SpscLongQueue(this.queueCapacity));
+        next.queue.offer(ordinal);
+        // the volatile link publishes every offer to the full queue before the writer moves past it
+        this.tail.next = next;
+        this.tail = next;
+        this.overflows.lazySet(this.overflows.get() + 1);
+        LockSupport.unpark(this.writer);
+    }
+
+    private void run() {
+        long nextSync = System.nanoTime() + this.syncNanos;
+        boolean dirty = false;
+        try {
+            while(!this.stopping) {
+                dirty |= writeQueued();
+                if(dirty && System.nanoTime() - nextSync >= 0) {
+                    this.channel.force(false);
+                    dirty = false;
+                    nextSync = System.nanoTime() + this.syncNanos;
+                }
+                LockSupport.parkNanos(this.flushNanos);
+            }
+            writeQueued();
+            this.channel.force(false);
+        } catch (IOException e) {
+            this.broken = true;
+            this.closed = true;
+            // wait out an append that saw the journal open, then count every term that will never be written
+            while(this.appending) Thread.onSpinWait();
+            this.lost.set(this.appended.get() - this.persisted);
+            logger.error("SequenceJournal::run {} failed, {} terms of the sequence are not in the journal", this.file.getAbsolutePath(), this.lost.get(), e);
+        }
+    }
+
+    // writes every queued term as records of up to BATCH_SIZE terms, returns true if anything was written
+    private boolean writeQueued() throws IOException {
+        boolean written = false;
+        while(true) {
+            int count = this.head.queue.drain(this.batch, 0);
+            if(count == 0) {
+                Segment next = this.head.next;
+                if(next == null) break;
+                // terms offered before the link are visible now, move on once they are written
+                if(this.head.queue.size() == 0) this.head = next;
+                continue;
+            }
+            this.record.clear();
+            this.record.putInt(count);
+            for(int i = 0; i < count; i++) SequenceFile.putOrdinal(this.record, (int) this.batch[i], this.width);
+            ByteBuffer payload = this.record.duplicate();
+            payload.flip().position(Integer.BYTES);
+            this.crc.reset();
+            this.crc.update(payload);
+            this.record.putInt((int) this.crc.getValue());
+            this.record.flip();
+            while(this.record.hasRemaining()) this.channel.write(this.record);
+            this.persisted += count;
+            written = true;
+        }
+        return written;
+    }
+
+    // stops accepting terms, writes everything queued, forces it to disk and closes the file
+    @Override
+    public void close() {
+        if(this.stopping && !this.writer.isAlive()) return;
+        this.closed = true;
+        // an append that saw the journal open finishes queueing before the writer's last drain
+        while(this.appending) Thread.onSpinWait();
+        this.stopping = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeQuietly(this.channel);
+    }
+
+    // a queue and the queue chained after it once it filled up
+    private static final class Segment {
+        final SpscLongQueue queue;
+        volatile Segment next;
+
+        Segment(SpscLongQueue queue) {
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.util.Objects;
+
+// Knuth-Morris-Pratt search for the terms of a pattern sequence
+// a scan is linear in the searched terms and allocates nothing, ordinal storages are compared by ordinal
+final class SequenceMatcher<T extends SafeValue> {
+
+    private final Object[] pattern;
+    private final int[] failure;
+    // pattern as ordinals of the last ordinal storage searched, null until then
+    private Object[] ordinalDomain;
+    private int[] ordinals;
+
+    SequenceMatcher(Sequence<T> pattern) {
+        int length = pattern.tick() + 1;
+        this.pattern = new Object[length];
+        for(int i = 0; i < length; i++) this.pattern[i] = pattern.at(i);
+        this.failure = new int[length];
+        for(int i = 1, matched = 0; i < length; i++) {
+            while(matched > 0 && !Objects.equals(this.pattern[i], this.pattern[matched])) matched = this.failure[matched - 1];
+            if(Objects.equals(this.pattern[i], this.pattern[matched])) matched++;
+            this.failure[i] = matched;
+        }
+    }
+
+    int length() {
+        return this.pattern.length;
+    }
+
+    // start of the first match in text starting at or after from, or -1
+    int find(Terms<T> text, int from) {
+        int length = this.pattern.length;
+        if(length == 0) return -1;
+        if(text instanceof OrdinalTerms<T> terms && ordinalsFor(terms)) return findOrdinals(terms, from);
+        int matched = 0;
+        for(int i = Math.max(from, 0); i < text.size(); i++) {
+            T value = text.get(i);
+            while(matched > 0 && !Objects.equals(this.pattern[matched], value)) matched = this.failure[matched - 1];
+            if(Objects.equals(this.pattern[matched], value)) matched++;
+            if(matched == length) return i - length + 1;
+        }
+        return -1;
+    }
+
+    private int findOrdinals(OrdinalTerms<T> text, int from) {
+        int length = this.ordinals.length;
+        int matched = 0;
+        for(int i = Math.max(from, 0); i < text.size(); i++) {
+            int value = text.ordinalAt(i);
+            while(matched > 0 && this.ordinals[matched] != value) matched = this.failure[matched - 1];
+            if(this.ordinals[matched] == value) matched++;
+            if(matched == length) return i - length + 1;
+        }
+        return -1;
+    }
+
+    // translates the pattern into ordinals of the domain of text, false if some pattern term is outside the domain
+    @SuppressWarnings("unchecked")
+    private boolean ordinalsFor(OrdinalTerms<T> text) {
+        if(this.ordinalDomain == text.domain()) return this.ordinals != null;
+        this.ordinalDomain = text.domain();
+        this.ordinals = new int[this.pattern.length];
+        for(int i = 0; i < this.pattern.length; i++) {
+            T value = (T) this.pattern[i];
+            int ordinal = value == null ? -1 : text.ordinalOf(value);
+            if(ordinal < 0 || ordinal >= text.domain().length || !text.domain()[ordinal].equals(value)) {
+                this.ordinals = null;
+                return false;
+            }
+            this.ordinals[i] = ordinal;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,232 @@
+package org.tessa.prelaunch.impl;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// process wide metrics for sequences: call counts and latency histograms per operation,
+// out of bounds ticks per method and the sizes of edited sequences
+// readable through JMX (registerJmx) or a periodic log summary (startLogSummary)
+// disabled by default, recording costs two System.nanoTime calls and a few uncontended adds on every metered call,
+// point reads included, enable with -Dtessa.sequence.metrics=true or setEnabled
+public final class SequenceMetrics implements SequenceMetricsMXBean {
+
+    public enum Operation { AT, ADD, ADD_RANGE, SET, SET_RANGE, REMOVE, REMOVE_RANGE, REMOVE_ALL, SEARCH, REPLACE_ALL, CLEAR, COPY, BITWISE }
+
+    public static final String OBJECT_NAME = "org.tessa:type=SequenceMetrics";
+    // at most one warning is logged per method in this interval, the others are counted
+    public static final long WARNING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final SequenceMetrics INSTANCE = new SequenceMetrics();
+
+    // returned by start() when disabled, System.nanoTime may return 0 but not the most negative long in practice
+    static final long DISABLED = Long.MIN_VALUE;
+
+    private volatile boolean enabled = Boolean.getBoolean("tessa.sequence.metrics");
+    private final EnumMap<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Histogram sizes = new Histogram();
+    private final ConcurrentHashMap<String, LongAdder> outOfBounds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, WarningLimit> warnings = new ConcurrentHashMap<>();
+    private ScheduledExecutorService summaryExecutor;
+    private ScheduledFuture<?> summary;
+
+    private SequenceMetrics() {
+        for(Operation operation : Operation.values()) this.latencies.put(operation, new Histogram());
+    }
+
+    public static SequenceMetrics get() {
+        return INSTANCE;
+    }
+
+    // timestamp to pass to record, DISABLED when disabled
+    long start() {
+        return this.enabled ? System.nanoTime() : DISABLED;
+    }
+
+    void record(Operation operation, long start) {
+        if(start == DISABLED) return;
+        this.latencies.get(operation).record(System.nanoTime() - start);
+    }
+
+    void record(Operation operation, long start, int size) {
+        if(start == DISABLED) return;
+        this.latencies.get(operation).record(System.nanoTime() - start);
+        this.sizes.record(size);
+    }
+
+    void recordOutOfBounds(String method) {
+        this.outOfBounds.computeIfAbsent(method, m -> new LongAdder()).increment();
+    }
+
+    // the number of warnings suppressed for method since the last logged one, or -1 if this warning should be suppressed
+    long allowWarning(String method) {
+        return this.warnings.computeIfAbsent(method, m -> new WarningLimit()).allow();
+    }
+
+    public synchronized void registerJmx() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if(!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            logger.error("SequenceMetrics::registerJmx", e);
+        }
+    }
+
+    // logs getSummary() every period until stopLogSummary
+    public synchronized void startLogSummary(Duration period) {
+        stopLogSummary();
+        if(this.summaryExecutor == null) {
+            this.summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tessa-sequence-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.summary = this.summaryExecutor.scheduleAtFixedRate(() -> logger.info(getSummary()), period.toNanos(), period.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public synchronized void stopLogSummary() {
+        if(this.summary != null) this.summary.cancel(false);
+        this.summary = null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        TreeMap<String, Long> map = new TreeMap<>();
+        this.latencies.forEach((operation, histogram) -> map.put(operation.name(), histogram.count()));
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP50Nanos() {
+        return percentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyP99Nanos() {
+        return percentiles(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getLatencyMaxNanos() {
+        return percentiles(1);
+    }
+
+    private Map<String, Long> percentiles(double percentile) {
+        TreeMap<String, Long> map = new TreeMap<>();
+        this.latencies.forEach((operation, histogram) -> map.put(operation.name(), histogram.percentile(percentile)));
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getOutOfBoundsCounts() {
+        TreeMap<String, Long> map = new TreeMap<>();
+        this.outOfBounds.forEach((method, count) -> map.put(method, count.sum()));
+        return map;
+    }
+
+    @Override
+    public long getSizeP50() {
+        return this.sizes.percentile(0.5);
+    }
+
+    @Override
+    public long getSizeMax() {
+        return this.sizes.percentile(1);
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder builder = new StringBuilder("Sequence metrics (count p50/p99/max ns):");
+        this.latencies.forEach((operation, histogram) -> {
+            long count = histogram.count();
+            if(count == 0) return;
+            builder.append("\n ").append(operation).append(": ").append(count).append(' ')
+                    .append(histogram.percentile(0.5)).append('/').append(histogram.percentile(0.99)).append('/').append(histogram.percentile(1));
+        });
+        builder.append("\n Out of bounds: ").append(getOutOfBoundsCounts());
+        builder.append("\n Sequence size p50/max: ").append(getSizeP50()).append('/').append(getSizeMax());
+        return builder.toString();
+    }
+
+    @Override
+    public void reset() {
+        this.latencies.values().forEach(Histogram::reset);
+        this.sizes.reset();
+        this.outOfBounds.clear();
+    }
+
+    // power of two buckets, bucket i counts values in [2^(i-1), 2^i)
+    static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[65];
+
+        Histogram() {
+            for(int i = 0; i < this.buckets.length; i++) this.buckets[i] = new LongAdder();
+        }
+
+        void record(long value) {
+            this.buckets[64 - Long.numberOfLeadingZeros(Math.max(value, 0))].increment();
+        }
+
+        long count() {
+            long count = 0;
+            for(LongAdder bucket : this.buckets) count += bucket.sum();
+            return count;
+        }
+
+        // upper bound of the bucket holding the percentile, 0 if nothing was recorded
+        long percentile(double percentile) {
+            long[] counts = new long[this.buckets.length];
+            long total = 0;
+            for(int i = 0; i < counts.length; i++) total += counts[i] = this.buckets[i].sum();
+            if(total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile * total));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if(seen >= rank) return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for(LongAdder bucket : this.buckets) bucket.reset();
+        }
+    }
+
+    private static final class WarningLimit {
+
+        private final AtomicLong last = new AtomicLong(System.nanoTime() - WARNING_INTERVAL_NANOS);
+        private final LongAdder suppressed = new LongAdder();
+
+        long allow() {
+            long now = System.nanoTime();
+            long last = this.last.get();
+            if(now - last >= WARNING_INTERVAL_NANOS && this.last.compareAndSet(last, now)) return this.suppressed.sumThenReset();
+            this.suppressed.increment();
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.tessa.prelaunch.impl;
+import java.util.Map;
+
+// JMX view of SequenceMetrics, registered as org.tessa:type=SequenceMetrics
+public interface SequenceMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    // operation name to number of calls
+    Map<String, Long> getOperationCounts();
+
+    // operation name to latency percentile in nanoseconds, percentiles are bucket upper bounds
+    Map<String, Long> getLatencyP50Nanos();
+
+    Map<String, Long> getLatencyP99Nanos();
+
+    Map<String, Long> getLatencyMaxNanos();
+
+    // method name to number of out of bounds ticks
+    Map<String, Long> getOutOfBoundsCounts();
+
+    long getSizeP50();
+
+    long getSizeMax();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,25 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+
+// how an AbstractSequence stores its terms
+public enum SequenceStorage {
+    // one reference per term, works for any SafeValue
+    LIST,
+    // one byte (or short) ordinal per term, only for values where isEnum() is true
+    ORDINAL,
+    // one (value, run length) pair per run of equal terms, for long constant runs
+    RUN_LENGTH;
+
+    // picks ORDINAL for enum values and LIST otherwise
+    public static SequenceStorage of(SafeValue defaultValue) {
+        return defaultValue != null && defaultValue.isEnum() && defaultValue instanceof Enum<?> ? ORDINAL : LIST;
+    }
+
+    <T extends SafeValue> Terms<T> create(T defaultValue) {
+        return switch(this) {
+            case LIST -> new ListTerms<>();
+            case ORDINAL -> OrdinalTerms.ofEnum(defaultValue);
+            case RUN_LENGTH -> new RleTerms<>();
+        };
+    }
+}
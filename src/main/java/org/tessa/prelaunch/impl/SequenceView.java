@@ -0,0 +1,68 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.util.ArrayList;
+import java.util.List;
+
+// a read only sequence composed from other sequences without copying their terms
+//
+// slice, concat, repeat and reversed share the storage of the sequences they are made from and cost
+// O(1) (concat O(number of parts)) however long the result is, so scripts can be assembled from reusable
+// fragments cheaply. a view is taken over a snapshot of its sources: later edits of a source are not seen,
+// and an ordinal source that is only appended to is never copied.
+// reads cost O(log parts) per composition level, materialize() copies the terms into an editable sequence
+// and hands every shared storage to its bulk copy path.
+public final class SequenceView<T extends SafeValue> extends ReadOnlySequence<T> {
+
+    SequenceView(Terms<T> terms, String sequenceType, String name, T defaultValue) {
+        super(terms, sequenceType, name, defaultValue);
+    }
+
+    // a view of the terms of sequence as they are now
+    public static <T extends SafeValue> SequenceView<T> of(Sequence<T> sequence) {
+        if(sequence instanceof SequenceView<T> view) return view;
+        return new SequenceView<>(ViewTerms.of(sequence), typeOf(sequence), sequence.name(), sequence.defaultValue());
+    }
+
+    // a view of the terms of every part one after the other, named and defaulted after the first part
+    public static <T extends SafeValue> SequenceView<T> concat(List<? extends Sequence<T>> parts) {
+        if(parts.isEmpty()) throw new IllegalArgumentException("Nothing to concatenate");
+        List<Terms<T>> terms = new ArrayList<>(parts.size());
+        for(Sequence<T> part : parts) terms.add(ViewTerms.of(part));
+        Sequence<T> first = parts.get(0);
+        return new SequenceView<>(ViewTerms.concat(terms), typeOf(first), first.name(), first.defaultValue());
+    }
+
+    static String typeOf(Sequence<?> sequence) {
+        if(sequence instanceof AbstractSequence<?> abstractSequence) return abstractSequence.sequenceType();
+        if(sequence instanceof ReadOnlySequence<?> readOnly) return readOnly.sequenceType();
+        return sequence.getClass().getSimpleName();
+    }
+
+    // terms [startingTick, until) of this view, bounds out of range are clamped like subsequence
+    public SequenceView<T> slice(int startingTick, int until) {
+        if(startingTick < 0 || until > this.terms.size()) {
+            logWarning("SequenceView::slice", startingTick < 0 ? startingTick : until, "indices on slice call out of bounds");
+            startingTick = Math.max(startingTick, 0);
+            until = Math.min(until, this.terms.size());
+        }
+        until = Math.max(until, startingTick);
+        return new SequenceView<>(ViewTerms.slice(this.terms, startingTick, until), this.sequenceType, name() + "_[" + startingTick + "," + until + ")", defaultValue());
+    }
+
+    // the terms of this view followed by the terms of other
+    public SequenceView<T> concat(Sequence<T> other) {
+        return new SequenceView<>(ViewTerms.concat(List.of(this.terms, ViewTerms.of(other))), this.sequenceType, name(), defaultValue());
+    }
+
+    // the terms of this view times times over
+    public SequenceView<T> repeat(int times) {
+        if(times < 0) throw new IllegalArgumentException("Negative repeat count " + times);
+        return new SequenceView<>(ViewTerms.repeat(this.terms, times), this.sequenceType, name() + "_x" + times, defaultValue());
+    }
+
+    // the terms of this view last to first
+    public SequenceView<T> reversed() {
+        return new SequenceView<>(ViewTerms.reversed(this.terms), this.sequenceType, name() + "_reversed", defaultValue());
+    }
+}
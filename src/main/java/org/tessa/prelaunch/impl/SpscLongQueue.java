@@ -0,0 +1,56 @@
+package org.tessa.prelaunch.impl;
+import java.util.concurrent.atomic.AtomicLong;
+
+// bounded lock free queue of longs for exactly one producer thread and one consumer thread
+// offer and poll never block or allocate, offer fails when the queue is full
+public final class SpscLongQueue {
+
+    private final long[] buffer;
+    private final int mask;
+    // next slot to write, only advanced by the producer
+    private final AtomicLong tail = new AtomicLong();
+    // next slot to read, only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // producer local view of head, refreshed only when the queue seems full
+    private long headCache;
+
+    // capacity is rounded up to a power of two
+    public SpscLongQueue(int capacity) {
+        if(capacity < 1 || capacity > 1 << 30) throw new IllegalArgumentException("Invalid queue capacity " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) size <<= 1;
+        this.buffer = new long[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return this.buffer.length;
+    }
+
+    // producer side, returns false if the queue is full
+    public boolean offer(long value) {
+        long tail = this.tail.get();
+        if(tail - this.headCache >= this.buffer.length) {
+            this.headCache = this.head.get();
+            if(tail - this.headCache >= this.buffer.length) return false;
+        }
+        this.buffer[(int) tail & this.mask] = value;
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    // consumer side, moves up to out.length - from values into out starting at from, returns the number moved
+    public int drain(long[] out, int from) {
+        long head = this.head.get();
+        long available = this.tail.get() - head;
+        int count = (int) Math.min(available, out.length - from);
+        for(int i = 0; i < count; i++) out[from + i] = this.buffer[(int) (head + i) & this.mask];
+        if(count > 0) this.head.lazySet(head + count);
+        return count;
+    }
+
+    // approximate number of queued values, safe to call from any thread
+    public int size() {
+        return (int) Math.max(0, this.tail.get() - this.head.get());
+    }
+}
@@ -0,0 +1,122 @@
+package org.tessa.prelaunch.impl;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// the payload format of the tessa:telemetry channel a server sends its metrics on
+//
+// a payload is a series of records:
+// DEFINE  varint id, varint kind ordinal, varint name length, UTF-8 name  names metric id, sent before its samples
+// SAMPLES varint count, count times varint id and zigzag varlong value    one value per sample
+// varints are the 7 bits per byte little endian varints of the minecraft protocol.
+// units are part of the metric names, for example tps_x100 or mspt_us.
+public final class TelemetryProtocol {
+
+    public static final String CHANNEL = "tessa:telemetry";
+    public static final byte DEFINE = 1;
+    public static final byte SAMPLES = 2;
+
+    // how a metric is aggregated
+    public enum Kind {
+        // a level sampled now and then, like TPS or entity counts
+        GAUGE,
+        // a duration, like tick time or plugin timings
+        TIMER,
+        // an amount to add up, like packets sent since the last sample
+        COUNTER
+    }
+
+    // receives decoded records, called on the decoding thread
+    public interface Receiver {
+        void define(int id, String name, Kind kind);
+        void sample(int id, long value);
+    }
+
+    private TelemetryProtocol() {}
+
+    // decodes the records in buffer, throws IllegalArgumentException on malformed payloads
+    public static void decode(ByteBuffer buffer, Receiver receiver) {
+        try {
+            while(buffer.hasRemaining()) {
+                byte record = buffer.get();
+                switch(record) {
+                    case DEFINE -> {
+                        int id = readVarInt(buffer);
+                        int kind = readVarInt(buffer);
+                        int length = readVarInt(buffer);
+                        if(kind < 0 || kind >= Kind.values().length || length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Malformed telemetry definition");
+                        byte[] name = new byte[length];
+                        buffer.get(name);
+                        receiver.define(id, new String(name, StandardCharsets.UTF_8), Kind.values()[kind]);
+                    }
+                    case SAMPLES -> {
+                        int count = readVarInt(buffer);
+                        for(int i = 0; i < count; i++) {
+                            int id = readVarInt(buffer);
+                            long zigzag = readVarLong(buffer);
+                            receiver.sample(id, (zigzag >>> 1) ^ -(zigzag & 1));
+                        }
+                    }
+                    default -> throw new IllegalArgumentException("Unknown telemetry record " + record);
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated telemetry payload", e);
+        }
+    }
+
+    public static void writeDefinition(ByteBuffer buffer, int id, String name, Kind kind) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        buffer.put(DEFINE);
+        writeVarInt(buffer, id);
+        writeVarInt(buffer, kind.ordinal());
+        writeVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    // count samples of ids and values starting at from
+    public static void writeSamples(ByteBuffer buffer, int[] ids, long[] values, int from, int count) {
+        buffer.put(SAMPLES);
+        writeVarInt(buffer, count);
+        for(int i = from; i < from + count; i++) {
+            writeVarInt(buffer, ids[i]);
+            writeVarLong(buffer, (values[i] << 1) ^ (values[i] >> 63));
+        }
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+        throw new IllegalArgumentException("VarInt too long");
+    }
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for(int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0) return value;
+        }
+        throw new IllegalArgumentException("VarLong too long");
+    }
+
+    static void writeVarInt(ByteBuffer buffer, int value) {
+        while((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void writeVarLong(ByteBuffer buffer, long value) {
+        while((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,321 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.impl.TelemetryProtocol.Kind;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import static org.tessa.prelaunch.TessaPreLaunch.logger;
+
+// aggregates telemetry samples sent by the server into windows of histograms and counters
+//
+// the network thread decodes payloads and offers each sample, packed into a long, to an SpscLongQueue,
+// so the receiving side never locks, allocates or waits for the client thread. the client thread calls drain()
+// every tick, which records the queued samples in per metric histograms with 1.6% precision and closes the window
+// once it is over. closed windows are passed to the listeners, appended to the dump file by a background thread
+// and kept as lastWindow(). samples that don't fit in the queue are dropped and counted.
+// only one thread may decode or offer samples at a time, the connection's network thread or a LocalTelemetryProducer.
+public final class TelemetrySink implements TelemetryProtocol.Receiver {
+
+    private static final TelemetrySink INSTANCE = new TelemetrySink();
+    // metric ids are below MAX_METRICS, values are kept in 48 bits
+    public static final int MAX_METRICS = 4096;
+    private static final int VALUE_BITS = 48;
+    private static final long VALUE_MIN = -(1L << (VALUE_BITS - 1));
+    private static final long VALUE_MAX = (1L << (VALUE_BITS - 1)) - 1;
+    private static final int DRAIN_LIMIT = 1 << 16;
+
+    private final SpscLongQueue queue = new SpscLongQueue(1 << 16);
+    private final AtomicReferenceArray<Definition> definitions = new AtomicReferenceArray<>(MAX_METRICS);
+    // written by the producer only
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong malformed = new AtomicLong();
+
+    // client thread state
+    private final long[] drained = new long[4096];
+    private final Metric[] metrics = new Metric[MAX_METRICS];
+    private volatile long windowNanos = Duration.ofSeconds(10).toNanos();
+    private long windowStart = System.nanoTime();
+    private long windowStartMillis = System.currentTimeMillis();
+    private long windowDropped;
+    private long windowMalformed;
+    private volatile Window lastWindow;
+    private final List<Consumer<Window>> listeners = new CopyOnWriteArrayList<>();
+    private volatile File dumpFile;
+    private ExecutorService dumpExecutor;
+
+    private TelemetrySink() {}
+
+    public static TelemetrySink get() {
+        return INSTANCE;
+    }
+
+    private record Definition(String name, Kind kind) {}
+
+    // producer side
+
+    // decodes a payload, returns false and counts it if it is malformed, samples decoded before the error are kept
+    public boolean decode(ByteBuffer payload) {
+        try {
+            TelemetryProtocol.decode(payload, this);
+            return true;
+        } catch (IllegalArgumentException e) {
+            if(this.malformed.getAndIncrement() == 0) logger.warn("TelemetrySink::decode malformed telemetry payload, further ones are only counted", e);
+            return false;
+        }
+    }
+
+    @Override
+    public void define(int id, String name, Kind kind) {
+        if(id < 0 || id >= MAX_METRICS) throw new IllegalArgumentException("Telemetry metric id out of range " + id);
+        this.definitions.set(id, new Definition(name, kind));
+    }
+
+    @Override
+    public void sample(int id, long value) {
+        if(id < 0 || id >= MAX_METRICS) throw new IllegalArgumentException("Telemetry metric id out of range " + id);
+        long clamped = Math.max(VALUE_MIN, Math.min(VALUE_MAX, value));
+        this.received.lazySet(this.received.get() + 1);
+        if(!this.queue.offer((long) id << VALUE_BITS | (clamped & ((1L << VALUE_BITS) - 1)))) this.dropped.lazySet(this.dropped.get() + 1);
+    }
+
+    // consumer side, the client thread
+
+    // records the queued samples and closes the window if it is over, returns the number of samples recorded
+    public int drain() {
+        int total = 0;
+        int count;
+        while(total < DRAIN_LIMIT && (count = this.queue.drain(this.drained, 0)) > 0) {
+            for(int i = 0; i < count; i++) {
+                long packed = this.drained[i];
+                int id = (int) (packed >>> VALUE_BITS);
+                long value = packed << (64 - VALUE_BITS) >> (64 - VALUE_BITS);
+                Metric metric = this.metrics[id];
+                if(metric == null) metric = this.metrics[id] = new Metric();
+                metric.record(value);
+            }
+            total += count;
+        }
+        long now = System.nanoTime();
+        if(now - this.windowStart >= this.windowNanos) closeWindow(now);
+        return total;
+    }
+
+    private void closeWindow(long now) {
+        long durationMillis = Math.max(1, (now - this.windowStart) / 1_000_000);
+        long dropped = this.dropped.get();
+        long malformed = this.malformed.get();
+        List<Summary> summaries = new ArrayList<>();
+        for(int id = 0; id < MAX_METRICS; id++) {
+            Metric metric = this.metrics[id];
+            if(metric == null || metric.count == 0) continue;
+            Definition definition = this.definitions.get(id);
+            String name = definition == null ? "metric-" + id : definition.name();
+            Kind kind = definition == null ? Kind.GAUGE : definition.kind();
+            summaries.add(metric.summary(name, kind, durationMillis));
+            metric.reset();
+        }
+        Window window = new Window(this.windowStartMillis, durationMillis, List.copyOf(summaries), dropped - this.windowDropped, malformed - this.windowMalformed);
+        this.windowStart = now;
+        this.windowStartMillis += durationMillis;
+        this.windowDropped = dropped;
+        this.windowMalformed = malformed;
+        if(summaries.isEmpty() && window.dropped() == 0 && window.malformed() == 0) return;
+        this.lastWindow = window;
+        for(Consumer<Window> listener : this.listeners) listener.accept(window);
+        File dumpFile = this.dumpFile;
+        if(dumpFile != null) append(dumpFile, window);
+    }
+
+    public TelemetrySink window(Duration window) {
+        this.windowNanos = Math.max(1, window.toNanos());
+        return this;
+    }
+
+    public TelemetrySink onWindow(Consumer<Window> listener) {
+        this.listeners.add(listener);
+        return this;
+    }
+
+    // the last closed window with samples, null before the first one
+    public Window lastWindow() {
+        return this.lastWindow;
+    }
+
+    // appends every closed window to file as tab separated values, null stops dumping
+    public synchronized TelemetrySink dumpTo(File file) {
+        this.dumpFile = file;
+        if(file != null && this.dumpExecutor == null) {
+            this.dumpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Tessa Telemetry Dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this;
+    }
+
+    // appends the last window to file now, returns the file or null on exception
+    public File dump(File file) {
+        Window window = this.lastWindow;
+        if(window == null) return file;
+        return write(file, window);
+    }
+
+    private synchronized void append(File file, Window window) {
+        this.dumpExecutor.execute(() -> write(file, window));
+    }
+
+    private static File write(File file, Window window) {
+        boolean header = !file.exists() || file.length() == 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            if(header) writer.write(Summary.HEADER + "\n");
+            for(Summary summary : window.metrics()) writer.write(window.startMillis() + "\t" + window.durationMillis() + "\t" + summary.tsv() + "\n");
+            return file;
+        } catch (IOException e) {
+            logger.error("TelemetrySink::write {}", file.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    public long received() {
+        return this.received.get();
+    }
+
+    public long dropped() {
+        return this.dropped.get();
+    }
+
+    public long malformed() {
+        return this.malformed.get();
+    }
+
+    public int queued() {
+        return this.queue.size();
+    }
+
+    // one closed window: the metrics that had samples, and the samples dropped and payloads malformed during it
+    public record Window(long startMillis, long durationMillis, List<Summary> metrics, long dropped, long malformed) {}
+
+    // counters report the sum and rate per second, gauges and timers the distribution of their samples
+    public record Summary(String name, Kind kind, long count, long sum, long min, long max, long p50, long p90, long p99, long p999, double ratePerSecond) {
+
+        static final String HEADER = "start_ms\twindow_ms\tmetric\tkind\tcount\tsum\tmin\tp50\tp90\tp99\tp999\tmax\trate_per_s";
+
+        public double mean() {
+            return this.count == 0 ? 0 : (double) this.sum / this.count;
+        }
+
+        String tsv() {
+            return this.name + "\t" + this.kind + "\t" + this.count + "\t" + this.sum + "\t" + this.min + "\t" + this.p50 + "\t" + this.p90 + "\t" + this.p99 + "\t" + this.p999 + "\t" + this.max + "\t" + String.format("%.2f", this.ratePerSecond);
+        }
+
+        @Override
+        public String toString() {
+            if(this.kind == Kind.COUNTER) return String.format("%s %d (%.1f/s)", this.name, this.sum, this.ratePerSecond);
+            return String.format("%s n=%d mean=%.1f p50=%d p99=%d max=%d", this.name, this.count, mean(), this.p50, this.p99, this.max);
+        }
+    }
+
+    // samples of one metric in the current window, client thread only
+    private static final class Metric {
+
+        private final Histogram histogram = new Histogram();
+        private long count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+
+        void record(long value) {
+            this.histogram.record(value);
+            this.count++;
+            this.sum += value;
+            if(value < this.min) this.min = value;
+            if(value > this.max) this.max = value;
+        }
+
+        Summary summary(String name, Kind kind, long durationMillis) {
+            return new Summary(name, kind, this.count, this.sum, this.min, this.max,
+                    clamp(this.histogram.percentile(0.50)), clamp(this.histogram.percentile(0.90)),
+                    clamp(this.histogram.percentile(0.99)), clamp(this.histogram.percentile(0.999)),
+                    this.sum * 1000.0 / durationMillis);
+        }
+
+        // percentiles are bucket bounds, never report one outside the samples
+        private long clamp(long value) {
+            return Math.max(this.min, Math.min(this.max, value));
+        }
+
+        void reset() {
+            this.histogram.reset();
+            this.count = 0;
+            this.sum = 0;
+            this.min = Long.MAX_VALUE;
+            this.max = Long.MIN_VALUE;
+        }
+    }
+
+    // log linear buckets in the way of HdrHistogram: values below 128 exactly, above that 64 buckets per power of two,
+    // so every bucket is within 1.6% of the values in it. negative values count as 0.
+    static final class Histogram {
+
+        private static final int SUB_BITS = 6;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private final long[] counts = new long[(64 - SUB_BITS) * SUB_COUNT + SUB_COUNT];
+        private long total;
+        // highest bucket used, resets only clear up to it
+        private int highest;
+
+        static int index(long value) {
+            if(value < 2 * SUB_COUNT) return (int) Math.max(value, 0);
+            int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS - 1;
+            return (shift + 1) * SUB_COUNT + (int) (value >>> shift) - SUB_COUNT;
+        }
+
+        // the highest value that falls in bucket index
+        static long upperBound(int index) {
+            if(index < 2 * SUB_COUNT) return index;
+            int shift = index / SUB_COUNT - 1;
+            long sub = index % SUB_COUNT + SUB_COUNT;
+            return ((sub + 1) << shift) - 1;
+        }
+
+        void record(long value) {
+            int index = index(value);
+            this.counts[index]++;
+            this.total++;
+            if(index > this.highest) this.highest = index;
+        }
+
+        // upper bound of the bucket holding the percentile, 0 if nothing was recorded
+        long percentile(double percentile) {
+            if(this.total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile * this.total));
+            long seen = 0;
+            for(int i = 0; i <= this.highest; i++) {
+                seen += this.counts[i];
+                if(seen >= rank) return upperBound(i);
+            }
+            return upperBound(this.highest);
+        }
+
+        void reset() {
+            Arrays.fill(this.counts, 0, this.highest + 1, 0L);
+            this.total = 0;
+            this.highest = 0;
+        }
+    }
+}
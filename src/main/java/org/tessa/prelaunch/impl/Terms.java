@@ -0,0 +1,50 @@
+package org.tessa.prelaunch.impl;
+import java.util.function.Predicate;
+
+// backing storage for the terms of an AbstractSequence
+// implementations are not thread safe, the owning sequence serializes access
+// indices are always in range, the owning sequence does the bounds checking and gap filling
+interface Terms<T> {
+
+    int size();
+
+    T get(int index);
+
+    void set(int index, T value);
+
+    // append value at the end
+    void add(T value);
+
+    // append terms [from, until) of source at the end
+    void addAll(Terms<T> source, int from, int until);
+
+    // insert count copies of value at index, later terms are shifted right
+    void insert(int index, int count, T value);
+
+    // overwrite terms [from, until) with value
+    void fill(int from, int until, T value);
+
+    // remove terms [from, until), later terms are shifted left
+    void remove(int from, int until);
+
+    // remove every term matching filter, returns the number of removed terms
+    int removeIf(Predicate<? super T> filter);
+
+    void clear();
+
+    // exclusive end of the run of equal terms starting at or containing index
+    int runEnd(int index);
+
+    // true if both storages hold equal terms at every index
+    boolean contentEquals(Terms<T> other);
+
+    Terms<T> copy();
+
+    // a new empty storage of the same kind
+    Terms<T> empty();
+
+    // an unchanging view of the current terms for unsynchronized readers and sequence views
+    // later edits of this storage must not be visible through the snapshot
+    // storages share their arrays with it until the next edit before its end instead of copying them
+    Terms<T> snapshot();
+}
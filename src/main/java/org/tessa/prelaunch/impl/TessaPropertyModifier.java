@@ -2,15 +2,50 @@ package org.tessa.prelaunch.impl;
 import org.tessa.prelaunch.api.PropertyModifier;
 import static org.tessa.prelaunch.TessaPreLaunch.logger;
 import net.fabricmc.loader.api.FabricLoader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
 import java.util.Properties;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// writes go to a temporary file next to the properties file which then replaces it with an atomic rename,
+// so a crash never leaves the file half written.
+// between begin() and commit() writes are deferred and the file is written once at the outermost commit.
+// after writeBehind(delay) writes are coalesced and done by a background thread at most delay milliseconds
+// after the first unwritten change, pending writes are flushed when the JVM exits.
+// typed getters parse a value once and return the cached result until the value changes.
+// reload() merges the file into the values, keys changed here and not written yet keep their local value.
 public class TessaPropertyModifier implements PropertyModifier {
     private final Properties properties;
     private final File propertiesFile;
+    private final ConcurrentHashMap<String, Parsed> parsed = new ConcurrentHashMap<>();
+    // modification time and size of the file when it was last read or written, reload() skips files that still match
+    private volatile Stamp stamp;
+    // keys set or removed since the last write, reload() keeps their local values
+    private final Set<String> unwritten = ConcurrentHashMap.newKeySet();
+    // serializes file writes, so an older snapshot never replaces a newer one
+    private final Object writeLock = new Object();
+    // guarded by this
+    private int batchDepth;
+    private boolean pending;
+    private boolean scheduled;
+    private long writeBehindMillis;
     private static final String ERROR_TEMPLATE = "PropertyModifier Error. State -> Properties: %s \n Properties File: %s \n File Exists? : %s \n Method: %s";
     public TessaPropertyModifier() {
         this.properties = new Properties();
@@ -24,6 +59,13 @@ public class TessaPropertyModifier implements PropertyModifier {
         readProperties();
     }
 
+    // properties file tessa.fileName.properties in configFolder instead of the game config directory
+    public TessaPropertyModifier(File configFolder, String fileName) {
+        this.properties = new Properties();
+        this.propertiesFile = makeIfNotExists(configFolder, "tessa." + fileName + ".properties");
+        readProperties();
+    }
+
     private String propertiesAsString() {
         StringBuilder builder = new StringBuilder();
         properties.forEach((k, v) -> builder.append(k).append(":").append(v).append("\n"));
@@ -40,21 +82,107 @@ public class TessaPropertyModifier implements PropertyModifier {
     private void readProperties() {
         try (var reader = Files.newBufferedReader(this.propertiesFile.toPath())) {
             properties.load(reader);
+            this.stamp = stamp();
         } catch (IOException e) {
             logError("readProperties", e);
         }
     }
 
+    private Stamp stamp() throws IOException {
+        Path path = this.propertiesFile.toPath();
+        return new Stamp(Files.getLastModifiedTime(path).toMillis(), Files.size(path));
+    }
+
+    File file() {
+        return this.propertiesFile;
+    }
+
+    // rereads the file if it changed since it was last read or written, replacing the values with the ones in the file
+    // except for keys changed since the last write, a pending write then stores the merged values
+    void reload() {
+        synchronized(this.writeLock) {
+            Properties loaded = new Properties();
+            try {
+                Stamp stamp = stamp();
+                if(stamp.equals(this.stamp)) return;
+                try (var reader = Files.newBufferedReader(this.propertiesFile.toPath())) {
+                    loaded.load(reader);
+                }
+                this.stamp = stamp;
+            } catch (IOException e) {
+                logError("reload", e);
+                return;
+            }
+            // readers see either the old or the new value of a key, never a missing one
+            Set<String> local = Set.copyOf(this.unwritten);
+            loaded.forEach((key, value) -> {
+                if(!local.contains(key)) properties.put(key, value);
+            });
+            properties.keySet().removeIf(key -> !loaded.containsKey(key) && !local.contains(key));
+            parsed.keySet().removeIf(key -> !properties.containsKey(key));
+        }
+        logger.info("TessaPropertyModifier::reload {}", this.propertiesFile.getAbsolutePath());
+    }
+
+    // callers hold the write lock
     private void writeProperties() {
-        try (var writer = Files.newBufferedWriter(this.propertiesFile.toPath())) {
-            properties.store(writer, "Tessa Properties");
+        Path target = this.propertiesFile.toPath().toAbsolutePath();
+        Path temporary = null;
+        // keys changed from here on are written by the next write
+        Set<String> written = Set.copyOf(this.unwritten);
+        this.unwritten.removeAll(written);
+        try {
+            temporary = Files.createTempFile(target.getParent(), this.propertiesFile.getName(), ".tmp");
+            try (var out = new FileOutputStream(temporary.toFile());
+                 var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                properties.store(writer, "Tessa Properties");
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            this.stamp = stamp();
         } catch (IOException e) {
             logError("writeProperties", e);
+            this.unwritten.addAll(written);
+            try {
+                if(temporary != null) Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {}
         }
     }
 
+    // called by every method that asked to write, defers the write inside a batch and with write behind
+    private void requestWrite() {
+        synchronized(this) {
+            this.pending = true;
+            if(this.batchDepth > 0) return;
+            if(this.writeBehindMillis > 0) {
+                schedule();
+                return;
+            }
+        }
+        flush();
+    }
+
+    // guarded by this
+    private void schedule() {
+        if(this.scheduled) return;
+        this.scheduled = true;
+        Writer.SCHEDULER.schedule(() -> {
+            synchronized(this) {
+                this.scheduled = false;
+            }
+            flush();
+        }, this.writeBehindMillis, TimeUnit.MILLISECONDS);
+    }
+
     private File makeIfNotExists(String fileName) {
-        File configFolder = FabricLoader.getInstance().getConfigDir().toFile();
+        return makeIfNotExists(FabricLoader.getInstance().getConfigDir().toFile(), fileName);
+    }
+
+    private File makeIfNotExists(File configFolder, String fileName) {
         configFolder.mkdirs();
         File file = new File(configFolder.getAbsolutePath(), fileName);
         if (!file.exists()) {
@@ -63,9 +191,9 @@ public class TessaPropertyModifier implements PropertyModifier {
             } catch (Exception e) {
                 logger.error(String.format(ERROR_TEMPLATE,
                         propertiesAsString(),
-                        this.propertiesFile.getAbsolutePath(),
-                        this.propertiesFile.exists(),
-                        "makeIfNotExists"));
+                        file.getAbsolutePath(),
+                        file.exists(),
+                        "makeIfNotExists"), e);
             }
         }
         return file;
@@ -87,10 +215,97 @@ public class TessaPropertyModifier implements PropertyModifier {
         return properties.getProperty(key, defaultValue);
     }
 
+    @Override
+    public int getInt(String key, int defaultValue) {
+        Object value = parsed(key, ValueType.INT);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        Object value = parsed(key, ValueType.LONG);
+        return value == null ? defaultValue : (Long) value;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Object value = parsed(key, ValueType.BOOLEAN);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    @Override
+    public Duration getDuration(String key, Duration defaultValue) {
+        Object value = parsed(key, ValueType.DURATION);
+        return value == null ? defaultValue : (Duration) value;
+    }
+
+    // the parsed value of key, or null if it is missing, blank or can't be parsed as type
+    // the properties return the same String until a value changes, so the cache is checked by identity
+    private Object parsed(String key, ValueType type) {
+        String raw = properties.getProperty(key);
+        if(raw == null || raw.isBlank()) return null;
+        Parsed cached = this.parsed.get(key);
+        if(cached != null && cached.raw == raw && cached.type == type) return cached.value;
+        Object value;
+        try {
+            value = type.parse(raw.trim());
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            logger.error("TessaPropertyModifier::parsed {}={} in {} is not a valid {}", key, raw, this.propertiesFile.getAbsolutePath(), type, e);
+            value = null;
+        }
+        this.parsed.put(key, new Parsed(raw, type, value));
+        return value;
+    }
+
+    // numbers without a unit are milliseconds, ISO-8601 durations like PT1M30S are accepted too
+    static Duration parseDuration(String value) {
+        if(value.startsWith("P") || value.startsWith("p") || value.startsWith("-P")) return Duration.parse(value);
+        int unit = value.length();
+        while(unit > 0 && Character.isLetter(value.charAt(unit - 1))) unit--;
+        long amount = Long.parseLong(value.substring(0, unit).trim());
+        return switch(value.substring(unit).toLowerCase(Locale.ROOT)) {
+            case "", "ms" -> Duration.ofMillis(amount);
+            case "ns" -> Duration.ofNanos(amount);
+            case "us" -> Duration.ofNanos(Math.multiplyExact(amount, 1000L));
+            case "s" -> Duration.ofSeconds(amount);
+            case "m", "min" -> Duration.ofMinutes(amount);
+            case "h" -> Duration.ofHours(amount);
+            case "d" -> Duration.ofDays(amount);
+            case "t" -> Duration.ofMillis(Math.multiplyExact(amount, 50L));
+            default -> throw new IllegalArgumentException("Unknown duration unit in " + value);
+        };
+    }
+
+    static boolean parseBoolean(String value) {
+        return switch(value.toLowerCase(Locale.ROOT)) {
+            case "true", "yes", "on", "1" -> true;
+            case "false", "no", "off", "0" -> false;
+            default -> throw new IllegalArgumentException("Not a boolean: " + value);
+        };
+    }
+
+    private enum ValueType {
+        INT, LONG, BOOLEAN, DURATION;
+
+        Object parse(String value) {
+            return switch(this) {
+                case INT -> Integer.parseInt(value);
+                case LONG -> Long.parseLong(value);
+                case BOOLEAN -> parseBoolean(value);
+                case DURATION -> parseDuration(value);
+            };
+        }
+    }
+
+    private record Parsed(String raw, ValueType type, Object value) {}
+
+    private record Stamp(long modified, long size) {}
+
     @Override
     public TessaPropertyModifier setProperty(String key, String value, boolean write) {
+        this.unwritten.add(key);
         properties.setProperty(key, value);
-        if(write) writeProperties();
+        if(write) requestWrite();
         return this;
     }
 
@@ -102,15 +317,84 @@ public class TessaPropertyModifier implements PropertyModifier {
 
     @Override
     public TessaPropertyModifier removeProperty(String key, boolean write) {
+        this.unwritten.add(key);
         properties.remove(key);
-        if(write) writeProperties();
+        if(write) requestWrite();
         return this;
     }
 
     @Override
     public TessaPropertyModifier write() {
-        writeProperties();
+        synchronized(this.writeLock) {
+            synchronized(this) {
+                this.pending = false;
+            }
+            writeProperties();
+        }
+        return this;
+    }
+
+    @Override
+    public TessaPropertyModifier begin() {
+        synchronized(this) {
+            this.batchDepth++;
+        }
+        return this;
+    }
+
+    @Override
+    public TessaPropertyModifier commit() {
+        synchronized(this) {
+            if(this.batchDepth == 0) {
+                logger.error("TessaPropertyModifier::commit without begin for {}", this.propertiesFile.getAbsolutePath());
+                return this;
+            }
+            if(--this.batchDepth > 0 || !this.pending) return this;
+            if(this.writeBehindMillis > 0) {
+                schedule();
+                return this;
+            }
+        }
+        return flush();
+    }
+
+    @Override
+    public TessaPropertyModifier flush() {
+        synchronized(this.writeLock) {
+            synchronized(this) {
+                if(!this.pending) return this;
+                this.pending = false;
+            }
+            writeProperties();
+        }
         return this;
     }
 
+    @Override
+    public TessaPropertyModifier writeBehind(long delayMillis) {
+        synchronized(this) {
+            this.writeBehindMillis = Math.max(0, delayMillis);
+        }
+        if(delayMillis > 0) Writer.MODIFIERS.add(this);
+        else {
+            Writer.MODIFIERS.remove(this);
+            flush();
+        }
+        return this;
+    }
+
+    // one daemon thread writes for every modifier, the shutdown hook writes what it didn't get to
+    private static final class Writer {
+        static final Set<TessaPropertyModifier> MODIFIERS = ConcurrentHashMap.newKeySet();
+        static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Tessa Property Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> MODIFIERS.forEach(TessaPropertyModifier::flush), "Tessa Property Flush"));
+        }
+    }
+
 }
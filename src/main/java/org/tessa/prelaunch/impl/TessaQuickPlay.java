@@ -5,10 +5,17 @@ import org.tessa.prelaunch.api.PropertyModifier;
 
 public class TessaQuickPlay implements QuickPlay {
 
+    private final String instanceId;
     private final PropertyModifier properties;
 
+    // the quick play properties of this instance, see LaunchProfile
     public TessaQuickPlay() {
-        properties = PropertyModifier.modify("quickplay");
+        this(LaunchProfile.instanceId());
+    }
+
+    public TessaQuickPlay(String instanceId) {
+        this.instanceId = instanceId;
+        properties = PropertyModifier.modify(LaunchProfile.namespace("quickplay", instanceId));
     }
 
 
@@ -18,6 +25,13 @@ public class TessaQuickPlay implements QuickPlay {
         return this;
     }
 
+    @Override
+    public QuickPlay setDefaultServerAddress(String serverAddress) {
+        // an address in the shared quickplay properties is already the instance's default
+        if(LaunchProfile.getProperty("quickplay", instanceId, "server_address", null) == null) properties.setProperty("server_address", serverAddress, true);
+        return this;
+    }
+
     @Override
     public QuickPlay unsetServerAddress() {
         properties.unsetProperty("server_address", true);
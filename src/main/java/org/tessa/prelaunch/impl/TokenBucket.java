@@ -0,0 +1,63 @@
+package org.tessa.prelaunch.impl;
+
+// paces something to rate tokens per second with bursts of up to burst tokens
+//
+// the bucket refills continuously from System.nanoTime. an amount larger than burst is let through once the bucket
+// is full and leaves it in debt, so it is paced by the rate instead of blocking forever.
+// a rate of 0 or less is unlimited. not thread safe, use it from one thread.
+public final class TokenBucket {
+
+    private double rate;
+    private double burst;
+    private double tokens;
+    private long last = System.nanoTime();
+
+    public TokenBucket(double rate, double burst) {
+        rate(rate, burst);
+        this.tokens = this.burst;
+    }
+
+    // changes the rate, keeping the tokens already in the bucket up to the new burst
+    public TokenBucket rate(double rate, double burst) {
+        if(rate > 0 && burst <= 0) throw new IllegalArgumentException("burst must be positive");
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = Math.min(this.tokens, burst);
+        return this;
+    }
+
+    public double rate() {
+        return this.rate;
+    }
+
+    public boolean unlimited() {
+        return this.rate <= 0;
+    }
+
+    // nanoseconds until amount tokens can be taken, 0 if they can be now
+    public long delay(double amount, long now) {
+        if(unlimited()) return 0;
+        refill(now);
+        double needed = Math.min(amount, this.burst);
+        if(this.tokens >= needed) return 0;
+        return Math.max(1, (long) Math.ceil((needed - this.tokens) / this.rate * 1e9));
+    }
+
+    // takes amount tokens, call after delay returned 0
+    public void take(double amount) {
+        if(!unlimited()) this.tokens -= amount;
+    }
+
+    // takes amount tokens if they can be taken now
+    public boolean tryTake(double amount, long now) {
+        if(delay(amount, now) > 0) return false;
+        take(amount);
+        return true;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - this.last;
+        this.last = now;
+        if(elapsed > 0) this.tokens = Math.min(this.burst, this.tokens + elapsed * this.rate / 1e9);
+    }
+}
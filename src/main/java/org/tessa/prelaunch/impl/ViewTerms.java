@@ -0,0 +1,306 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+// read only terms composed from other terms without copying them, the storage behind ReadOnlySequence
+// the composed terms are snapshots that never change, so views can be read from any thread without locking
+// runs reported by runEnd may be split where composed terms meet, they are never longer than the real run
+abstract class ViewTerms<T> implements Terms<T> {
+
+    // a view over the terms of sequence as they are now
+    // sequences backed by an AbstractSequence share a snapshot of its storage, nothing is copied until the sequence
+    // edits terms the view can see, others are read through at()
+    @SuppressWarnings("unchecked")
+    static <T extends SafeValue> Terms<T> of(Sequence<T> sequence) {
+        if(sequence instanceof ReadOnlySequence<T> readOnly) return readOnly.terms();
+        if(sequence instanceof AbstractSequence<T> abstractSequence) return abstractSequence.snapshotTerms();
+        return new Adapted<>(sequence);
+    }
+
+    static <T> Terms<T> slice(Terms<T> source, int from, int until) {
+        if(from == 0 && until == source.size()) return source;
+        if(source instanceof Slice<T> slice) return new Slice<>(slice.source, slice.offset + from, until - from);
+        return new Slice<>(source, from, until - from);
+    }
+
+    static <T> Terms<T> concat(List<Terms<T>> parts) {
+        List<Terms<T>> flattened = new ArrayList<>(parts.size());
+        for(Terms<T> part : parts) {
+            if(part instanceof Concat<T> concat) {
+                for(Terms<T> inner : concat.parts) flattened.add(inner);
+            } else if(part.size() > 0) {
+                flattened.add(part);
+            }
+        }
+        return flattened.size() == 1 ? flattened.get(0) : new Concat<>(flattened);
+    }
+
+    static <T> Terms<T> repeat(Terms<T> source, int times) {
+        if(times == 1) return source;
+        if((long) source.size() * times > Integer.MAX_VALUE) throw new IllegalArgumentException("Repeated view longer than Integer.MAX_VALUE ticks");
+        return new Repeat<>(source, times);
+    }
+
+    static <T> Terms<T> reversed(Terms<T> source) {
+        if(source instanceof Reversed<T> reversed) return reversed.source;
+        return new Reversed<>(source);
+    }
+
+    // appends terms [from, until) of source to target, every composed storage is handed to the addAll fast path of target
+    static <T> void copy(Terms<T> source, Terms<T> target, int from, int until) {
+        if(until <= from) return;
+        if(source instanceof ViewTerms<T> view) view.copyTo(target, from, until);
+        else target.addAll(source, from, until);
+    }
+
+    void copyTo(Terms<T> target, int from, int until) {
+        target.addAll(this, from, until);
+    }
+
+    // scans forward for the end of the run of equal terms containing index
+    int scanRunEnd(int index) {
+        T value = get(index);
+        int end = index + 1;
+        while(end < size() && Objects.equals(get(end), value)) end++;
+        return end;
+    }
+
+    public int runEnd(int index) {
+        return scanRunEnd(index);
+    }
+
+    public boolean contentEquals(Terms<T> other) {
+        if(size() != other.size()) return false;
+        for(int i = 0; i < size(); ) {
+            int end = Math.min(runEnd(i), size());
+            T value = get(i);
+            for(; i < end; i++) {
+                if(!Objects.equals(value, other.get(i))) return false;
+            }
+        }
+        return true;
+    }
+
+    // views never change, so they are their own copies and snapshots
+    public Terms<T> copy() {
+        return this;
+    }
+
+    public Terms<T> snapshot() {
+        return this;
+    }
+
+    public Terms<T> empty() {
+        return new ListTerms<>();
+    }
+
+    public void set(int index, T value) {
+        throw readOnly();
+    }
+
+    public void add(T value) {
+        throw readOnly();
+    }
+
+    public void addAll(Terms<T> source, int from, int until) {
+        throw readOnly();
+    }
+
+    public void insert(int index, int count, T value) {
+        throw readOnly();
+    }
+
+    public void fill(int from, int until, T value) {
+        throw readOnly();
+    }
+
+    public void remove(int from, int until) {
+        throw readOnly();
+    }
+
+    public int removeIf(Predicate<? super T> filter) {
+        throw readOnly();
+    }
+
+    public void clear() {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Sequence views are read only");
+    }
+
+    // terms [offset, offset + size) of source
+    private static final class Slice<T> extends ViewTerms<T> {
+
+        private final Terms<T> source;
+        private final int offset;
+        private final int size;
+
+        Slice(Terms<T> source, int offset, int size) {
+            this.source = source;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public T get(int index) {
+            return this.source.get(this.offset + index);
+        }
+
+        public int runEnd(int index) {
+            return Math.min(this.source.runEnd(this.offset + index) - this.offset, this.size);
+        }
+
+        void copyTo(Terms<T> target, int from, int until) {
+            copy(this.source, target, this.offset + from, this.offset + until);
+        }
+    }
+
+    // the terms of every part one after the other, a tick is found by binary search over the part ends
+    private static final class Concat<T> extends ViewTerms<T> {
+
+        private final Terms<T>[] parts;
+        // cumulative exclusive end of every part
+        private final int[] ends;
+        // last part found, sequential reads stay O(1), racing readers at worst search again
+        private int cursor;
+
+        Concat(List<Terms<T>> parts) {
+            // java can't create a Terms<T>[], the raw array only ever holds the Terms<T> of parts
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Terms<T>[] array = parts.toArray(new Terms[0]);
+            this.parts = array;
+            this.ends = new int[this.parts.length];
+            long end = 0;
+            for(int i = 0; i < this.parts.length; i++) {
+                end += this.parts[i].size();
+                if(end > Integer.MAX_VALUE) throw new IllegalArgumentException("Concatenated view longer than Integer.MAX_VALUE ticks");
+                this.ends[i] = (int) end;
+            }
+        }
+
+        public int size() {
+            return this.ends.length == 0 ? 0 : this.ends[this.ends.length - 1];
+        }
+
+        private int start(int part) {
+            return part == 0 ? 0 : this.ends[part - 1];
+        }
+
+        // index of the part holding tick, tick must be in [0, size())
+        private int findPart(int tick) {
+            int part = this.cursor;
+            if(tick < this.ends[part] && tick >= start(part)) return part;
+            int lo = 0;
+            int hi = this.ends.length - 1;
+            while(lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if(this.ends[mid] > tick) hi = mid;
+                else lo = mid + 1;
+            }
+            this.cursor = lo;
+            return lo;
+        }
+
+        public T get(int index) {
+            int part = findPart(index);
+            return this.parts[part].get(index - start(part));
+        }
+
+        public int runEnd(int index) {
+            int part = findPart(index);
+            int start = start(part);
+            return start + this.parts[part].runEnd(index - start);
+        }
+
+        void copyTo(Terms<T> target, int from, int until) {
+            for(int part = findPart(from); part < this.parts.length && start(part) < until; part++) {
+                int start = start(part);
+                copy(this.parts[part], target, Math.max(from, start) - start, Math.min(until, this.ends[part]) - start);
+            }
+        }
+    }
+
+    // the terms of source, times times over
+    private static final class Repeat<T> extends ViewTerms<T> {
+
+        private final Terms<T> source;
+        private final int length;
+        private final int times;
+
+        Repeat(Terms<T> source, int times) {
+            this.source = source;
+            this.length = source.size();
+            this.times = times;
+        }
+
+        public int size() {
+            return this.length * this.times;
+        }
+
+        public T get(int index) {
+            return this.source.get(index % this.length);
+        }
+
+        public int runEnd(int index) {
+            int offset = index % this.length;
+            return index - offset + this.source.runEnd(offset);
+        }
+
+        void copyTo(Terms<T> target, int from, int until) {
+            while(from < until) {
+                int offset = from % this.length;
+                int end = Math.min(until - from, this.length - offset);
+                copy(this.source, target, offset, offset + end);
+                from += end;
+            }
+        }
+    }
+
+    // the terms of source last to first
+    private static final class Reversed<T> extends ViewTerms<T> {
+
+        private final Terms<T> source;
+
+        Reversed(Terms<T> source) {
+            this.source = source;
+        }
+
+        public int size() {
+            return this.source.size();
+        }
+
+        public T get(int index) {
+            return this.source.get(this.source.size() - 1 - index);
+        }
+    }
+
+    // the terms of a sequence that doesn't expose its storage, read through at()
+    // the length is fixed when the view is made, later edits of the sequence are seen by the view
+    private static final class Adapted<T extends SafeValue> extends ViewTerms<T> {
+
+        private final Sequence<T> sequence;
+        private final int size;
+
+        Adapted(Sequence<T> sequence) {
+            this.sequence = sequence;
+            this.size = sequence.tick() + 1;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public T get(int index) {
+            return this.sequence.at(index);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.tessa.prelaunch.impl;
+import org.tessa.prelaunch.api.Walkability;
+import java.util.BitSet;
+
+// a box of solid and passable blocks for testing path finding without a running client
+// blocks outside the box are neither passable nor solid, so paths never leave it
+public final class WalkabilityGrid implements Walkability {
+
+    private final int minX;
+    private final int minY;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+    private final BitSet solid;
+
+    // a box of sizeX * sizeY * sizeZ passable blocks starting at minX, minY, minZ
+    public WalkabilityGrid(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+        if(sizeX <= 0 || sizeY <= 0 || sizeZ <= 0 || (long) sizeX * sizeY * sizeZ > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid grid size");
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.solid = new BitSet(sizeX * sizeY * sizeZ);
+    }
+
+    // -1 outside the box
+    private int index(int x, int y, int z) {
+        x -= this.minX;
+        y -= this.minY;
+        z -= this.minZ;
+        if(x < 0 || y < 0 || z < 0 || x >= this.sizeX || y >= this.sizeY || z >= this.sizeZ) return -1;
+        return (y * this.sizeZ + z) * this.sizeX + x;
+    }
+
+    public boolean passable(int x, int y, int z) {
+        int index = index(x, y, z);
+        return index >= 0 && !this.solid.get(index);
+    }
+
+    public boolean solid(int x, int y, int z) {
+        int index = index(x, y, z);
+        return index >= 0 && this.solid.get(index);
+    }
+
+    // blocks outside the box are ignored
+    public WalkabilityGrid set(int x, int y, int z, boolean solid) {
+        int index = index(x, y, z);
+        if(index >= 0) this.solid.set(index, solid);
+        return this;
+    }
+
+    // sets the blocks of the box between both corners, inclusive
+    public WalkabilityGrid fill(int x0, int y0, int z0, int x1, int y1, int z1, boolean solid) {
+        for(int y = Math.min(y0, y1); y <= Math.max(y0, y1); y++) {
+            for(int z = Math.min(z0, z1); z <= Math.max(z0, z1); z++) {
+                for(int x = Math.min(x0, x1); x <= Math.max(x0, x1); x++) set(x, y, z, solid);
+            }
+        }
+        return this;
+    }
+
+    // makes layer y solid across the whole box
+    public WalkabilityGrid floor(int y) {
+        return fill(this.minX, y, this.minZ, this.minX + this.sizeX - 1, y, this.minZ + this.sizeZ - 1, true);
+    }
+}
@@ -0,0 +1,85 @@
+package org.tessa.prelaunch.impl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// round trips and corrupt files for MappedSequence
+class MappedSequenceTest {
+
+    @TempDir
+    Path dir;
+
+    private static void assertSameTerms(Sequence<Move> expected, Sequence<Move> actual) {
+        assertEquals(expected.tick(), actual.tick());
+        for(int i = 0; i <= expected.tick(); i++) assertEquals(expected.at(i), actual.at(i), "tick " + i);
+    }
+
+    private String write(String name, MoveSequence sequence) {
+        String filename = this.dir.resolve(name).toString();
+        assertNotNull(sequence.writeBinary(filename));
+        return filename;
+    }
+
+    @Test
+    void ordinalsRoundTrip() {
+        MoveSequence written = SequenceFileTest.randomMoves("ordinals", 10_000, 1, 8);
+        MappedSequence<Move> mapped = MappedSequence.open(write("ordinals.tseq", written));
+        assertNotNull(mapped);
+        assertEquals("ordinals", mapped.name());
+        assertSameTerms(written, mapped);
+        assertEquals(written, mapped.materialize("ordinals"));
+    }
+
+    @Test
+    void runsRoundTrip() {
+        MoveSequence written = SequenceFileTest.randomMoves("runs", 100_000, 200, 9);
+        MappedSequence<Move> mapped = MappedSequence.open(write("runs.tseq", written));
+        assertNotNull(mapped);
+        assertSameTerms(written, mapped);
+        // reads out of order go through the run search rather than the cursor
+        for(int i = 99_999; i >= 0; i -= 997) assertEquals(written.at(i), mapped.at(i));
+        assertEquals(written, mapped.materialize("runs"));
+    }
+
+    @Test
+    void ordinalOutsideTheEnumIsRejected() throws IOException {
+        for(int meanRun : new int[] {1, 200}) {
+            String filename = write("corrupt" + meanRun + ".tseq", SequenceFileTest.randomMoves("corrupt", 10_000, meanRun, 10));
+            byte[] bytes = Files.readAllBytes(Path.of(filename));
+            bytes[bytes.length - 1] = (byte) Move.values().length;
+            Files.write(Path.of(filename), bytes);
+            assertNull(MappedSequence.open(filename));
+        }
+    }
+
+    @Test
+    void runEndsOutOfOrderAreRejected() throws IOException {
+        String filename = write("order.tseq", SequenceFileTest.randomMoves("order", 10_000, 200, 11));
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(Path.of(filename)));
+        SequenceFile.Header.read(bytes);
+        int ends = bytes.position() + Integer.BYTES;
+        // the second run ends where the first one does
+        bytes.putInt(ends + Integer.BYTES, bytes.getInt(ends));
+        Files.write(Path.of(filename), bytes.array());
+        assertNull(MappedSequence.open(filename));
+    }
+
+    @Test
+    void runsEndingShortOfTheTermsAreRejected() throws IOException {
+        String filename = write("short.tseq", SequenceFileTest.randomMoves("short", 10_000, 200, 12));
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(Path.of(filename)));
+        SequenceFile.Header.read(bytes);
+        int runs = bytes.getInt();
+        int last = bytes.position() + (runs - 1) * Integer.BYTES;
+        bytes.putInt(last, bytes.getInt(last) - 1);
+        Files.write(Path.of(filename), bytes.array());
+        assertNull(MappedSequence.open(filename));
+    }
+}
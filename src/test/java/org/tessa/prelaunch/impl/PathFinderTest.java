@@ -0,0 +1,156 @@
+package org.tessa.prelaunch.impl;
+import org.junit.jupiter.api.Test;
+import org.tessa.prelaunch.api.Walkability;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// PathFinder routes must be made of allowed steps and cost no more than a plain Dijkstra search over the same steps
+class PathFinderTest {
+
+    private static final double SQRT2 = Math.sqrt(2);
+    private static final int MAX_DROP = 3;
+
+    // the blocks reachable in one step from x, y, z and the cost of each, as the PathFinder comment describes them
+    private static Map<Long, Double> steps(Walkability walkability, long position) {
+        int x = PathFinder.x(position);
+        int y = PathFinder.y(position);
+        int z = PathFinder.z(position);
+        Map<Long, Double> steps = new HashMap<>();
+        for(int dx = -1; dx <= 1; dx++) {
+            for(int dz = -1; dz <= 1; dz++) {
+                int nx = x + dx;
+                int nz = z + dz;
+                if(dx != 0 && dz != 0) {
+                    if(walkability.standable(nx, y, nz) && walkability.standable(nx, y, z) && walkability.standable(x, y, nz)) steps.put(PathFinder.pack(nx, y, nz), SQRT2);
+                } else if(dx != 0 || dz != 0) {
+                    if(walkability.standable(nx, y, nz)) {
+                        steps.put(PathFinder.pack(nx, y, nz), 1.0);
+                    } else if(walkability.standable(nx, y + 1, nz) && walkability.passable(x, y + 2, z)) {
+                        steps.put(PathFinder.pack(nx, y + 1, nz), 2.0);
+                    } else if(walkability.passable(nx, y, nz) && walkability.passable(nx, y + 1, nz)) {
+                        for(int ny = y - 1; ny >= y - MAX_DROP && walkability.passable(nx, ny, nz); ny--) {
+                            if(!walkability.solid(nx, ny - 1, nz)) continue;
+                            if(walkability.passable(nx, ny + 1, nz)) steps.put(PathFinder.pack(nx, ny, nz), 1.0 + 0.2 * (y - ny));
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return steps;
+    }
+
+    private record Entry(long position, double cost) {}
+
+    // cheapest cost from start to goal, or -1 if goal can't be reached
+    private static double dijkstra(Walkability walkability, long start, long goal) {
+        Map<Long, Double> costs = new HashMap<>();
+        PriorityQueue<Entry> open = new PriorityQueue<>((a, b) -> Double.compare(a.cost(), b.cost()));
+        costs.put(start, 0.0);
+        open.add(new Entry(start, 0));
+        while(!open.isEmpty()) {
+            Entry entry = open.poll();
+            if(entry.cost() > costs.get(entry.position())) continue;
+            if(entry.position() == goal) return entry.cost();
+            for(Map.Entry<Long, Double> step : steps(walkability, entry.position()).entrySet()) {
+                double cost = entry.cost() + step.getValue();
+                Double known = costs.get(step.getKey());
+                if(known == null || cost < known) {
+                    costs.put(step.getKey(), cost);
+                    open.add(new Entry(step.getKey(), cost));
+                }
+            }
+        }
+        return -1;
+    }
+
+    // the cost of route, failing on a step the rules don't allow
+    private static double cost(Walkability walkability, long[] route) {
+        double cost = 0;
+        for(int i = 1; i < route.length; i++) {
+            Double step = steps(walkability, route[i - 1]).get(route[i]);
+            assertNotNull(step, "step " + i + " of the route is not allowed");
+            cost += step;
+        }
+        return cost;
+    }
+
+    // a floor at y 0 with columns of random height and some pillars, so routes walk, jump and drop
+    private static WalkabilityGrid terrain(Random random, int size) {
+        WalkabilityGrid grid = new WalkabilityGrid(0, 0, 0, size, 10, size).floor(0);
+        for(int x = 0; x < size; x++) {
+            for(int z = 0; z < size; z++) {
+                int height = random.nextInt(10) < 6 ? 0 : random.nextInt(5);
+                if(random.nextInt(12) == 0) height = 7;
+                if(height > 0) grid.fill(x, 1, z, x, height, z, true);
+            }
+        }
+        return grid;
+    }
+
+    private static List<Long> standable(WalkabilityGrid grid, int size) {
+        List<Long> standable = new ArrayList<>();
+        for(int x = 0; x < size; x++) {
+            for(int y = 1; y < 9; y++) {
+                for(int z = 0; z < size; z++) if(grid.standable(x, y, z)) standable.add(PathFinder.pack(x, y, z));
+            }
+        }
+        return standable;
+    }
+
+    @Test
+    void routesAreOptimalOnRandomTerrain() {
+        Random random = new Random(21);
+        int reached = 0;
+        for(int round = 0; round < 40; round++) {
+            int size = 12 + random.nextInt(12);
+            WalkabilityGrid grid = terrain(random, size);
+            List<Long> standable = standable(grid, size);
+            PathFinder finder = new PathFinder(grid);
+            for(int pair = 0; pair < 25; pair++) {
+                long start = standable.get(random.nextInt(standable.size()));
+                long goal = standable.get(random.nextInt(standable.size()));
+                long[] route = finder.find(PathFinder.x(start), PathFinder.y(start), PathFinder.z(start), PathFinder.x(goal), PathFinder.y(goal), PathFinder.z(goal));
+                double expected = dijkstra(grid, start, goal);
+                if(expected < 0) {
+                    assertNull(route);
+                    continue;
+                }
+                assertNotNull(route);
+                assertEquals(start, route[0]);
+                assertEquals(goal, route[route.length - 1]);
+                assertEquals(expected, cost(grid, route), 1e-3);
+                reached++;
+            }
+        }
+        // the terrain must leave enough pairs connected for the comparison to mean something
+        assertTrue(reached > 300, "only " + reached + " pairs were connected");
+    }
+
+    @Test
+    void routeAroundAWallIsOptimal() {
+        WalkabilityGrid grid = new WalkabilityGrid(0, 0, 0, 20, 5, 20).floor(0);
+        // a wall too high to jump with a gap at z 17
+        grid.fill(10, 1, 0, 10, 2, 16, true);
+        long[] route = new PathFinder(grid).find(2, 1, 2, 18, 1, 2);
+        assertNotNull(route);
+        assertEquals(dijkstra(grid, PathFinder.pack(2, 1, 2), PathFinder.pack(18, 1, 2)), cost(grid, route), 1e-3);
+        // with the gap closed the goal can't be reached
+        grid.fill(10, 1, 17, 10, 2, 19, true);
+        assertNull(new PathFinder(grid).find(2, 1, 2, 18, 1, 2));
+    }
+
+    @Test
+    void searchGivesUpAfterMaxNodes() {
+        WalkabilityGrid grid = new WalkabilityGrid(0, 0, 0, 64, 4, 64).floor(0);
+        PathFinder finder = new PathFinder(grid).maxNodes(10);
+        assertNull(finder.find(0, 1, 0, 63, 1, 63));
+        assertNotNull(finder.maxNodes(1 << 20).find(0, 1, 0, 63, 1, 63));
+    }
+}
@@ -0,0 +1,71 @@
+package org.tessa.prelaunch.impl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tessa.prelaunch.api.Move;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// scripts, legacy tick=value imports and the run storage ScriptCompiler hands to its sequences
+class ScriptCompilerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void legacyExportImports() {
+        MoveSequence written = SequenceFileTest.randomMoves("legacy", 20_000, 5, 25);
+        Path file = this.dir.resolve("legacy.txt");
+        assertNotNull(written.write(file.toString()));
+        RleSequence<Move> imported = ScriptCompiler.of(Move.class).compile("legacy", file);
+        assertNotNull(imported);
+        assertEquals(written.tick(), imported.tick());
+        for(int i = 0; i <= written.tick(); i++) assertEquals(written.at(i), imported.at(i), "tick " + i);
+        assertEquals(written.contentHash(), imported.contentHash());
+    }
+
+    @Test
+    void statementsCompileToTheirTicks() {
+        RleSequence<Move> compiled = ScriptCompiler.of(Move.class).defaultValue(Move.STAND_TALL)
+                .compile("script", "2 SPRINT\nrepeat 3 { FORWARD; 1..2 JUMP }\n14..15 SPRINT");
+        assertNotNull(compiled);
+        RleSequence<Move> expected = new RleSequence<>("expected", Move.STAND_TALL);
+        expected.addFromUntil(0, 2, Move.SPRINT);
+        for(int i = 0; i < 3; i++) {
+            expected.add(Move.FORWARD);
+            expected.add(Move.JUMP);
+            expected.add(Move.JUMP);
+        }
+        expected.addFromUntil(11, 14, Move.STAND_TALL);
+        expected.addFromUntil(14, 16, Move.SPRINT);
+        assertEquals(expected, compiled);
+        assertEquals(expected.contentHash(), compiled.contentHash());
+    }
+
+    @Test
+    void compiledRunsCanBeEdited() {
+        RleSequence<Move> compiled = ScriptCompiler.of(Move.class).compile("runs", "repeat 1000 { 3 SPRINT; 2 FORWARD }");
+        assertNotNull(compiled);
+        assertEquals(4999, compiled.tick());
+        assertEquals(2000, compiled.terms() instanceof RleTerms<Move> terms ? terms.runs() : -1);
+        // the adopted arrays are full, editing them must grow and splice them like any other storage
+        compiled.add(Move.JUMP);
+        compiled.addFromUntil(1, 3, Move.JUMP);
+        assertEquals(5002, compiled.tick());
+        assertEquals(Move.SPRINT, compiled.at(0));
+        assertEquals(Move.JUMP, compiled.at(1));
+        assertEquals(Move.JUMP, compiled.at(5002));
+        RleSequence<Move> rebuilt = new RleSequence<>("rebuilt", compiled.defaultValue());
+        for(int i = 0; i <= compiled.tick(); i++) rebuilt.add(compiled.at(i));
+        assertEquals(rebuilt.contentHash(), compiled.contentHash());
+    }
+
+    @Test
+    void emptyScriptCompilesToAnEmptySequence() {
+        RleSequence<Move> compiled = ScriptCompiler.of(Move.class).compile("empty", "# nothing\n");
+        assertNotNull(compiled);
+        assertEquals(-1, compiled.tick());
+        compiled.add(Move.FORWARD);
+        assertEquals(Move.FORWARD, compiled.at(0));
+    }
+}
@@ -0,0 +1,119 @@
+package org.tessa.prelaunch.impl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// round trips and corrupt chunks for SequenceArchive
+class SequenceArchiveTest {
+
+    private static final int TRAILER_BYTES = Long.BYTES + 4 * Integer.BYTES;
+
+    @TempDir
+    Path dir;
+
+    private static void assertSameTerms(Sequence<Move> expected, Sequence<Move> actual) {
+        assertEquals(expected.tick(), actual.tick());
+        for(int i = 0; i <= expected.tick(); i++) assertEquals(expected.at(i), actual.at(i), "tick " + i);
+    }
+
+    @Test
+    void archiveRoundTrip() {
+        MoveSequence written = SequenceFileTest.randomMoves("archived", 100_000, 30, 7);
+        for(boolean deflate : new boolean[] {false, true}) {
+            String filename = this.dir.resolve("archive-" + deflate + ".tarc").toString();
+            assertNotNull(SequenceArchive.write(written, filename, 1000, deflate));
+            try (SequenceArchive<Move> archive = SequenceArchive.open(filename)) {
+                assertNotNull(archive);
+                assertEquals("archived", archive.name());
+                assertEquals(Move.STAND_TALL, archive.defaultValue());
+                assertEquals(100, archive.chunkCount());
+                assertSameTerms(written, archive);
+                assertEquals(100, archive.decodedChunks());
+                assertSameTerms(written.subsequence(12_345, 67_890), archive.subsequence(12_345, 67_890));
+                assertEquals(written, archive.materialize("archived"));
+            }
+        }
+    }
+
+    @Test
+    void writerStreamsPartialChunks() {
+        String filename = this.dir.resolve("streamed.tarc").toString();
+        SequenceArchive.Writer<Move> writer = SequenceArchive.writer(filename, "MoveSequence", "streamed", Move.STAND_TALL, 64, true);
+        MoveSequence expected = new MoveSequence("streamed", Move.STAND_TALL);
+        for(int i = 0; i < 1000; i++) {
+            Move move = Move.values()[i / 7 % Move.values().length];
+            writer.append(move);
+            expected.add(move);
+        }
+        assertNotNull(writer.finish());
+        try (SequenceArchive<Move> archive = SequenceArchive.open(filename)) {
+            assertEquals(16, archive.chunkCount());
+            assertSameTerms(expected, archive);
+        }
+    }
+
+    @Test
+    void emptyArchiveRoundTrip() {
+        String filename = this.dir.resolve("empty.tarc").toString();
+        assertNotNull(SequenceArchive.write(new MoveSequence("empty", Move.JUMP), filename));
+        try (SequenceArchive<Move> archive = SequenceArchive.open(filename)) {
+            assertEquals(-1, archive.tick());
+            assertEquals(Move.JUMP, archive.defaultValue());
+        }
+    }
+
+    // chunk 0 of 10 ticks becomes a run of -1 ticks and a run of 11, which add up and carry a matching CRC
+    @Test
+    void negativeRunLengthIsRejected() throws IOException {
+        assertCorruptChunkIsRejected(new byte[] {2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0, 11, 0});
+    }
+
+    // a run past the end of the chunk with a later run of -1 ticks
+    @Test
+    void overflowingRunLengthIsRejected() throws IOException {
+        assertCorruptChunkIsRejected(new byte[] {2, 11, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F, 0});
+    }
+
+    @Test
+    void ordinalOutsideTheEnumIsRejected() throws IOException {
+        assertCorruptChunkIsRejected(new byte[] {1, 10, (byte) (2 * Move.values().length)});
+    }
+
+    // replaces chunk 0 with payload, appended past the trailer and pointed to by a rewritten index entry
+    private void assertCorruptChunkIsRejected(byte[] payload) throws IOException {
+        String filename = this.dir.resolve("corrupt.tarc").toString();
+        MoveSequence written = new MoveSequence("corrupt", Move.STAND_TALL).addFromUntil(0, 30, Move.FORWARD);
+        assertNotNull(SequenceArchive.write(written, filename, 10, false));
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            channel.read(trailer, size - TRAILER_BYTES);
+            long indexOffset = trailer.getLong(0);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer entry = ByteBuffer.allocate(Long.BYTES + 4 * Integer.BYTES + 1);
+            entry.putLong(size).putInt(0).putInt(payload.length).putInt(payload.length).putInt((int) crc.getValue()).put(SequenceArchive.PLAIN).flip();
+            channel.write(entry, indexOffset);
+            channel.write(ByteBuffer.wrap(payload), size);
+            // the trailer is expected at the end of the file
+            channel.write(trailer.flip(), size + payload.length);
+        }
+        try (SequenceArchive<Move> archive = SequenceArchive.open(filename)) {
+            assertNotNull(archive);
+            assertThrows(UncheckedIOException.class, () -> archive.at(0));
+            assertNull(archive.materialize("corrupt"));
+            // the other chunks stay readable
+            assertEquals(Move.FORWARD, archive.at(15));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.tessa.prelaunch.impl;
+import org.junit.jupiter.api.Test;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.Sequence;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// SequenceDiff scripts must turn the source into the target and, while the cost limit doesn't bind,
+// cost no more than a plain per tick Myers diff
+class SequenceDiffTest {
+
+    private static final Move[] MOVES = Move.values();
+
+    private static MoveSequence moves(int... ordinals) {
+        MoveSequence sequence = new MoveSequence("moves", Move.STAND_TALL);
+        for(int ordinal : ordinals) sequence.add(MOVES[ordinal]);
+        return sequence;
+    }
+
+    private static MoveSequence moves(String letters) {
+        MoveSequence sequence = new MoveSequence("moves", Move.STAND_TALL);
+        for(char letter : letters.toCharArray()) sequence.add(switch(letter) {
+            case 'F' -> Move.FORWARD;
+            case 'J' -> Move.JUMP;
+            case 'S' -> Move.SPRINT;
+            default -> throw new IllegalArgumentException("Unknown move " + letter);
+        });
+        return sequence;
+    }
+
+    private static int[] ordinals(Sequence<Move> sequence) {
+        int[] ordinals = new int[sequence.tick() + 1];
+        for(int i = 0; i < ordinals.length; i++) ordinals[i] = sequence.at(i).ordinal();
+        return ordinals;
+    }
+
+    // edit distance in ticks removed plus ticks inserted, Myers' greedy O(ND) search one tick at a time
+    private static int referenceCost(int[] a, int[] b) {
+        int n = a.length;
+        int m = b.length;
+        int offset = n + m + 1;
+        int[] furthest = new int[2 * offset + 1];
+        for(int d = 0; d <= n + m; d++) {
+            for(int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && furthest[offset + k - 1] < furthest[offset + k + 1]) ? furthest[offset + k + 1] : furthest[offset + k - 1] + 1;
+                int y = x - k;
+                while(x < n && y < m && a[x] == b[y]) {
+                    x++;
+                    y++;
+                }
+                furthest[offset + k] = x;
+                if(x >= n && y >= m) return d;
+            }
+        }
+        throw new IllegalStateException("No edit path");
+    }
+
+    private static void assertApplies(SequenceDiff<Move> diff, Sequence<Move> source, Sequence<Move> target) {
+        Sequence<Move> patched = diff.apply(source);
+        assertNotNull(patched);
+        assertArrayEquals(ordinals(target), ordinals(patched));
+    }
+
+    private static void assertMinimal(MoveSequence source, MoveSequence target) {
+        int expected = referenceCost(ordinals(source), ordinals(target));
+        for(int costLimit : new int[] {SequenceDiff.DEFAULT_COST_LIMIT, Integer.MAX_VALUE}) {
+            SequenceDiff<Move> diff = SequenceDiff.of(source, target, costLimit);
+            if(expected <= costLimit) assertEquals(expected, diff.cost(), "cost limit " + costLimit);
+            assertApplies(diff, source, target);
+        }
+    }
+
+    @Test
+    void runThatGrewIsASingleInsert() {
+        MoveSequence source = new MoveSequence("source", Move.STAND_TALL).addFromUntil(0, 2000, Move.FORWARD);
+        MoveSequence target = new MoveSequence("target", Move.STAND_TALL).add(Move.JUMP);
+        target.addFromUntil(1, 2002, Move.FORWARD);
+        target.add(Move.SPRINT);
+        SequenceDiff<Move> diff = SequenceDiff.of(source, target);
+        assertEquals(3, diff.cost());
+        assertApplies(diff, source, target);
+    }
+
+    @Test
+    void runsSplitByInsertedTerms() {
+        SequenceDiff<Move> diff = SequenceDiff.of(moves("FFFFF"), moves("JFFFSFF"));
+        assertEquals(2, diff.cost());
+        assertApplies(diff, moves("FFFFF"), moves("JFFFSFF"));
+        assertMinimal(moves("FFFFFFFFFF"), moves("FJF"));
+        assertMinimal(moves("FJF"), moves("FFFFFFFFFF"));
+        assertMinimal(moves(""), moves("FJS"));
+        assertMinimal(moves("FJS"), moves(""));
+        assertMinimal(moves("FJS"), moves("FJS"));
+    }
+
+    @Test
+    void randomRunsAreDiffedMinimally() {
+        Random random = new Random(13);
+        for(int round = 0; round < 2000; round++) {
+            int values = 2 + random.nextInt(3);
+            int maxRun = 1 + random.nextInt(8);
+            MoveSequence source = randomRuns(random, random.nextInt(60), values, maxRun);
+            MoveSequence target = random.nextBoolean() ? randomRuns(random, random.nextInt(60), values, maxRun) : mutate(random, source, values, maxRun);
+            assertMinimal(source, target);
+        }
+    }
+
+    @Test
+    void longSequencesWithFewEditsAreDiffedMinimally() {
+        Random random = new Random(14);
+        MoveSequence source = randomRuns(random, 1_000_000, MOVES.length, 400);
+        MoveSequence target = mutate(random, source, MOVES.length, 400);
+        assertMinimal(source, target);
+    }
+
+    @Test
+    void costLimitKeepsTheScriptExact() {
+        Random random = new Random(15);
+        for(int round = 0; round < 200; round++) {
+            MoveSequence source = randomRuns(random, 500, 3, 4);
+            MoveSequence target = randomRuns(random, 500, 3, 4);
+            SequenceDiff<Move> diff = SequenceDiff.of(source, target, 4);
+            assertTrue(diff.cost() >= referenceCost(ordinals(source), ordinals(target)));
+            assertApplies(diff, source, target);
+        }
+    }
+
+    private static MoveSequence randomRuns(Random random, int size, int values, int maxRun) {
+        MoveSequence sequence = new MoveSequence("random", Move.STAND_TALL);
+        int tick = 0;
+        while(tick < size) {
+            int until = Math.min(size, tick + 1 + random.nextInt(maxRun));
+            sequence.addFromUntil(tick, until, MOVES[random.nextInt(values)]);
+            tick = until;
+        }
+        return sequence;
+    }
+
+    // a copy of source with a few runs inserted, removed, stretched or shrunk
+    private static MoveSequence mutate(Random random, MoveSequence source, int values, int maxRun) {
+        MoveSequence target = source.copy("target");
+        int edits = 1 + random.nextInt(6);
+        for(int i = 0; i < edits; i++) {
+            int size = target.tick() + 1;
+            int tick = size == 0 ? 0 : random.nextInt(size);
+            int length = 1 + random.nextInt(maxRun);
+            if(size > 0 && random.nextBoolean()) target.remove(tick, Math.min(size, tick + length));
+            else target.addFromUntil(tick, tick + length, random.nextBoolean() && size > 0 ? target.at(tick) : MOVES[random.nextInt(values)]);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,189 @@
+package org.tessa.prelaunch.impl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tessa.prelaunch.api.Move;
+import org.tessa.prelaunch.api.SafeValue;
+import org.tessa.prelaunch.api.Sequence;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// round trips and corrupt files for SequenceFile and SequenceJournal
+class SequenceFileTest {
+
+    @TempDir
+    Path dir;
+
+    static MoveSequence randomMoves(String name, int size, int meanRun, long seed) {
+        Random random = new Random(seed);
+        Move[] moves = Move.values();
+        MoveSequence sequence = new MoveSequence(name, Move.STAND_TALL);
+        while(sequence.tick() + 1 < size) {
+            Move move = moves[random.nextInt(moves.length)];
+            int run = Math.min(1 + random.nextInt(2 * meanRun), size - sequence.tick() - 1);
+            for(int i = 0; i < run; i++) sequence.add(move);
+        }
+        return sequence;
+    }
+
+    private String file(String name) {
+        return this.dir.resolve(name).toString();
+    }
+
+    @Test
+    void ordinalsRoundTrip() {
+        MoveSequence written = randomMoves("ordinals", 10_000, 1, 1);
+        assertNotNull(written.writeBinary(file("ordinals.tseq")));
+        Sequence<Move> read = SequenceFile.read(file("ordinals.tseq"));
+        assertEquals(written, read);
+        assertEquals("ordinals", read.name());
+        assertEquals(Move.STAND_TALL, read.defaultValue());
+    }
+
+    @Test
+    void runsRoundTrip() {
+        MoveSequence written = randomMoves("runs", 100_000, 200, 2);
+        assertNotNull(written.writeBinary(file("runs.tseq")));
+        assertEquals(written, SequenceFile.read(file("runs.tseq")));
+    }
+
+    @Test
+    void emptyRoundTrip() {
+        MoveSequence written = new MoveSequence("empty", Move.FORWARD);
+        assertNotNull(written.writeBinary(file("empty.tseq")));
+        Sequence<Move> read = SequenceFile.read(file("empty.tseq"));
+        assertEquals(-1, read.tick());
+        assertEquals(Move.FORWARD, read.defaultValue());
+    }
+
+    @Test
+    void ordinalOutsideTheEnumIsRejected() throws IOException {
+        for(int meanRun : new int[] {1, 200}) {
+            String filename = file("corrupt" + meanRun + ".tseq");
+            randomMoves("corrupt", 10_000, meanRun, 3).writeBinary(filename);
+            // the last byte is an ordinal in both encodings
+            byte[] bytes = Files.readAllBytes(Path.of(filename));
+            bytes[bytes.length - 1] = (byte) Move.values().length;
+            Files.write(Path.of(filename), bytes);
+            assertNull(SequenceFile.read(filename));
+        }
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        String filename = file("truncated.tseq");
+        randomMoves("truncated", 10_000, 1, 4).writeBinary(filename);
+        byte[] bytes = Files.readAllBytes(Path.of(filename));
+        Files.write(Path.of(filename), java.util.Arrays.copyOf(bytes, bytes.length - 1));
+        assertNull(SequenceFile.read(filename));
+    }
+
+    @Test
+    void nameTooLongForTheHeaderIsRejected() {
+        MoveSequence sequence = new MoveSequence("x".repeat(0x10000), Move.FORWARD);
+        sequence.add(Move.JUMP);
+        assertNull(sequence.writeBinary(file("long.tseq")));
+    }
+
+    static boolean tripwireInitialized;
+
+    static final class Tripwire {
+        static {
+            tripwireInitialized = true;
+        }
+    }
+
+    @Test
+    void nonEnumValueClassIsNotInitialized() throws IOException {
+        String filename = file("tripwire.tseq");
+        SequenceFile.Header header = new SequenceFile.Header("MoveSequence", Tripwire.class.getName(), "tripwire", -1, 0, SequenceFile.ORDINALS, 1);
+        ByteBuffer buffer = header.write(0);
+        Files.write(Path.of(filename), buffer.array());
+        assertNull(SequenceFile.read(filename));
+        assertFalse(tripwireInitialized);
+    }
+
+    @Test
+    void journalRoundTrip() {
+        String filename = file("moves.tjournal");
+        MoveSequence live = new MoveSequence("live", Move.STAND_TALL);
+        SequenceJournal<Move> journal = SequenceJournal.open(live, filename);
+        assertNotNull(journal);
+        MoveSequence moves = randomMoves("moves", 20_000, 3, 5);
+        for(int i = 0; i <= moves.tick(); i++) assertTrue(journal.append(moves.at(i)));
+        journal.close();
+        assertEquals(20_000, journal.persisted());
+        Sequence<Move> recovered = SequenceJournal.recover(filename);
+        assertEquals(live, recovered);
+        // reopening replays the journal into the sequence
+        MoveSequence reopened = new MoveSequence("live", Move.STAND_TALL);
+        SequenceJournal<Move> again = SequenceJournal.open(reopened, filename);
+        assertNotNull(again);
+        again.close();
+        assertEquals(live, reopened);
+    }
+
+    @Test
+    void journalOverflowKeepsEveryTermInOrder() {
+        String filename = file("overflow.tjournal");
+        MoveSequence live = new MoveSequence("live", Move.STAND_TALL);
+        // a queue far smaller than a flush interval of appends makes append chain queues
+        SequenceJournal<Move> journal = SequenceJournal.open(live, filename, Duration.ofSeconds(1), Duration.ofSeconds(1), 16);
+        MoveSequence moves = randomMoves("moves", 50_000, 2, 6);
+        for(int i = 0; i <= moves.tick(); i++) assertTrue(journal.append(moves.at(i)));
+        journal.close();
+        assertTrue(journal.overflows() > 0);
+        assertEquals(50_000, journal.persisted());
+        assertEquals(live, SequenceJournal.recover(filename));
+    }
+
+    @Test
+    void journalTornTailIsCut() throws IOException {
+        String filename = file("torn.tjournal");
+        SequenceJournal<Move> journal = SequenceJournal.open(new MoveSequence("torn", Move.STAND_TALL), filename);
+        for(int i = 0; i < 100; i++) journal.append(Move.JUMP);
+        journal.close();
+        long size = Files.size(Path.of(filename));
+        Files.write(Path.of(filename), new byte[] {0, 0, 0, 9, 1, 2}, StandardOpenOption.APPEND);
+        Sequence<SafeValue> recovered = SequenceJournal.recover(filename);
+        assertEquals(99, recovered.tick());
+        assertEquals(size, Files.size(Path.of(filename)));
+    }
+
+    @Test
+    void journalOrdinalOutsideTheEnumFailsWithoutChanges() throws IOException {
+        String filename = file("corrupt.tjournal");
+        SequenceJournal<Move> journal = SequenceJournal.open(new MoveSequence("corrupt", Move.STAND_TALL), filename);
+        for(int i = 0; i < 100; i++) journal.append(Move.JUMP);
+        journal.close();
+        // rewrite the last ordinal of the first record with a valid checksum
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            channel.read(buffer, 0);
+            buffer.flip();
+            SequenceFile.Header.read(buffer);
+            int count = buffer.getInt();
+            int payload = buffer.position();
+            buffer.put(payload + count - 1, (byte) Move.values().length);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), payload, count);
+            buffer.putInt(payload + count, (int) crc.getValue());
+            buffer.position(0);
+            channel.write(buffer, 0);
+        }
+        long size = Files.size(Path.of(filename));
+        assertNull(SequenceJournal.recover(filename));
+        MoveSequence sequence = new MoveSequence("corrupt", Move.STAND_TALL);
+        assertNull(SequenceJournal.open(sequence, filename));
+        assertEquals(-1, sequence.tick());
+        assertEquals(size, Files.size(Path.of(filename)));
+    }
+}